@@ -0,0 +1,99 @@
+package org.processmining.plugins.graphviz.benchmarks;
+
+import java.awt.Color;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.processmining.plugins.graphviz.colourMaps.ColourMap;
+import org.processmining.plugins.graphviz.colourMaps.ColourMapBlackBody;
+import org.processmining.plugins.graphviz.colourMaps.ColourMapBlue;
+import org.processmining.plugins.graphviz.colourMaps.ColourMapLookupTable;
+import org.processmining.plugins.graphviz.colourMaps.ColourMapViridis;
+
+/**
+ * Colouring many values, directly and through a lookup table.
+ * 
+ * @author sander
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColourMapBenchmark {
+
+	@Param({ "viridis", "blue", "blackbody" })
+	public String colourMapName;
+
+	@Param({ "500000" })
+	public int values;
+
+	private ColourMap colourMap;
+	private ColourMapLookupTable lookupTable;
+	private double[] input;
+	private int[] output;
+
+	@Setup
+	public void setup() {
+		switch (colourMapName) {
+			case "viridis" :
+				colourMap = new ColourMapViridis();
+				break;
+			case "blue" :
+				colourMap = new ColourMapBlue();
+				break;
+			default :
+				colourMap = new ColourMapBlackBody();
+				break;
+		}
+		lookupTable = colourMap.compile();
+		Random random = new Random(values);
+		input = new double[values];
+		for (int i = 0; i < values; i++) {
+			input[i] = random.nextDouble();
+		}
+		output = new int[values];
+	}
+
+	@Benchmark
+	public void colour(Blackhole blackhole) {
+		for (double value : input) {
+			blackhole.consume(colourMap.colour(value));
+		}
+	}
+
+	@Benchmark
+	public void colourHexString(Blackhole blackhole) {
+		for (double value : input) {
+			Color colour = colourMap.colour(value);
+			blackhole.consume(ColourMap.toHexString(colour));
+		}
+	}
+
+	@Benchmark
+	public int[] lookupTableColourAll() {
+		lookupTable.colourAll(input, output);
+		return output;
+	}
+
+	@Benchmark
+	public int[] lookupTableParallelColourAll() {
+		lookupTable.parallelColourAll(input, output);
+		return output;
+	}
+
+	@Benchmark
+	public void lookupTableHexString(Blackhole blackhole) {
+		for (double value : input) {
+			blackhole.consume(lookupTable.hexString(value));
+		}
+	}
+}
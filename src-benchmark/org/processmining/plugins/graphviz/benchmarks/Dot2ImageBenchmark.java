@@ -0,0 +1,56 @@
+package org.processmining.plugins.graphviz.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.processmining.plugins.graphviz.dot.Dot;
+import org.processmining.plugins.graphviz.dot.Dot2Image;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+
+/**
+ * Layout by Graphviz, end-to-end: serialisation, process start, layout and
+ * reading the output. Does not use the cache.
+ * 
+ * @author sander
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Dot2ImageBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int elements;
+
+	@Param({ "svg", "png" })
+	public Type type;
+
+	private Dot dot;
+	private final byte[] buffer = new byte[64 * 1024];
+
+	@Setup
+	public void setup() {
+		dot = SyntheticGraphs.create(elements);
+	}
+
+	@Benchmark
+	public long dot2imageInputStream() throws IOException {
+		long bytes = 0;
+		try (InputStream stream = Dot2Image.dot2imageInputStream(dot, type)) {
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				bytes += read;
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,40 @@
+package org.processmining.plugins.graphviz.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.processmining.plugins.graphviz.dot.Dot;
+
+/**
+ * Serialisation of graphs to the dot language.
+ * 
+ * @author sander
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DotSerializationBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public int elements;
+
+	private Dot dot;
+
+	@Setup
+	public void setup() {
+		dot = SyntheticGraphs.create(elements);
+	}
+
+	@Benchmark
+	public String toDotString() {
+		return dot.toString();
+	}
+}
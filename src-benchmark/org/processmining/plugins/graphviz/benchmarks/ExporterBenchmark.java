@@ -0,0 +1,92 @@
+package org.processmining.plugins.graphviz.benchmarks;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+import org.processmining.plugins.graphviz.visualisation.DotPanel;
+import org.processmining.plugins.graphviz.visualisation.export.Exporter;
+import org.processmining.plugins.graphviz.visualisation.export.ExporterDot;
+import org.processmining.plugins.graphviz.visualisation.export.ExporterEMF;
+import org.processmining.plugins.graphviz.visualisation.export.ExporterEPS;
+import org.processmining.plugins.graphviz.visualisation.export.ExporterGraphviz;
+import org.processmining.plugins.graphviz.visualisation.export.ExporterPDF;
+import org.processmining.plugins.graphviz.visualisation.export.ExporterPNG;
+import org.processmining.plugins.graphviz.visualisation.export.ExporterSVG;
+
+/**
+ * Exporting a panel to a file, with each exporter.
+ * 
+ * @author sander
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExporterBenchmark {
+
+	@Param({ "100", "1000" })
+	public int elements;
+
+	@Param({ "pdf", "png", "svg", "eps", "emf", "dot", "graphviz-pdf", "graphviz-png", "graphviz-svg" })
+	public String exporterName;
+
+	private DotPanel panel;
+	private Exporter exporter;
+	private File file;
+
+	@Setup
+	public void setup() throws IOException {
+		panel = new DotPanel(SyntheticGraphs.create(elements));
+		panel.setSize(new Dimension((int) panel.getSVG().getWidth(), (int) panel.getSVG().getHeight()));
+		exporter = getExporter(exporterName);
+		file = File.createTempFile("benchmark", "." + exporterName);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public long export() throws Exception {
+		exporter.export(panel, file);
+		return file.length();
+	}
+
+	private static Exporter getExporter(String name) {
+		switch (name) {
+			case "pdf" :
+				return new ExporterPDF();
+			case "png" :
+				return new ExporterPNG();
+			case "svg" :
+				return new ExporterSVG();
+			case "eps" :
+				return new ExporterEPS();
+			case "emf" :
+				return new ExporterEMF();
+			case "dot" :
+				return new ExporterDot();
+			case "graphviz-pdf" :
+				return new ExporterGraphviz(Type.pdf);
+			case "graphviz-png" :
+				return new ExporterGraphviz(Type.png);
+			case "graphviz-svg" :
+				return new ExporterGraphviz(Type.svg);
+			default :
+				throw new IllegalArgumentException("unknown exporter " + name);
+		}
+	}
+}
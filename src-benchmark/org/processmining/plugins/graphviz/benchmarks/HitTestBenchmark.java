@@ -0,0 +1,58 @@
+package org.processmining.plugins.graphviz.benchmarks;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.processmining.plugins.graphviz.dot.DotElement;
+import org.processmining.plugins.graphviz.visualisation.DotPanel;
+
+/**
+ * Finding the nodes and edges under the mouse, at random points of a panel
+ * that shows the whole graph.
+ * 
+ * @author sander
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HitTestBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int elements;
+
+	private DotPanel panel;
+	private final Point[] points = new Point[1024];
+	private final List<DotElement> result = new ArrayList<>();
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		panel = new DotPanel(SyntheticGraphs.create(elements));
+		panel.setSize(new Dimension(1920, 1080));
+		Random random = new Random(1);
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new Point(random.nextInt(1920), random.nextInt(1080));
+		}
+	}
+
+	@Benchmark
+	public int getElementsAtPoint() {
+		result.clear();
+		panel.getElementsAtPoint(points[next], result);
+		next = (next + 1) % points.length;
+		return result.size();
+	}
+}
@@ -0,0 +1,69 @@
+package org.processmining.plugins.graphviz.benchmarks;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.processmining.plugins.graphviz.visualisation.DotPanel;
+
+/**
+ * Painting a panel that shows the whole graph into an offscreen image. The
+ * setup paints once and, with tile rendering, waits until the tiles are
+ * rendered, such that both modes measure painting a complete image: from the
+ * diagram, or from the tiles. The navigation image is rendered by the first
+ * paint as well.
+ * 
+ * @author sander
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PaintBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int elements;
+
+	@Param({ "false", "true" })
+	public boolean tileRendering;
+
+	private DotPanel panel;
+	private BufferedImage target;
+	private Graphics2D g;
+
+	@Setup
+	public void setup() throws InterruptedException {
+		panel = new DotPanel(SyntheticGraphs.create(elements));
+		panel.setSize(new Dimension(1920, 1080));
+		panel.setTileRendering(tileRendering);
+		target = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_ARGB);
+		g = target.createGraphics();
+
+		//the first paint schedules the tiles
+		panel.paint(g);
+		if (tileRendering) {
+			panel.getTileRenderer().waitForScheduledTiles();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		g.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paint() {
+		panel.paint(g);
+		return target;
+	}
+}
@@ -0,0 +1,46 @@
+package org.processmining.plugins.graphviz.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.processmining.plugins.graphviz.dot.Dot;
+import org.processmining.plugins.graphviz.visualisation.DotPanel;
+
+import com.kitfox.svg.SVGDiagram;
+
+/**
+ * Parsing the svg output of Graphviz. The layout is computed once, in setup,
+ * and taken from the Dot2ImageCache afterwards, so this measures the parsing
+ * into a kitfox diagram.
+ * 
+ * @author sander
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SVGParsingBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int elements;
+
+	private Dot dot;
+
+	@Setup
+	public void setup() {
+		dot = SyntheticGraphs.create(elements);
+		DotPanel.dot2svg(dot);
+	}
+
+	@Benchmark
+	public SVGDiagram dot2svg() {
+		return DotPanel.dot2svg(dot);
+	}
+}
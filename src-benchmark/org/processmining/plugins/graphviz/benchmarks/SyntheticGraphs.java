@@ -0,0 +1,42 @@
+package org.processmining.plugins.graphviz.benchmarks;
+
+import java.util.Random;
+
+import org.processmining.plugins.graphviz.dot.Dot;
+import org.processmining.plugins.graphviz.dot.DotNode;
+
+/**
+ * Generates deterministic graphs that look like process models: labelled box
+ * nodes with a few options and mostly forward edges.
+ * 
+ * @author sander
+ *
+ */
+public class SyntheticGraphs {
+
+	/**
+	 * 
+	 * @param elements
+	 *            The number of nodes plus the number of edges.
+	 * @return a graph with about as many nodes as edges.
+	 */
+	public static Dot create(int elements) {
+		Random random = new Random(elements);
+		Dot dot = new Dot();
+		int numberOfNodes = Math.max(1, elements / 2);
+		DotNode[] nodes = new DotNode[numberOfNodes];
+		for (int i = 0; i < numberOfNodes; i++) {
+			nodes[i] = dot.addNode("activity " + i);
+			nodes[i].setOption("shape", "box");
+			nodes[i].setOption("style", "rounded,filled");
+			nodes[i].setOption("fillcolor", "#" + Integer.toHexString(0x808080 + random.nextInt(0x7f7f7f)));
+		}
+		for (int i = numberOfNodes; i < elements; i++) {
+			int source = random.nextInt(numberOfNodes);
+			int target = Math.min(numberOfNodes - 1, source + 1 + random.nextInt(3));
+			dot.addEdge(nodes[source], nodes[target], Integer.toString(random.nextInt(1000)))
+					.setOption("penwidth", Integer.toString(1 + random.nextInt(4)));
+		}
+		return dot;
+	}
+}
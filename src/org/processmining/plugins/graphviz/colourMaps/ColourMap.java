@@ -3,6 +3,10 @@ package org.processmining.plugins.graphviz.colourMaps;
 import java.awt.Color;
 
 public abstract class ColourMap {
+	public static final int defaultLookupTableResolution = 1024;
+
+	private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
 	public abstract Color colour(long weight, long maxWeight);
 
 	public abstract Color colour(double value);
@@ -35,21 +39,54 @@ public abstract class ColourMap {
 		return toHexString(colour(weight, min, max));
 	}
 
+	/**
+	 * Samples this colour map into a lookup table, which gives colours, packed
+	 * ARGB values and hex strings without computing or allocating anything.
+	 * 
+	 * @return a lookup table of defaultLookupTableResolution samples.
+	 */
+	public ColourMapLookupTable compile() {
+		return compile(defaultLookupTableResolution);
+	}
+
+	/**
+	 * 
+	 * @param resolution
+	 *            The number of samples (at least 2).
+	 * @return a lookup table of this colour map.
+	 */
+	public ColourMapLookupTable compile(int resolution) {
+		return new ColourMapLookupTable(this, resolution);
+	}
+
 	public static String toHexString(Color colour) {
-		return "#" + toHex(colour.getRed()) + toHex(colour.getGreen()) + toHex(colour.getBlue());
+		char[] result = new char[7];
+		result[0] = '#';
+		putHex(result, 1, colour.getRed());
+		putHex(result, 3, colour.getGreen());
+		putHex(result, 5, colour.getBlue());
+		return new String(result);
 	}
 
 	public static String toHexAlphaString(Color colour) {
-		return "#" + toHex(colour.getRed()) + toHex(colour.getGreen()) + toHex(colour.getBlue())
-				+ toHex(colour.getAlpha());
+		char[] result = new char[9];
+		result[0] = '#';
+		putHex(result, 1, colour.getRed());
+		putHex(result, 3, colour.getGreen());
+		putHex(result, 5, colour.getBlue());
+		putHex(result, 7, colour.getAlpha());
+		return new String(result);
+	}
+
+	private static void putHex(char[] result, int offset, int i) {
+		result[offset] = hexDigits[(i >> 4) & 0xF];
+		result[offset + 1] = hexDigits[i & 0xF];
 	}
 
 	public static String toHex(int i) {
-		String s = Integer.toHexString(i);
-		if (s.length() == 2) {
-			return s;
-		} else {
-			return "0" + s;
+		if (i >= 0 && i < 256) {
+			return new String(new char[] { hexDigits[i >> 4], hexDigits[i & 0xF] });
 		}
+		return Integer.toHexString(i);
 	}
 }
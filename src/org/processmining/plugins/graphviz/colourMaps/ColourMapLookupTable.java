@@ -0,0 +1,150 @@
+package org.processmining.plugins.graphviz.colourMaps;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A colour map sampled at a fixed number of values in [0, 1], such that
+ * looking up a colour is an array access: no Colors or Strings are created.
+ * Values are rounded to the nearest sample and clamped to [0, 1].
+ *
+ * Obtain one using ColourMap.compile().
+ *
+ * @author sander
+ *
+ */
+public class ColourMapLookupTable extends ColourMap {
+
+	private final int[] argb;
+	private final Color[] colours;
+	private final String[] hexStrings;
+	private final String[] hexAlphaStrings;
+	private final double scale;
+
+	/**
+	 *
+	 * @param base
+	 * @param resolution
+	 *            The number of samples (at least 2).
+	 */
+	public ColourMapLookupTable(ColourMap base, int resolution) {
+		if (resolution < 2) {
+			throw new IllegalArgumentException("a lookup table needs at least two samples");
+		}
+		argb = new int[resolution];
+		colours = new Color[resolution];
+		hexStrings = new String[resolution];
+		hexAlphaStrings = new String[resolution];
+		for (int i = 0; i < resolution; i++) {
+			Color colour = base.colour(i / (double) (resolution - 1));
+			argb[i] = colour.getRGB();
+			colours[i] = colour;
+			hexStrings[i] = toHexString(colour);
+			hexAlphaStrings[i] = toHexAlphaString(colour);
+		}
+		scale = resolution - 1;
+	}
+
+	private int index(double value) {
+		//NaN maps to 0
+		return (int) (Math.min(Math.max(value, 0), 1) * scale + 0.5);
+	}
+
+	public Color colour(long weight, long maxWeight) {
+		return colour(weight / (double) maxWeight);
+	}
+
+	public Color colour(double value) {
+		return colours[index(value)];
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return the colour as packed ARGB (as Color.getRGB()).
+	 */
+	public int argb(double value) {
+		return argb[index(value)];
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return the colour as #rrggbb.
+	 */
+	public String hexString(double value) {
+		return hexStrings[index(value)];
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return the colour as #rrggbbaa.
+	 */
+	public String hexAlphaString(double value) {
+		return hexAlphaStrings[index(value)];
+	}
+
+	/**
+	 * Looks up the colours of all values, as packed ARGB (as
+	 * Color.getRGB()). Does not allocate.
+	 *
+	 * @param values
+	 * @param outArgb
+	 *            At least as long as values.
+	 */
+	public void colourAll(double[] values, int[] outArgb) {
+		colourAll(values, 0, values.length, outArgb);
+	}
+
+	/**
+	 * Looks up the colours of values[from .. to), into outArgb[from .. to).
+	 * Use to split the work over threads.
+	 *
+	 * @param values
+	 * @param from
+	 * @param to
+	 * @param outArgb
+	 */
+	public void colourAll(double[] values, int from, int to, int[] outArgb) {
+		final int[] argb = this.argb;
+		final double scale = this.scale;
+		for (int i = from; i < to; i++) {
+			outArgb[i] = argb[(int) (Math.min(Math.max(values[i], 0), 1) * scale + 0.5)];
+		}
+	}
+
+	/**
+	 * As colourAll, but uses all processors.
+	 *
+	 * @param values
+	 * @param outArgb
+	 *            Exactly as long as values.
+	 */
+	public void parallelColourAll(final double[] values, int[] outArgb) {
+		if (outArgb.length != values.length) {
+			throw new IllegalArgumentException("values and outArgb differ in length");
+		}
+		Arrays.parallelSetAll(outArgb, new IntUnaryOperator() {
+			public int applyAsInt(int i) {
+				return argb[index(values[i])];
+			}
+		});
+	}
+
+	public ColourMapLookupTable compile(int resolution) {
+		if (resolution == getResolution()) {
+			return this;
+		}
+		return super.compile(resolution);
+	}
+
+	/**
+	 *
+	 * @return The number of samples.
+	 */
+	public int getResolution() {
+		return argb.length;
+	}
+}
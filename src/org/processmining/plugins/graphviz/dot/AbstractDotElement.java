@@ -2,29 +2,107 @@ package org.processmining.plugins.graphviz.dot;
 
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.processmining.plugins.graphviz.visualisation.listeners.DotElementSelectionListener;
 
 public abstract class AbstractDotElement implements DotElement {
 	private final String id;
-	private Map<String, String> optionsMap;
 	private String label;
 
+	/*
+	 * Options are stored as the codes of their keys (see getKeyCode) and their
+	 * values, in order of insertion. The arrays are allocated on the first
+	 * option.
+	 */
+	private int[] optionKeys = null;
+	private String[] optionValues = null;
+	private int numberOfOptions = 0;
+
 	private boolean selectable = false;
-	private final List<DotElementSelectionListener> selectionListeners = new CopyOnWriteArrayList<>();
-	private final List<MouseListener> mouseListeners = new CopyOnWriteArrayList<MouseListener>();
+
+	//listener lists are allocated on the first listener
+	private volatile List<DotElementSelectionListener> selectionListeners = null;
+	private volatile List<MouseListener> mouseListeners = null;
 
 	public AbstractDotElement() {
-		id = "e" + UUID.randomUUID().toString();
+		id = "e" + nextId();
 		label = "";
-		optionsMap = new HashMap<>();
+	}
+
+	/*
+	 * Ids are unique within the virtual machine and are taken from one
+	 * counter, such that a program that builds the same graphs in the same
+	 * order gets the same ids, and hence the same Dot text (see
+	 * Dot2ImageCache). UUID.randomUUID() serialised on SecureRandom.
+	 */
+	private static final AtomicLong nextId = new AtomicLong();
+
+	private static String nextId() {
+		return Long.toString(nextId.getAndIncrement(), Character.MAX_RADIX);
+	}
+
+	/*
+	 * Option keys are interned into small codes, such that elements do not
+	 * need to store (or hash) the keys themselves.
+	 */
+	private static final ConcurrentHashMap<String, Integer> keyCodes = new ConcurrentHashMap<>();
+	private static volatile String[] codeKeys = new String[64];
+
+	private static int getKeyCode(String key) {
+		Integer code = keyCodes.get(key);
+		if (code != null) {
+			return code;
+		}
+		synchronized (keyCodes) {
+			code = keyCodes.get(key);
+			if (code == null) {
+				code = keyCodes.size();
+				String[] keys = codeKeys;
+				if (code >= keys.length) {
+					keys = Arrays.copyOf(keys, keys.length * 2);
+				}
+				keys[code] = key;
+				codeKeys = keys;
+				keyCodes.put(key, code);
+			}
+			return code;
+		}
+	}
+
+	private static String getKey(int code) {
+		return codeKeys[code];
+	}
+
+	/**
+	 * 
+	 * @param key
+	 * @return the index of the option in the option arrays, or -1.
+	 */
+	private int indexOfOption(String key) {
+		if (numberOfOptions == 0) {
+			return -1;
+		}
+		Integer code = keyCodes.get(key);
+		if (code == null) {
+			return -1;
+		}
+		for (int i = 0; i < numberOfOptions; i++) {
+			if (optionKeys[i] == code) {
+				return i;
+			}
+		}
+		return -1;
 	}
 
 	public String getId() {
@@ -42,6 +120,10 @@ public abstract class AbstractDotElement implements DotElement {
 	public String labelToString() {
 		return escapeString(label);
 	}
+
+	protected void appendLabel(Appendable result) throws IOException {
+		appendEscaped(result, label);
+	}
 	
 	protected String escapeString(String value) {
 		if (value.length() > 2 && value.substring(0, 1).equals("<")
@@ -53,53 +135,222 @@ public abstract class AbstractDotElement implements DotElement {
 		}
 	}
 
+	/**
+	 * Appends the value to result in the same way as escapeString, but
+	 * without creating intermediate Strings.
+	 * 
+	 * @param result
+	 * @param value
+	 * @throws IOException
+	 */
+	protected void appendEscaped(Appendable result, String value) throws IOException {
+		escape(result, value);
+	}
+
+	/**
+	 * appendEscaped, for the parts of a graph that are not elements.
+	 */
+	static void escape(Appendable result, String value) throws IOException {
+		int length = value.length();
+		if (length > 2 && value.charAt(0) == '<' && value.charAt(length - 1) == '>') {
+			result.append(value);
+		} else {
+			result.append('"');
+			int start = 0;
+			for (int i = 0; i < length; i++) {
+				if (value.charAt(i) == '"') {
+					result.append(value, start, i);
+					result.append("\\\"");
+					start = i + 1;
+				}
+			}
+			result.append(value, start, length);
+			result.append('"');
+		}
+	}
+
+	/**
+	 * Appends the options of this element as ",key=value" pairs.
+	 * 
+	 * @param result
+	 * @throws IOException
+	 */
+	protected void appendOptionList(Appendable result) throws IOException {
+		for (int i = 0; i < numberOfOptions; i++) {
+			result.append(',');
+			result.append(getKey(optionKeys[i]));
+			result.append('=');
+			appendEscaped(result, optionValues[i]);
+		}
+	}
+
+	/*
+	 * Before appendTo() existed, subclasses changed their Dot-language
+	 * representation by overriding toString(). For classes that override
+	 * toString() but not appendTo(), toString() is used when the graph is
+	 * written.
+	 */
+	private static final ClassValue<Boolean> overridesToString = new ClassValue<Boolean>() {
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				Class<?> toStringClass = type.getMethod("toString").getDeclaringClass();
+				Class<?> appendToClass = type.getMethod("appendTo", Appendable.class).getDeclaringClass();
+				return toStringClass != appendToClass && appendToClass.isAssignableFrom(toStringClass);
+			} catch (NoSuchMethodException e) {
+				return false;
+			}
+		}
+	};
+
+	/**
+	 * Appends the Dot-language representation of element to result, using
+	 * toString() if the element overrides it (see overridesToString).
+	 * 
+	 * @param result
+	 * @param element
+	 * @throws IOException
+	 */
+	static void append(Appendable result, DotElement element) throws IOException {
+		if (overridesToString.get(element.getClass())) {
+			result.append(element.toString());
+		} else {
+			element.appendTo(result);
+		}
+	}
+
+	/**
+	 * Get a string representation of this element in the Dot-language. For
+	 * large graphs, use appendTo instead.
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		try {
+			appendTo(result);
+		} catch (IOException e) {
+			//a StringBuilder does not throw IOExceptions
+			throw new RuntimeException(e);
+		}
+		return result.toString();
+	}
+
 	@Override
 	public void setOption(String key, String value) {
-		optionsMap.put(key, value);
+		int index = indexOfOption(key);
+		if (index >= 0) {
+			optionValues[index] = value;
+			return;
+		}
+		if (optionKeys == null) {
+			optionKeys = new int[4];
+			optionValues = new String[4];
+		} else if (numberOfOptions == optionKeys.length) {
+			optionKeys = Arrays.copyOf(optionKeys, numberOfOptions * 2);
+			optionValues = Arrays.copyOf(optionValues, numberOfOptions * 2);
+		}
+		optionKeys[numberOfOptions] = getKeyCode(key);
+		optionValues[numberOfOptions] = value;
+		numberOfOptions++;
 	}
 	
 	@Override
 	public String getOption(String key) {
-		if (optionsMap.containsKey(key)) {
-			return optionsMap.get(key);
+		int index = indexOfOption(key);
+		if (index >= 0) {
+			return optionValues[index];
 		}
 		return null;
 	}
 	
 	@Override
 	public Set<String> getOptionKeySet() {
-		return Collections.unmodifiableSet(optionsMap.keySet());
+		return new OptionKeySet();
+	}
+
+	/**
+	 * Unmodifiable view on the keys of the options.
+	 */
+	private class OptionKeySet extends AbstractSet<String> {
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+				private int next = 0;
+
+				public boolean hasNext() {
+					return next < numberOfOptions;
+				}
+
+				public String next() {
+					if (next >= numberOfOptions) {
+						throw new NoSuchElementException();
+					}
+					return getKey(optionKeys[next++]);
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		public int size() {
+			return numberOfOptions;
+		}
+
+		public boolean contains(Object key) {
+			return key instanceof String && indexOfOption((String) key) >= 0;
+		}
 	}
 
 	public void addMouseListener(MouseListener l) {
+		if (mouseListeners == null) {
+			synchronized (this) {
+				if (mouseListeners == null) {
+					mouseListeners = new CopyOnWriteArrayList<>();
+				}
+			}
+		}
 		mouseListeners.add(l);
 	}
 
 	public void mouseClicked(MouseEvent e) {
+		if (mouseListeners == null) {
+			return;
+		}
 		for (MouseListener l : mouseListeners) {
 			l.mouseClicked(e);
 		}
 	}
 
 	public void mouseEntered(MouseEvent e) {
+		if (mouseListeners == null) {
+			return;
+		}
 		for (MouseListener l : mouseListeners) {
 			l.mouseEntered(e);
 		}
 	}
 
 	public void mouseExited(MouseEvent e) {
+		if (mouseListeners == null) {
+			return;
+		}
 		for (MouseListener l : mouseListeners) {
 			l.mouseExited(e);
 		}
 	}
 
 	public void mousePressed(MouseEvent e) {
+		if (mouseListeners == null) {
+			return;
+		}
 		for (MouseListener l : mouseListeners) {
 			l.mousePressed(e);
 		}
 	}
 
 	public void mouseReleased(MouseEvent e) {
+		if (mouseListeners == null) {
+			return;
+		}
 		for (MouseListener l : mouseListeners) {
 			l.mouseReleased(e);
 		}
@@ -116,10 +367,20 @@ public abstract class AbstractDotElement implements DotElement {
 	
 	public void addSelectionListener(DotElementSelectionListener listener) {
 		setSelectable(true);
+		if (selectionListeners == null) {
+			synchronized (this) {
+				if (selectionListeners == null) {
+					selectionListeners = new CopyOnWriteArrayList<>();
+				}
+			}
+		}
 		selectionListeners.add(listener);
 	}
 	
 	public List<DotElementSelectionListener> getSelectionListeners() {
+		if (selectionListeners == null) {
+			return Collections.emptyList();
+		}
 		return Collections.unmodifiableList(selectionListeners);	
 	}
 }
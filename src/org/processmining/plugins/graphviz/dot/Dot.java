@@ -2,11 +2,11 @@ package org.processmining.plugins.graphviz.dot;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-
-import org.apache.commons.io.IOUtils;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 public class Dot extends DotCluster {
 
@@ -32,40 +32,49 @@ public class Dot extends DotCluster {
 		setNodeOption("fontname", "sans");
 	}
 
-	public String toString() {
+	public void appendTo(Appendable result) throws IOException {
 		if (stringValue != null) {
-			return stringValue;
+			result.append(stringValue);
+			return;
 		}
 
-		StringBuilder result = new StringBuilder();
 		result.append("digraph G {\n");
 
 		appendOptions(result);
 
-		contentToString(result);
+		appendContent(result);
 
-		result.append("}");
+		result.append('}');
+	}
 
-		return result.toString();
+	/**
+	 * Writes the Dot-language representation of this graph to writer, without
+	 * building the complete graph as a String first. The writer is flushed but
+	 * not closed.
+	 * 
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void writeTo(Writer writer) throws IOException {
+		append(writer, this);
+		writer.flush();
 	}
 
+	/**
+	 * Reads a graph in the DOT language (UTF-8) into nodes, edges and
+	 * clusters. See DotParser for what is kept of the text.
+	 * 
+	 * @param input
+	 * @throws IOException
+	 *             if reading fails or the text is not a valid graph.
+	 */
 	public Dot(InputStream input) throws IOException {
-		this.stringValue = IOUtils.toString(input, "UTF-8");
+		new DotParser(input).parse(this);
 	}
 
 	public void exportToFile(File file) throws IOException {
-		BufferedWriter writer = null;
-		try {
-			writer = new BufferedWriter(new FileWriter(file));
-			writer.write(toString());
-		} finally {
-			try {
-				if (writer != null) {
-					writer.close();
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+			writeTo(writer);
 		}
 	}
 
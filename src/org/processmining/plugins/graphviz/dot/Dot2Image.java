@@ -6,12 +6,18 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -21,7 +27,11 @@ public class Dot2Image {
 	public static final int dotVersion = 8;
 
 	public enum Type {
-		png, pdf, svg
+		png, pdf, svg,
+		/**
+		 * The dot language, annotated with the layout (see DotLayout).
+		 */
+		xdot
 	}
 
 	public enum Engine {
@@ -29,57 +39,174 @@ public class Dot2Image {
 	}
 
 	public static InputStream dot2imageInputStream(Dot dot, Type type) {
-		Engine engine;
-		if (dot.getOption("engine") == "neato") {
-			engine = Engine.neato;
-		} else {
-			engine = Engine.dot;
+		return dot2imageInputStream(dot, type, getEngine(dot));
+	}
+
+	/**
+	 * 
+	 * @param dot
+	 * @return the engine requested by the "engine" option of the dot.
+	 */
+	public static Engine getEngine(Dot dot) {
+		if ("neato".equals(dot.getOption("engine"))) {
+			return Engine.neato;
 		}
-		return dot2imageInputStream(dot.toString(), type, engine);
+		return Engine.dot;
 	}
 
 	public static InputStream dot2imageInputStream(String dot, Type type) {
 		return dot2imageInputStream(dot, type, Engine.dot);
 	}
 
+	/**
+	 * Streams the dot directly into the dot process, without building the
+	 * complete graph as a String.
+	 * 
+	 * @param dot
+	 * @param type
+	 * @param engine
+	 * @return the output of the dot process, or null if it could not be
+	 *         started.
+	 */
 	public static InputStream dot2imageInputStream(Dot dot, Type type, Engine engine) {
-		return dot2imageInputStream(dot.toString(), type, engine);
+		long start = System.nanoTime();
+		Process dotProcess = startDotProcess(type, engine);
+		if (dotProcess == null) {
+			return null;
+		}
+		try {
+			writeDot(dot, dotProcess);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		return getOutput(dotProcess, start);
 	}
 
 	public static InputStream dot2imageInputStream(String dot, Type type, Engine engine) {
-		File dotDirectory;
+		long start = System.nanoTime();
+		Process dotProcess = startDotProcess(type, engine);
+		if (dotProcess == null) {
+			return null;
+		}
 		try {
-			dotDirectory = getDotDirectory();
-		} catch (IOException e1) {
-			e1.printStackTrace();
-			throw new RuntimeException("Graphviz-dot binary not found. \n" + ExceptionUtils.getStackTrace(e1));
+			BufferedWriter out2 = new BufferedWriter(new OutputStreamWriter(getInput(dotProcess), "UTF-8"));
+			out2.write(dot);
+			out2.flush();
+			out2.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
 		}
 
-		//detect the operating system and locate dot binary
-		String os = System.getProperty("os.name").toLowerCase();
-		File dotFile;
-		if (os.indexOf("win") >= 0) {
-			//windows
-			dotFile = new File(dotDirectory, "dot.exe");
-		} else if (os.indexOf("mac") >= 0) {
-			//assume mac
-			dotFile = new File(new File(dotDirectory, "mac"), "dot");
-			dotFile.setExecutable(true);
-		} else if (System.getProperty("os.arch").contains("64")) {
-			//assume linux 64 bit
-			dotFile = new File(new File(dotDirectory, "linux64"), "dot");
-			dotFile.setExecutable(true);
-		} else {
-			//assume linux 32 bit
-			dotFile = new File(new File(dotDirectory, "linux32"), "dot");
-			dotFile.setExecutable(true);
+		return getOutput(dotProcess, start);
+	}
+
+	/**
+	 * Streams the bytes of a (memory-mapped) .dot file directly into the dot
+	 * process, without reading the file onto the heap.
+	 * 
+	 * @param dotFile
+	 * @param type
+	 * @param engine
+	 * @return the output of the dot process, or null if it could not be
+	 *         started.
+	 */
+	public static InputStream dot2imageInputStream(MappedDotFile dotFile, Type type, Engine engine) {
+		long start = System.nanoTime();
+		Process dotProcess = startDotProcess(type, engine);
+		if (dotProcess == null) {
+			return null;
+		}
+		try {
+			OutputStream out = getInput(dotProcess);
+			dotFile.writeTo(out);
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
 		}
 
-		//		System.out.println(dotFile);
+		return getOutput(dotProcess, start);
+	}
 
-		if (!dotFile.exists() || !dotFile.canExecute()) {
-			throw new RuntimeException("Graphviz-dot binary not found. " + dotFile.toString());
+	/**
+	 * Streams the dot into the standard input of the process, and closes it.
+	 * The serialisation is measured if GraphvizMetrics is enabled.
+	 * 
+	 * @param dot
+	 * @param dotProcess
+	 *            see startDotProcess()
+	 * @throws IOException
+	 */
+	public static void writeDot(Dot dot, Process dotProcess) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(getInput(dotProcess), "UTF-8"));
+		dot.writeTo(out);
+		out.close();
+	}
+
+	/**
+	 * Writes an already serialised dot (see Dot2ImageCache.getText()) into the
+	 * standard input of the process, and closes it.
+	 * 
+	 * @param text
+	 * @param dotProcess
+	 *            see startDotProcess()
+	 * @throws IOException
+	 */
+	public static void writeDot(byte[] text, Process dotProcess) throws IOException {
+		OutputStream out = getInput(dotProcess);
+		out.write(text);
+		out.close();
+	}
+
+	/**
+	 * 
+	 * @param dotProcess
+	 * @return the standard input of the process, measured if GraphvizMetrics
+	 *         is enabled.
+	 */
+	public static OutputStream getInput(Process dotProcess) {
+		if (GraphvizMetrics.isEnabled()) {
+			return GraphvizMetrics.measureSerialisation(dotProcess.getOutputStream());
+		}
+		return dotProcess.getOutputStream();
+	}
+
+	/**
+	 * 
+	 * @param dotProcess
+	 * @param start
+	 *            The time (System.nanoTime()) just before the process was
+	 *            started.
+	 * @return the standard output of the process, measured if
+	 *         GraphvizMetrics is enabled.
+	 */
+	public static InputStream getOutput(Process dotProcess, long start) {
+		InputStream result = new BufferedInputStream(dotProcess.getInputStream());
+		if (GraphvizMetrics.isEnabled()) {
+			return GraphvizMetrics.measureLayout(result, start);
 		}
+		return result;
+	}
+
+	public static boolean dot2image(MappedDotFile dotFile, File file, Type type, Engine engine) {
+		return copyToFile(dot2imageInputStream(dotFile, type, engine), file);
+	}
+
+	/**
+	 * Starts a dot process that reads the graph from its standard input and
+	 * writes the image to its standard output. The error stream of the
+	 * process is redirected to System.err. Use this to be able to abort a
+	 * layout by destroying the process.
+	 * 
+	 * @param type
+	 * @param engine
+	 * @return the process, or null if it could not be started.
+	 */
+	public static Process startDotProcess(Type type, Engine engine) {
+		File dotFile = getDotBinary();
 
 		String args[];
 		switch (engine) {
@@ -109,22 +236,17 @@ public class Dot2Image {
 		final ProcessBuilder pb = new ProcessBuilder(args);
 		pb.redirectErrorStream(false);
 
-		Process dotProcess = null;
+		Process dotProcess;
 		try {
 			dotProcess = pb.start();
-			BufferedWriter out2 = new BufferedWriter(new OutputStreamWriter(dotProcess.getOutputStream(), "UTF-8"));
-			out2.write(dot.toString());
-			out2.flush();
-			out2.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
 		}
 
 		redirectIO(dotProcess.getErrorStream(), System.err);
-		InputStream outputOfDot = new BufferedInputStream(dotProcess.getInputStream());
 
-		return outputOfDot;
+		return dotProcess;
 	}
 
 	public static boolean dot2image(String dot, File file, Type type) {
@@ -132,8 +254,22 @@ public class Dot2Image {
 	}
 
 	public static boolean dot2image(String dot, File file, Type type, Engine engine) {
+		return copyToFile(dot2imageInputStream(dot, type, engine), file);
+	}
+
+	public static boolean dot2image(Dot dot, File file, Type type) {
+		return dot2image(dot, file, type, Engine.dot);
+	}
+
+	public static boolean dot2image(Dot dot, File file, Type type, Engine engine) {
+		return copyToFile(dot2imageInputStream(dot, type, engine), file);
+	}
+
+	private static boolean copyToFile(InputStream inputStream, File file) {
+		if (inputStream == null) {
+			return false;
+		}
 		try {
-			InputStream inputStream = dot2imageInputStream(dot, type, engine);
 			FileOutputStream outputStream = new FileOutputStream(file);
 			IOUtils.copy(inputStream, outputStream);
 			outputStream.flush();
@@ -145,14 +281,6 @@ public class Dot2Image {
 		return true;
 	}
 
-	public static boolean dot2image(Dot dot, File file, Type type) {
-		return dot2image(dot.toString(), file, type);
-	}
-
-	public static boolean dot2image(Dot dot, File file, Type type, Engine engine) {
-		return dot2image(dot.toString(), file, type, engine);
-	}
-
 	private static List<String> dotFiles = new LinkedList<String>(Arrays.asList("dot.exe", "cdt.dll", "cgraph.dll",
 			"config6", "dot.exe", "fontconfig_fix.dll", "fontconfig.dll", "freetype6.dll", "glut32.dll", "gvc.dll",
 			"gvplugin_core.dll", "gvplugin_dot_layout.dll", "gvplugin_gd.dll", "gvplugin_gdiplus.dll",
@@ -177,9 +305,67 @@ public class Dot2Image {
 			//mac
 			"mac/dot"));
 
+	/**
+	 * The dot binary is located once and reused by all subsequent calls, as
+	 * locating it involves checking the complete dot directory.
+	 */
+	private static volatile File dotBinary = null;
+
+	private static File getDotBinary() {
+		File result = dotBinary;
+		if (result != null && result.canExecute()) {
+			return result;
+		}
+
+		File dotDirectory;
+		try {
+			dotDirectory = getDotDirectory();
+		} catch (IOException e1) {
+			e1.printStackTrace();
+			throw new RuntimeException("Graphviz-dot binary not found. \n" + ExceptionUtils.getStackTrace(e1));
+		}
+
+		//detect the operating system and locate dot binary
+		String os = System.getProperty("os.name").toLowerCase();
+		File dotFile;
+		if (os.indexOf("win") >= 0) {
+			//windows
+			dotFile = new File(dotDirectory, "dot.exe");
+		} else if (os.indexOf("mac") >= 0) {
+			//assume mac
+			dotFile = new File(new File(dotDirectory, "mac"), "dot");
+			dotFile.setExecutable(true);
+		} else if (System.getProperty("os.arch").contains("64")) {
+			//assume linux 64 bit
+			dotFile = new File(new File(dotDirectory, "linux64"), "dot");
+			dotFile.setExecutable(true);
+		} else {
+			//assume linux 32 bit
+			dotFile = new File(new File(dotDirectory, "linux32"), "dot");
+			dotFile.setExecutable(true);
+		}
+
+		//		System.out.println(dotFile);
+
+		if (!dotFile.exists() || !dotFile.canExecute()) {
+			throw new RuntimeException("Graphviz-dot binary not found. " + dotFile.toString());
+		}
+
+		dotBinary = dotFile;
+		return dotFile;
+	}
+
+	/**
+	 * 
+	 * @return the directory in which Graphviz-related files are stored
+	 *         (binaries, caches).
+	 */
+	static File getGraphvizTempDirectory() {
+		return new File(System.getProperty("java.io.tmpdir"), ".prom-graphviz");
+	}
+
 	private static synchronized File getDotDirectory() throws IOException {
-		File dotDirectory = new File(new File(System.getProperty("java.io.tmpdir"), ".prom-graphviz"),
-				"dotBinaries" + dotVersion);
+		File dotDirectory = new File(getGraphvizTempDirectory(), "dotBinaries" + dotVersion);
 		if (!dotDirectory.exists()) {
 			createDotDirectoryByCopying(dotDirectory);
 		}
@@ -217,14 +403,29 @@ public class Dot2Image {
 		}
 	}
 
+	/**
+	 * Threads that copy the error streams of dot processes. These threads are
+	 * reused between dot processes and do not keep the JVM alive.
+	 */
+	private static final ExecutorService redirectIOPool = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Graphviz-dot error stream " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
 	private static void redirectIO(final InputStream src, final PrintStream dest) {
-		new Thread(new Runnable() {
+		redirectIOPool.execute(new Runnable() {
 			public void run() {
 				Scanner sc = new Scanner(src);
 				while (sc.hasNextLine()) {
 					dest.println(sc.nextLine());
 				}
+				sc.close();
 			}
-		}).start();
+		});
 	}
 }
@@ -0,0 +1,600 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.processmining.plugins.graphviz.dot.Dot2Image.Engine;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+
+/**
+ * Caches the output of Dot2Image, keyed on a hash of the Dot text, the engine
+ * and the output type. Hence, a graph that is rendered again with exactly the
+ * same text (e.g. when the user cycles back to a previous graph direction) is
+ * not laid out again.
+ * 
+ * The cache has an in-memory tier and an optional on-disk tier. Both evict
+ * the least-recently used outputs once the total size of their outputs
+ * exceeds a maximum; on disk, the last-modified time of a file records its
+ * last use.
+ * 
+ * @author sander
+ * 
+ */
+public class Dot2ImageCache {
+
+	public static final long defaultMaximumMemorySize = 64 * 1024 * 1024;
+	public static final long defaultMaximumDiskSize = 256 * 1024 * 1024;
+
+	private static Dot2ImageCache defaultCache = null;
+
+	private final long maximumMemorySize;
+	private final long maximumDiskSize;
+	private final File diskDirectory;
+
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+	private long memorySize = 0;
+	private final AtomicLong diskSize = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * 
+	 * @param maximumMemorySize
+	 *            The maximum number of bytes kept in memory.
+	 * @param diskDirectory
+	 *            The directory of the on-disk tier, or null to disable it.
+	 */
+	public Dot2ImageCache(long maximumMemorySize, File diskDirectory) {
+		this(maximumMemorySize, diskDirectory, defaultMaximumDiskSize);
+	}
+
+	/**
+	 * 
+	 * @param maximumMemorySize
+	 *            The maximum number of bytes kept in memory.
+	 * @param diskDirectory
+	 *            The directory of the on-disk tier, or null to disable it.
+	 * @param maximumDiskSize
+	 *            The maximum number of bytes kept on disk.
+	 */
+	public Dot2ImageCache(long maximumMemorySize, File diskDirectory, long maximumDiskSize) {
+		this.maximumMemorySize = maximumMemorySize;
+		this.maximumDiskSize = maximumDiskSize;
+		this.diskDirectory = diskDirectory;
+		if (diskDirectory != null) {
+			diskDirectory.mkdirs();
+			for (File file : getDiskFiles()) {
+				diskSize.addAndGet(file.length());
+			}
+			evictFromDisk();
+		}
+	}
+
+	/**
+	 * 
+	 * @return The shared cache, which only keeps outputs in memory.
+	 */
+	public static synchronized Dot2ImageCache getDefault() {
+		if (defaultCache == null) {
+			defaultCache = new Dot2ImageCache(defaultMaximumMemorySize, null);
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * 
+	 * @return The default directory of the on-disk tier, in the Graphviz
+	 *         temporary directory.
+	 */
+	public static File getDefaultDiskDirectory() {
+		return new File(Dot2Image.getGraphvizTempDirectory(), "cache" + Dot2Image.dotVersion);
+	}
+
+	public InputStream dot2imageInputStream(Dot dot, Type type) {
+		return dot2imageInputStream(dot, type, Dot2Image.getEngine(dot));
+	}
+
+	/**
+	 * Returns the cached output of dot, or calls Dot2Image if it is not in
+	 * the cache.
+	 * 
+	 * @param dot
+	 * @param type
+	 * @param engine
+	 * @return the output of dot, or null if dot could not be run.
+	 */
+	public InputStream dot2imageInputStream(Dot dot, Type type, Engine engine) {
+		byte[] result = dot2image(dot, type, engine);
+		if (result == null) {
+			return null;
+		}
+		return new ByteArrayInputStream(result);
+	}
+
+	/**
+	 * 
+	 * @param dot
+	 * @param type
+	 * @param engine
+	 * @return the output of dot, or null if dot could not be run. Do not
+	 *         modify the returned array.
+	 */
+	public byte[] dot2image(Dot dot, Type type, Engine engine) {
+		byte[] text;
+		String key;
+		try {
+			text = getText(dot);
+			key = getKey(text, type, engine);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return toByteArray(Dot2Image.dot2imageInputStream(dot, type, engine));
+		}
+
+		byte[] result = get(key);
+		if (result != null) {
+			return result;
+		}
+
+		//the text that was hashed is passed to dot, rather than serialising the graph again
+		result = toByteArray(dot2imageInputStream(text, type, engine));
+		put(key, result);
+		return result;
+	}
+
+	/**
+	 * Writes the output of dot to a file, taking it from the cache if
+	 * possible. Outputs are not read into memory: an output that is cached on
+	 * disk is copied from file to file, and an output that is not cached is
+	 * streamed from dot into the file and added to the disk tier only, such
+	 * that large exports do not evict layouts from the memory tier.
+	 * 
+	 * @param dot
+	 * @param file
+	 * @param type
+	 * @param engine
+	 * @return whether the file was written.
+	 */
+	public boolean dot2image(Dot dot, File file, Type type, Engine engine) {
+		byte[] text;
+		String key;
+		try {
+			text = getText(dot);
+			key = getKey(text, type, engine);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return Dot2Image.dot2image(dot, file, type, engine);
+		}
+
+		try {
+			byte[] result = getFromMemory(key);
+			if (result != null) {
+				Files.write(file.toPath(), result);
+				return true;
+			}
+			File cached = getFromDisk(key);
+			if (cached != null) {
+				try {
+					Files.copy(cached.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					diskHits.incrementAndGet();
+					return true;
+				} catch (IOException e) {
+					//an unreadable output is computed again
+					e.printStackTrace();
+					removeFromDisk(cached);
+				}
+			}
+			misses.incrementAndGet();
+
+			InputStream input = dot2imageInputStream(text, type, engine);
+			if (input == null) {
+				return false;
+			}
+			long bytes;
+			try {
+				bytes = Files.copy(input, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				input.close();
+			}
+			if (bytes == 0) {
+				//failed dot runs are not cached
+				file.delete();
+				return false;
+			}
+			writeToDisk(key, file);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Looks up an output, first in memory and then on disk.
+	 * 
+	 * @param key
+	 *            see getKey()
+	 * @return the cached output, or null if it is not cached. Do not modify
+	 *         the returned array.
+	 */
+	public byte[] get(String key) {
+		byte[] result = getFromMemory(key);
+		if (result != null) {
+			return result;
+		}
+
+		File cached = getFromDisk(key);
+		if (cached != null) {
+			result = readFromDisk(cached);
+			if (result != null) {
+				diskHits.incrementAndGet();
+				putInMemory(key, result);
+				return result;
+			}
+			//an unreadable output is computed again
+			removeFromDisk(cached);
+		}
+
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Looks up an output in the memory tier.
+	 * 
+	 * @return the cached output, or null if it is not in memory.
+	 */
+	private byte[] getFromMemory(String key) {
+		byte[] result;
+		synchronized (this) {
+			result = memory.get(key);
+		}
+		if (result != null) {
+			hits.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * Looks up an output in the disk tier, without reading it, and marks it
+	 * as used. The caller counts the disk hit once the file has been read.
+	 * 
+	 * @return the file of the cached output, or null if it is not on disk.
+	 */
+	private File getFromDisk(String key) {
+		if (diskDirectory == null) {
+			return null;
+		}
+		File file = new File(diskDirectory, key);
+		if (!file.exists()) {
+			return null;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return file;
+	}
+
+	/**
+	 * Adds an output to the cache. Outputs of failed dot runs (null or
+	 * empty) are not cached.
+	 * 
+	 * @param key
+	 *            see getKey()
+	 * @param value
+	 */
+	public void put(String key, byte[] value) {
+		if (value == null || value.length == 0) {
+			return;
+		}
+		putInMemory(key, value);
+		writeToDisk(key, value);
+	}
+
+	/**
+	 * 
+	 * @param dot
+	 * @param type
+	 * @param engine
+	 * @return the key under which the output of dot is cached.
+	 * @throws IOException
+	 */
+	public static String getKey(Dot dot, Type type, Engine engine) throws IOException {
+		return getKey(getText(dot), type, engine);
+	}
+
+	/**
+	 * 
+	 * @param text
+	 *            see getText()
+	 * @param type
+	 * @param engine
+	 * @return the key under which the output of dot for the text is cached.
+	 * @throws IOException
+	 */
+	public static String getKey(byte[] text, Type type, Engine engine) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		StringBuilder result = new StringBuilder();
+		for (byte b : digest.digest(text)) {
+			result.append(Character.forDigit((b >> 4) & 0xF, 16));
+			result.append(Character.forDigit(b & 0xF, 16));
+		}
+		result.append('-');
+		result.append(engine);
+		result.append('.');
+		result.append(type);
+		return result.toString();
+	}
+
+	/**
+	 * Serialises the dot once, such that the same text can be hashed (see
+	 * getKey()) and passed to dot (see Dot2Image.writeDot()).
+	 * 
+	 * @param dot
+	 * @return the UTF-8 text of the dot.
+	 * @throws IOException
+	 */
+	public static byte[] getText(Dot dot) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(result, "UTF-8");
+		dot.writeTo(writer);
+		writer.close();
+		return result.toByteArray();
+	}
+
+	private static InputStream dot2imageInputStream(byte[] text, Type type, Engine engine) {
+		long start = System.nanoTime();
+		Process dotProcess = Dot2Image.startDotProcess(type, engine);
+		if (dotProcess == null) {
+			return null;
+		}
+		try {
+			Dot2Image.writeDot(text, dotProcess);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return Dot2Image.getOutput(dotProcess, start);
+	}
+
+	private synchronized void putInMemory(String key, byte[] value) {
+		if (value.length > maximumMemorySize) {
+			return;
+		}
+		byte[] old = memory.put(key, value);
+		if (old != null) {
+			memorySize -= old.length;
+		}
+		memorySize += value.length;
+
+		//evict the least-recently used outputs
+		Iterator<Entry<String, byte[]>> it = memory.entrySet().iterator();
+		while (memorySize > maximumMemorySize && it.hasNext()) {
+			Entry<String, byte[]> eldest = it.next();
+			memorySize -= eldest.getValue().length;
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	private static byte[] readFromDisk(File file) {
+		try (InputStream input = new FileInputStream(file)) {
+			return readFully(input);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private void writeToDisk(String key, byte[] value) {
+		if (diskDirectory == null) {
+			return;
+		}
+		//write to a temporary file first, such that no partial outputs can be read
+		File file = new File(diskDirectory, key);
+		File temporaryFile = new File(diskDirectory, key + "." + Thread.currentThread().getId() + ".tmp");
+		try (OutputStream output = new FileOutputStream(temporaryFile)) {
+			output.write(value);
+		} catch (IOException e) {
+			e.printStackTrace();
+			temporaryFile.delete();
+			return;
+		}
+		addToDisk(temporaryFile, file);
+	}
+
+	private void writeToDisk(String key, File value) {
+		if (diskDirectory == null) {
+			return;
+		}
+		File file = new File(diskDirectory, key);
+		File temporaryFile = new File(diskDirectory, key + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			Files.copy(value.toPath(), temporaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			e.printStackTrace();
+			temporaryFile.delete();
+			return;
+		}
+		addToDisk(temporaryFile, file);
+	}
+
+	/**
+	 * Moves a completely written temporary file to its place in the disk
+	 * tier, and evicts outputs if the tier has grown too large.
+	 */
+	private void addToDisk(File temporaryFile, File file) {
+		long length = temporaryFile.length();
+		long oldLength = file.length();
+		if (!temporaryFile.renameTo(file)) {
+			temporaryFile.delete();
+			return;
+		}
+		diskSize.addAndGet(length - oldLength);
+		if (diskSize.get() > maximumDiskSize) {
+			evictFromDisk();
+		}
+	}
+
+	private void removeFromDisk(File file) {
+		//only files are counted in the size of the tier
+		long length = file.isFile() ? file.length() : 0;
+		if (file.delete()) {
+			diskSize.addAndGet(-length);
+		}
+	}
+
+	/**
+	 * Deletes the least-recently used outputs from disk until the disk tier
+	 * fits its maximum size.
+	 */
+	private synchronized void evictFromDisk() {
+		File[] files = getDiskFiles();
+		final long[] lastModified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			//read the times once, as other threads may touch files while sorting
+			lastModified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Long.compare(lastModified[a], lastModified[b]);
+			}
+		});
+		for (int i = 0; i < order.length && diskSize.get() > maximumDiskSize; i++) {
+			removeFromDisk(files[order[i]]);
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 
+	 * @return the outputs in the disk tier; temporary files are excluded.
+	 */
+	private File[] getDiskFiles() {
+		File[] result = diskDirectory.listFiles();
+		if (result == null) {
+			return new File[0];
+		}
+		int count = 0;
+		for (File file : result) {
+			if (file.isFile() && !file.getName().endsWith(".tmp")) {
+				result[count] = file;
+				count++;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	private static byte[] toByteArray(InputStream input) {
+		if (input == null) {
+			return null;
+		}
+		try {
+			byte[] result = readFully(input);
+			input.close();
+			return result;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static byte[] readFully(InputStream input) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[64 * 1024];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			result.write(buffer, 0, read);
+		}
+		return result.toByteArray();
+	}
+
+	/**
+	 * Removes all outputs from the memory tier.
+	 */
+	public synchronized void clear() {
+		memory.clear();
+		memorySize = 0;
+	}
+
+	/**
+	 * 
+	 * @return The number of outputs that were found in memory.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * 
+	 * @return The number of outputs that were not in memory, but were found
+	 *         on disk.
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	/**
+	 * 
+	 * @return The number of outputs that had to be computed by dot.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * 
+	 * @return The number of outputs that were evicted from memory or from
+	 *         disk.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * 
+	 * @return The number of bytes currently cached in memory.
+	 */
+	public synchronized long getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * 
+	 * @return The number of bytes currently cached on disk.
+	 */
+	public long getDiskSize() {
+		return diskSize.get();
+	}
+
+	public String toString() {
+		return "hits " + getHits() + ", disk hits " + getDiskHits() + ", misses " + getMisses() + ", evictions "
+				+ getEvictions() + ", memory " + getMemorySize() + " bytes, disk " + getDiskSize() + " bytes";
+	}
+}
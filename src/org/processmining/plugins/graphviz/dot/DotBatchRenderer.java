@@ -0,0 +1,405 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.processmining.plugins.graphviz.dot.Dot2Image.Engine;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+
+/**
+ * Renders many graphs to files without a user interface: each graph is
+ * streamed into a dot process and the output of dot is streamed into its
+ * file. The jobs are run by a DotRendererPool: at most a fixed number of dot
+ * processes run concurrently; if the queue of waiting graphs is full, submit()
+ * blocks (backpressure). Results do not refer to their jobs, so a graph can be
+ * garbage collected as soon as it has been rendered.
+ *
+ * Keeps per-job latencies and overall throughput.
+ *
+ * @author sander
+ *
+ */
+public class DotBatchRenderer {
+
+	public static class Job {
+		private final Dot dot;
+		private final File file;
+		private final Type type;
+		private final Engine engine;
+
+		public Job(Dot dot, File file, Type type) {
+			this(dot, file, type, Dot2Image.getEngine(dot));
+		}
+
+		public Job(Dot dot, File file, Type type, Engine engine) {
+			this.dot = dot;
+			this.file = file;
+			this.type = type;
+			this.engine = engine;
+		}
+
+		public Dot getDot() {
+			return dot;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		public Engine getEngine() {
+			return engine;
+		}
+	}
+
+	public static class Result {
+		private final File file;
+		private final long latency;
+		private final long renderTime;
+		private final long bytes;
+		private final Throwable error;
+
+		public Result(File file, long latency, long renderTime, long bytes, Throwable error) {
+			this.file = file;
+			this.latency = latency;
+			this.renderTime = renderTime;
+			this.bytes = bytes;
+			this.error = error;
+		}
+
+		/**
+		 *
+		 * @return The file of the job.
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 *
+		 * @return The time from submission until the file was written, in
+		 *         nanoseconds (includes waiting in the queue).
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 *
+		 * @return The time the dot process took, in nanoseconds.
+		 */
+		public long getRenderTime() {
+			return renderTime;
+		}
+
+		/**
+		 *
+		 * @return The number of bytes written to the file.
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 *
+		 * @return The reason the job failed, or null if it succeeded.
+		 */
+		public Throwable getError() {
+			return error;
+		}
+
+		public boolean isSuccessful() {
+			return error == null;
+		}
+
+		public String toString() {
+			return file + ": " + (isSuccessful() ? bytes + " bytes" : "failed (" + error + ")")
+					+ ", latency " + (latency / 1000000) + "ms, render " + (renderTime / 1000000) + "ms";
+		}
+	}
+
+	private final DotRendererPool renderers;
+
+	private final AtomicLong firstSubmission = new AtomicLong(Long.MIN_VALUE);
+	private final AtomicLong lastCompletion = new AtomicLong(Long.MIN_VALUE);
+	private final AtomicInteger jobsDone = new AtomicInteger();
+	private final AtomicInteger jobsFailed = new AtomicInteger();
+	private final AtomicLong totalBytes = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private final AtomicLong totalRenderTime = new AtomicLong();
+
+	/**
+	 *
+	 * @param numberOfProcesses
+	 *            The maximum number of dot processes that run concurrently.
+	 * @param queueCapacity
+	 *            The maximum number of jobs that wait for a process; when
+	 *            reached, submit() blocks.
+	 */
+	public DotBatchRenderer(int numberOfProcesses, int queueCapacity) {
+		renderers = new DotRendererPool(numberOfProcesses, queueCapacity);
+	}
+
+	/**
+	 * A batch renderer with a dot process per processor.
+	 */
+	public DotBatchRenderer() {
+		this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	/**
+	 * Renders all jobs and waits until they are done. Jobs are taken from the
+	 * iterator only when there is room in the queue, so the jobs may be
+	 * generated lazily. Nothing is kept of the jobs, so this uses constant
+	 * memory for any number of jobs.
+	 *
+	 * @param jobs
+	 * @param consumer
+	 *            Is given the result of each job when it is done, in the order
+	 *            of completion, on the thread that rendered it.
+	 * @throws InterruptedException
+	 */
+	public void render(Iterator<Job> jobs, final Consumer<Result> consumer) throws InterruptedException {
+		final Semaphore finished = new Semaphore(0);
+		int submitted = 0;
+		while (jobs.hasNext()) {
+			submit(jobs.next()).whenComplete(new BiConsumer<Result, Throwable>() {
+				public void accept(Result result, Throwable error) {
+					try {
+						if (result != null) {
+							consumer.accept(result);
+						}
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					} finally {
+						finished.release();
+					}
+				}
+			});
+			submitted++;
+		}
+		finished.acquire(submitted);
+	}
+
+	/**
+	 * Renders all jobs and waits until they are done. Jobs are taken from the
+	 * iterator only when there is room in the queue, so the jobs may be
+	 * generated lazily.
+	 *
+	 * @param jobs
+	 * @return the results, in the order of the jobs.
+	 * @throws InterruptedException
+	 */
+	public List<Result> render(Iterator<Job> jobs) throws InterruptedException {
+		List<CompletableFuture<Result>> futures = new ArrayList<>();
+		while (jobs.hasNext()) {
+			futures.add(submit(jobs.next()));
+		}
+		List<Result> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<Result> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				//jobs report their failures in their results
+				throw new RuntimeException(e);
+			}
+		}
+		return results;
+	}
+
+	public List<Result> render(Iterable<Job> jobs) throws InterruptedException {
+		return render(jobs.iterator());
+	}
+
+	/**
+	 * Queues a job. Blocks while the queue is full.
+	 *
+	 * @param job
+	 * @return a future that completes when the file has been written or the
+	 *         job failed.
+	 * @throws InterruptedException
+	 */
+	public CompletableFuture<Result> submit(final Job job) throws InterruptedException {
+		final long submitted = System.nanoTime();
+		firstSubmission.compareAndSet(Long.MIN_VALUE, submitted);
+		final File file = job.getFile();
+		CompletableFuture<Result> result = renderers.submit(new Callable<Result>() {
+			public Result call() {
+				long start = System.nanoTime();
+				long bytes = 0;
+				Throwable error = null;
+				try {
+					bytes = renderNow(job);
+				} catch (Throwable e) {
+					error = e;
+				}
+				long end = System.nanoTime();
+				return done(file, end - submitted, end - start, bytes, error, end);
+			}
+		});
+		if (result.isCompletedExceptionally()) {
+			//the renderer has been shut down
+			Throwable error = null;
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				error = e.getCause();
+			}
+			long end = System.nanoTime();
+			result = CompletableFuture.completedFuture(done(file, end - submitted, 0, 0, error, end));
+		}
+		return result;
+	}
+
+	private Result done(File file, long latency, long renderTime, long bytes, Throwable error, long end) {
+		if (error == null) {
+			jobsDone.incrementAndGet();
+			totalBytes.addAndGet(bytes);
+		} else {
+			jobsFailed.incrementAndGet();
+		}
+		totalLatency.addAndGet(latency);
+		totalRenderTime.addAndGet(renderTime);
+		long last;
+		do {
+			last = lastCompletion.get();
+		} while (last < end && !lastCompletion.compareAndSet(last, end));
+		return new Result(file, latency, renderTime, bytes, error);
+	}
+
+	/**
+	 * Streams the dot into a dot process and the output of dot into a
+	 * temporary file, which replaces the file once dot has finished
+	 * successfully. Hence, a failed job does not leave a partial file.
+	 *
+	 * @return the number of bytes written.
+	 */
+	private static long renderNow(Job job) throws IOException {
+		long start = System.nanoTime();
+		Process dotProcess = Dot2Image.startDotProcess(job.getType(), job.getEngine());
+		if (dotProcess == null) {
+			throw new IOException("Graphviz-dot could not be started.");
+		}
+		File file = job.getFile();
+		File temporaryFile = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+		boolean written = false;
+		try {
+			Dot2Image.writeDot(job.getDot(), dotProcess);
+
+			long bytes = 0;
+			byte[] buffer = new byte[64 * 1024];
+			try (InputStream outputOfDot = Dot2Image.getOutput(dotProcess, start);
+					OutputStream output = new FileOutputStream(temporaryFile)) {
+				int read;
+				while ((read = outputOfDot.read(buffer)) != -1) {
+					output.write(buffer, 0, read);
+					bytes += read;
+				}
+			}
+			int exitValue = dotProcess.waitFor();
+			if (exitValue != 0) {
+				throw new IOException("Graphviz-dot exited with " + exitValue + " for " + file);
+			}
+			if (bytes == 0) {
+				throw new IOException("Graphviz-dot did not produce output for " + file);
+			}
+			Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			written = true;
+			return bytes;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for Graphviz-dot for " + file);
+		} finally {
+			dotProcess.destroy();
+			if (!written) {
+				temporaryFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Stops accepting new jobs; jobs that are queued will still be rendered.
+	 */
+	public void shutdown() {
+		renderers.shutdown();
+	}
+
+	/**
+	 *
+	 * @return The number of jobs that wrote their file.
+	 */
+	public int getNumberOfJobsDone() {
+		return jobsDone.get();
+	}
+
+	public int getNumberOfJobsFailed() {
+		return jobsFailed.get();
+	}
+
+	/**
+	 *
+	 * @return The number of bytes written by all jobs.
+	 */
+	public long getBytesWritten() {
+		return totalBytes.get();
+	}
+
+	/**
+	 *
+	 * @return The average latency of the finished jobs, in nanoseconds.
+	 */
+	public long getAverageLatency() {
+		int jobs = jobsDone.get() + jobsFailed.get();
+		return jobs == 0 ? 0 : totalLatency.get() / jobs;
+	}
+
+	/**
+	 *
+	 * @return The average time a dot process took, in nanoseconds.
+	 */
+	public long getAverageRenderTime() {
+		int jobs = jobsDone.get() + jobsFailed.get();
+		return jobs == 0 ? 0 : totalRenderTime.get() / jobs;
+	}
+
+	/**
+	 *
+	 * @return The number of jobs finished per second, from the first
+	 *         submission until the last completion.
+	 */
+	public double getThroughput() {
+		long first = firstSubmission.get();
+		long last = lastCompletion.get();
+		if (first == Long.MIN_VALUE || last == Long.MIN_VALUE || last - first <= 0) {
+			return 0;
+		}
+		return (jobsDone.get() + jobsFailed.get()) / ((last - first) / 1000000000.0);
+	}
+
+	public String toString() {
+		return "jobs " + getNumberOfJobsDone() + ", failed " + getNumberOfJobsFailed() + ", bytes "
+				+ getBytesWritten() + ", average latency " + (getAverageLatency() / 1000000)
+				+ "ms, average render time " + (getAverageRenderTime() / 1000000) + "ms, throughput "
+				+ String.format("%.2f", getThroughput()) + " jobs/s";
+	}
+}
@@ -1,19 +1,63 @@
 package org.processmining.plugins.graphviz.dot;
 
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DotCluster extends DotNode {
 
-	private final List<DotNode> nodes;
-	private final List<DotEdge> edges;
+	/*
+	 * Removed nodes and edges are replaced by null (tombstones), which are
+	 * removed in one pass when the index is built or when a position at or
+	 * after the first tombstone is read. The counts of additions and removals
+	 * make the iterators of the views fail fast.
+	 */
+	private final ArrayList<DotNode> nodes;
+	private final ArrayList<DotEdge> edges;
 	private final List<DotCluster> clusters;
+	private final List<DotSubgraph> subgraphs;
+	private int nodeTombstones = 0;
+	private int edgeTombstones = 0;
+	private int firstNodeTombstone = Integer.MAX_VALUE;
+	private int firstEdgeTombstone = Integer.MAX_VALUE;
+	private int nodeChanges = 0;
+	private int edgeChanges = 0;
+
+	/*
+	 * The index is built on the first removal or indexed lookup, and
+	 * maintained from then on. It is dropped, and rebuilt on the next use,
+	 * when the source or target of one of the edges of this graph changes.
+	 */
+	private Index index = null;
+
+	/*
+	 * Every change of the nodes, edges or clusters of a graph gives it a new
+	 * modification number, which is larger than all numbers given before.
+	 * Hence, the largest number in a graph and its sub-graphs changes on any
+	 * change of any of them, which is used to validate the caches of the
+	 * recursive lists.
+	 */
+	private static final AtomicLong modifications = new AtomicLong();
+	private long modification = modifications.incrementAndGet();
+	private DotNode[] nodesRecursive = null;
+	private long nodesRecursiveModification;
+	private DotEdge[] edgesRecursive = null;
+	private long edgesRecursiveModification;
 
 	private final Map<String, String> graphOptionMap;
 	private final Map<String, String> nodeOptionMap;
@@ -24,6 +68,7 @@ public class DotCluster extends DotNode {
 		nodes = new ArrayList<DotNode>();
 		edges = new ArrayList<DotEdge>();
 		clusters = new ArrayList<DotCluster>();
+		subgraphs = new ArrayList<DotSubgraph>(0);
 		graphOptionMap = new HashMap<>();
 		nodeOptionMap = new HashMap<>();
 		edgeOptionMap = new HashMap<>();
@@ -35,24 +80,86 @@ public class DotCluster extends DotNode {
 	 *         sub-graphs).
 	 */
 	public List<DotNode> getNodes() {
-		return Collections.unmodifiableList(nodes);
+		return nodesView;
 	}
 
+	private final List<DotNode> nodesView = new View<DotNode>() {
+		protected ArrayList<DotNode> getList() {
+			return nodes;
+		}
+
+		protected int getTombstones() {
+			return nodeTombstones;
+		}
+
+		protected int getFirstTombstone() {
+			return firstNodeTombstone;
+		}
+
+		protected int getChanges() {
+			return nodeChanges;
+		}
+
+		protected void compact() {
+			compactNodes();
+		}
+	};
+
 	/**
 	 * 
 	 * @return An unmodifiable list of all nodes in this graph and all it's
 	 *         sub-graphs.
 	 */
 	public List<DotNode> getNodesRecursive() {
-		List<DotNode> result = new LinkedList<DotNode>();
-		result.addAll(nodes);
-		result.addAll(clusters);
-
-		for (DotCluster cluster : clusters) {
-			result.addAll(cluster.getNodesRecursive());
+		long modification = getRecursiveModification();
+		if (nodesRecursive == null || nodesRecursiveModification != modification) {
+			List<DotNode> result = new ArrayList<>();
+			Iterator<DotNode> it = getNodesRecursiveIterator();
+			while (it.hasNext()) {
+				result.add(it.next());
+			}
+			nodesRecursive = result.toArray(new DotNode[result.size()]);
+			nodesRecursiveModification = modification;
 		}
+		return Collections.unmodifiableList(Arrays.asList(nodesRecursive));
+	}
 
-		return Collections.unmodifiableList(result);
+	/**
+	 * 
+	 * @return An iterator over all nodes in this graph and all its sub-graphs,
+	 *         in the order of getNodesRecursive(), that does not copy the
+	 *         nodes. The graph must not be changed while iterating.
+	 */
+	public Iterator<DotNode> getNodesRecursiveIterator() {
+		return new RecursiveIterator<DotNode>(this) {
+			protected int getNumberOfPhases() {
+				return 2;
+			}
+
+			protected List<? extends DotNode> getList(DotCluster cluster, int phase) {
+				return phase == 0 ? cluster.nodes : cluster.clusters;
+			}
+		};
+	}
+
+	/**
+	 * 
+	 * @return A spliterator over all nodes in this graph and all its
+	 *         sub-graphs, which splits evenly for parallel streams. The graph
+	 *         must not be changed while it is in use.
+	 */
+	public Spliterator<DotNode> getNodesRecursiveSpliterator() {
+		getNodesRecursive();
+		return Spliterators.spliterator(nodesRecursive, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+	}
+
+	/**
+	 * 
+	 * @param parallel
+	 * @return A stream of all nodes in this graph and all its sub-graphs.
+	 */
+	public Stream<DotNode> getNodesRecursiveStream(boolean parallel) {
+		return StreamSupport.stream(getNodesRecursiveSpliterator(), parallel);
 	}
 
 	/**
@@ -86,6 +193,11 @@ public class DotCluster extends DotNode {
 	 */
 	public void addNode(DotNode node) {
 		nodes.add(node);
+		nodeChanges++;
+		modified();
+		if (index != null) {
+			index.addNode(node, nodes.size() - 1);
+		}
 	}
 
 	/**
@@ -124,23 +236,69 @@ public class DotCluster extends DotNode {
 	 * @param node
 	 */
 	public void insertNode(int index, DotNode node) {
+		compactNodes();
 		nodes.add(index, node);
+		nodeChanges++;
+		modified();
+		//the positions of the following nodes shift
+		this.index = null;
 	}
 
 	/**
-	 * Remove all equivalent dot nodes from the graph.
+	 * Remove all equivalent dot nodes from the graph. Edges of the node are
+	 * not removed (see removeNodeWithEdges). Takes constant time.
 	 * 
 	 * @param node
 	 */
 	public void removeNode(DotNode node) {
-		Iterator<DotNode> it = nodes.iterator();
-		while (it.hasNext()) {
-			if (node.equals(it.next())) {
-				it.remove();
+		Index index = getIndex();
+		if (index.duplicateNodes) {
+			compactNodes();
+			Iterator<DotNode> it = nodes.iterator();
+			while (it.hasNext()) {
+				if (node.equals(it.next())) {
+					it.remove();
+				}
 			}
+			this.index = null;
+			nodeChanges++;
+			modified();
+			return;
+		}
+		Integer position = index.nodePositions.remove(node.getId());
+		if (position != null) {
+			nodes.set(position, null);
+			nodeChanges++;
+			modified();
+			nodeTombstones++;
+			firstNodeTombstone = Math.min(firstNodeTombstone, position);
+			index.id2element.remove(node.getId());
 		}
 	}
 
+	/**
+	 * Removes the node and all edges of this graph that are connected to it.
+	 * Takes time linear in the number of edges of the node.
+	 * 
+	 * @param node
+	 */
+	public void removeNodeWithEdges(DotNode node) {
+		for (DotEdge edge : new ArrayList<>(getIncidentEdges(node))) {
+			removeEdge(edge);
+		}
+		removeNode(node);
+	}
+
+	/**
+	 * 
+	 * @param id
+	 * @return the node, edge or cluster of this graph (not of sub-graphs) with
+	 *         the given id, or null if it does not exist.
+	 */
+	public DotElement getElementById(String id) {
+		return getIndex().id2element.get(id);
+	}
+
 	/**
 	 * Set a default node option. It will be a default for all nodes in this
 	 * graph.
@@ -179,23 +337,86 @@ public class DotCluster extends DotNode {
 	 *         sub-graphs).
 	 */
 	public List<DotEdge> getEdges() {
-		return Collections.unmodifiableList(edges);
+		return edgesView;
 	}
 
+	private final List<DotEdge> edgesView = new View<DotEdge>() {
+		protected ArrayList<DotEdge> getList() {
+			return edges;
+		}
+
+		protected int getTombstones() {
+			return edgeTombstones;
+		}
+
+		protected int getFirstTombstone() {
+			return firstEdgeTombstone;
+		}
+
+		protected int getChanges() {
+			return edgeChanges;
+		}
+
+		protected void compact() {
+			compactEdges();
+		}
+	};
+
 	/**
 	 * 
 	 * @return An unmodifiable list of all edges in this graph and in all its
 	 *         sub-graphs.
 	 */
 	public List<DotEdge> getEdgesRecursive() {
-		List<DotEdge> result = new LinkedList<DotEdge>();
-		result.addAll(edges);
-
-		for (DotCluster cluster : clusters) {
-			result.addAll(cluster.getEdgesRecursive());
+		long modification = getRecursiveModification();
+		if (edgesRecursive == null || edgesRecursiveModification != modification) {
+			List<DotEdge> result = new ArrayList<>();
+			Iterator<DotEdge> it = getEdgesRecursiveIterator();
+			while (it.hasNext()) {
+				result.add(it.next());
+			}
+			edgesRecursive = result.toArray(new DotEdge[result.size()]);
+			edgesRecursiveModification = modification;
 		}
+		return Collections.unmodifiableList(Arrays.asList(edgesRecursive));
+	}
 
-		return Collections.unmodifiableList(result);
+	/**
+	 * 
+	 * @return An iterator over all edges in this graph and all its sub-graphs,
+	 *         in the order of getEdgesRecursive(), that does not copy the
+	 *         edges. The graph must not be changed while iterating.
+	 */
+	public Iterator<DotEdge> getEdgesRecursiveIterator() {
+		return new RecursiveIterator<DotEdge>(this) {
+			protected int getNumberOfPhases() {
+				return 1;
+			}
+
+			protected List<? extends DotEdge> getList(DotCluster cluster, int phase) {
+				return cluster.edges;
+			}
+		};
+	}
+
+	/**
+	 * 
+	 * @return A spliterator over all edges in this graph and all its
+	 *         sub-graphs, which splits evenly for parallel streams. The graph
+	 *         must not be changed while it is in use.
+	 */
+	public Spliterator<DotEdge> getEdgesRecursiveSpliterator() {
+		getEdgesRecursive();
+		return Spliterators.spliterator(edgesRecursive, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+	}
+
+	/**
+	 * 
+	 * @param parallel
+	 * @return A stream of all edges in this graph and all its sub-graphs.
+	 */
+	public Stream<DotEdge> getEdgesRecursiveStream(boolean parallel) {
+		return StreamSupport.stream(getEdgesRecursiveSpliterator(), parallel);
 	}
 
 	/**
@@ -245,19 +466,47 @@ public class DotCluster extends DotNode {
 	 */
 	public void addEdge(DotEdge edge) {
 		edges.add(edge);
+		edge.addGraph(this);
+		edgeChanges++;
+		modified();
+		if (index != null) {
+			index.addEdge(edge, edges.size() - 1);
+		}
 	}
 
 	/**
-	 * Remove all equivalent edges from the graph.
+	 * Remove all equivalent edges from the graph. Takes time linear in the
+	 * number of edges of its source and target.
 	 * 
 	 * @param edge
 	 */
 	public void removeEdge(DotEdge edge) {
-		Iterator<DotEdge> it = edges.iterator();
-		while (it.hasNext()) {
-			if (edge == it.next()) {
-				it.remove();
+		Index index = getIndex();
+		if (index.duplicateEdges) {
+			compactEdges();
+			Iterator<DotEdge> it = edges.iterator();
+			while (it.hasNext()) {
+				if (edge == it.next()) {
+					it.remove();
+				}
 			}
+			edge.removeGraph(this);
+			this.index = null;
+			edgeChanges++;
+			modified();
+			return;
+		}
+		Integer position = index.edgePositions.remove(edge);
+		if (position != null) {
+			edge.removeGraph(this);
+			edges.set(position, null);
+			edgeChanges++;
+			modified();
+			edgeTombstones++;
+			firstEdgeTombstone = Math.min(firstEdgeTombstone, position);
+			index.id2element.remove(edge.getId());
+			index.remove(index.outgoing, edge.getSource(), edge);
+			index.remove(index.incoming, edge.getTarget(), edge);
 		}
 	}
 
@@ -265,17 +514,72 @@ public class DotCluster extends DotNode {
 	 * 
 	 * @param source
 	 * @param target
-	 * @return The first edge from source to target in the graph.
+	 * @return The first edge from source to target in the graph. Takes time
+	 *         linear in the number of outgoing edges of source.
 	 */
 	public DotEdge getFirstEdge(DotNode source, DotNode target) {
-		for (DotEdge edge : edges) {
-			if (edge.getSource() == source && edge.getTarget() == target) {
+		for (DotEdge edge : getIndex().getOutgoing(source)) {
+			if (edge.getTarget() == target) {
 				return edge;
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * 
+	 * @param source
+	 * @param target
+	 * @return An unmodifiable list of the edges of this graph (not of
+	 *         sub-graphs) from source to target.
+	 */
+	public List<DotEdge> getEdges(DotNode source, DotNode target) {
+		List<DotEdge> result = new ArrayList<>();
+		for (DotEdge edge : getIndex().getOutgoing(source)) {
+			if (edge.getTarget() == target) {
+				result.add(edge);
+			}
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * 
+	 * @param node
+	 * @return An unmodifiable list of the edges of this graph (not of
+	 *         sub-graphs) that leave node.
+	 */
+	public List<DotEdge> getOutgoingEdges(DotNode node) {
+		return Collections.unmodifiableList(getIndex().getOutgoing(node));
+	}
+
+	/**
+	 * 
+	 * @param node
+	 * @return An unmodifiable list of the edges of this graph (not of
+	 *         sub-graphs) that enter node.
+	 */
+	public List<DotEdge> getIncomingEdges(DotNode node) {
+		return Collections.unmodifiableList(getIndex().getIncoming(node));
+	}
+
+	/**
+	 * 
+	 * @param node
+	 * @return A list of the edges of this graph (not of sub-graphs) that
+	 *         enter or leave node; self-loops are included once.
+	 */
+	public List<DotEdge> getIncidentEdges(DotNode node) {
+		Index index = getIndex();
+		List<DotEdge> result = new ArrayList<>(index.getOutgoing(node));
+		for (DotEdge edge : index.getIncoming(node)) {
+			if (edge.getSource() != node) {
+				result.add(edge);
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Sets a default edge option. This will be the default for all edges in
 	 * this graph.
@@ -330,6 +634,10 @@ public class DotCluster extends DotNode {
 	public DotCluster addCluster() {
 		DotCluster cluster = new DotCluster();
 		clusters.add(cluster);
+		modified();
+		if (index != null) {
+			index.id2element.put(cluster.getId(), cluster);
+		}
 		return cluster;
 	}
 
@@ -345,6 +653,35 @@ public class DotCluster extends DotNode {
 				it.remove();
 			}
 		}
+		modified();
+		if (index != null) {
+			index.id2element.remove(cluster.getId());
+		}
+	}
+
+	/**
+	 * 
+	 * @return An unmodifiable list of the subgraphs of this graph that are
+	 *         not clusters (not of sub-graphs).
+	 */
+	public List<DotSubgraph> getSubgraphs() {
+		return Collections.unmodifiableList(subgraphs);
+	}
+
+	/**
+	 * Add a new subgraph that is not a cluster to the graph, e.g. to put some
+	 * of its nodes on the same rank.
+	 * 
+	 * @return
+	 */
+	public DotSubgraph addSubgraph() {
+		DotSubgraph subgraph = new DotSubgraph();
+		subgraphs.add(subgraph);
+		return subgraph;
+	}
+
+	public void removeSubgraph(DotSubgraph subgraph) {
+		subgraphs.remove(subgraph);
 	}
 
 	/**
@@ -384,25 +721,28 @@ public class DotCluster extends DotNode {
 //	}
 
 	/**
-	 * Get a string representation of this graph in the Dot-language.
+	 * Append a representation of this graph in the Dot-language to result.
 	 */
-	public String toString() {
-		StringBuilder result = new StringBuilder();
-		result.append("subgraph \"" + getId() + "\"{\n");
+	public void appendTo(Appendable result) throws IOException {
+		result.append("subgraph \"");
+		result.append(getId());
+		result.append("\"{\n");
 
-		result.append("id=\"" + getId() + "\";");
-		result.append("label=" + labelToString() + ";");
+		result.append("id=\"");
+		result.append(getId());
+		result.append("\";");
+		result.append("label=");
+		appendLabel(result);
+		result.append(';');
 
 		appendOptions(result);
 
-		contentToString(result);
-
-		result.append("}");
+		appendContent(result);
 
-		return result.toString();
+		result.append('}');
 	}
 
-	protected void appendOptions(StringBuilder result) {
+	protected void appendOptions(Appendable result) throws IOException {
 		for (String key : getOptionKeySet()) {
 			/*
 			 * HV, May 11, 2017
@@ -412,25 +752,34 @@ public class DotCluster extends DotNode {
 				String label = getOption(key);
 				if (label.startsWith("<") && label.endsWith(">")) {
 					// Label contains HTML code, copy as-is
-					result.append(key + "=" + label + ";\n");
+					result.append(key);
+					result.append('=');
+					result.append(label);
+					result.append(";\n");
 					continue;
 				}
 			} 
-			result.append(key + "=\"" + getOption(key) + "\";\n");
+			result.append(key);
+			result.append("=\"");
+			result.append(getOption(key));
+			result.append("\";\n");
 		}
 		appendSpecialOptions(result, "graph", graphOptionMap);
 		appendSpecialOptions(result, "node", nodeOptionMap);
 		appendSpecialOptions(result, "edge", edgeOptionMap);
 	}
 
-	protected void appendSpecialOptions(StringBuilder result, String type, Map<String, String> optionMap) {
+	protected void appendSpecialOptions(Appendable result, String type, Map<String, String> optionMap)
+			throws IOException {
 		Iterator<String> graphOptionIter = optionMap.keySet().iterator();
 		if (graphOptionIter.hasNext()) {
 			result.append(type);
 			result.append("[");
 			while (graphOptionIter.hasNext()) {
 				String key = graphOptionIter.next();
-				result.append(key + "=" + escapeString(optionMap.get(key)));
+				result.append(key);
+				result.append('=');
+				appendEscaped(result, optionMap.get(key));
 				if (graphOptionIter.hasNext()) {
 					result.append(',');
 				}
@@ -439,20 +788,48 @@ public class DotCluster extends DotNode {
 		}
 	}
 
-	protected void contentToString(StringBuilder result) {
+	/**
+	 * Append the nodes, edges, clusters and subgraphs of this graph to result,
+	 * each streamed directly without building intermediate Strings, unless an
+	 * element overrides toString().
+	 * 
+	 * @param result
+	 * @throws IOException
+	 */
+	protected void appendContent(Appendable result) throws IOException {
+		compactNodes();
+		compactEdges();
 		for (DotNode node : nodes) {
-			result.append(node);
-			result.append("\n");
+			append(result, node);
+			result.append('\n');
 		}
 
 		for (DotEdge edge : edges) {
-			result.append(edge);
-			result.append("\n");
+			append(result, edge);
+			result.append('\n');
 		}
 
 		for (DotCluster cluster : clusters) {
-			result.append(cluster);
-			result.append("\n");
+			append(result, cluster);
+			result.append('\n');
+		}
+
+		for (DotSubgraph subgraph : subgraphs) {
+			subgraph.appendTo(result);
+			result.append('\n');
+		}
+	}
+
+	/**
+	 * @deprecated use appendContent(Appendable)
+	 */
+	@Deprecated
+	protected void contentToString(StringBuilder result) {
+		try {
+			appendContent(result);
+		} catch (IOException e) {
+			//a StringBuilder does not throw IOExceptions
+			throw new RuntimeException(e);
 		}
 	}
 
@@ -461,4 +838,287 @@ public class DotCluster extends DotNode {
 		return "cluster_" + super.getId();
 	}
 
+	private void modified() {
+		modification = modifications.incrementAndGet();
+	}
+
+	/**
+	 * 
+	 * @return The largest modification number of this graph and its
+	 *         sub-graphs. Takes time linear in the number of sub-graphs.
+	 */
+	private long getRecursiveModification() {
+		long result = modification;
+		for (DotCluster cluster : clusters) {
+			result = Math.max(result, cluster.getRecursiveModification());
+		}
+		return result;
+	}
+
+	/**
+	 * Depth-first iterator over the elements of a graph and its sub-graphs:
+	 * first the lists of the graph (by phase), then recursively the
+	 * sub-graphs. Removed elements (null) are skipped.
+	 */
+	private static abstract class RecursiveIterator<T> implements Iterator<T> {
+		//stack of (graph, phase, position in the phase's list)
+		private final ArrayList<DotCluster> graphs = new ArrayList<>();
+		private int[] phases = new int[8];
+		private int[] positions = new int[8];
+		private T next;
+
+		public RecursiveIterator(DotCluster root) {
+			graphs.add(root);
+			advance();
+		}
+
+		protected abstract int getNumberOfPhases();
+
+		protected abstract List<? extends T> getList(DotCluster cluster, int phase);
+
+		private void advance() {
+			next = null;
+			while (!graphs.isEmpty()) {
+				int top = graphs.size() - 1;
+				DotCluster graph = graphs.get(top);
+				int phase = phases[top];
+				if (phase < getNumberOfPhases()) {
+					List<? extends T> list = getList(graph, phase);
+					while (positions[top] < list.size()) {
+						T element = list.get(positions[top]++);
+						if (element != null) {
+							next = element;
+							return;
+						}
+					}
+					phases[top]++;
+					positions[top] = 0;
+				} else if (positions[top] < graph.clusters.size()) {
+					//descend into the next sub-graph
+					DotCluster child = graph.clusters.get(positions[top]++);
+					if (top + 1 == phases.length) {
+						phases = Arrays.copyOf(phases, phases.length * 2);
+						positions = Arrays.copyOf(positions, positions.length * 2);
+					}
+					graphs.add(child);
+					phases[top + 1] = 0;
+					positions[top + 1] = 0;
+				} else {
+					graphs.remove(top);
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			T result = next;
+			advance();
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private Index getIndex() {
+		if (index == null) {
+			compactNodes();
+			compactEdges();
+			index = new Index();
+		}
+		return index;
+	}
+
+	/**
+	 * Called by an edge of this graph of which the source or target changed.
+	 */
+	void endpointChanged() {
+		index = null;
+	}
+
+	private void compactNodes() {
+		if (nodeTombstones > 0) {
+			nodes.removeAll(Collections.singleton(null));
+			nodeTombstones = 0;
+			firstNodeTombstone = Integer.MAX_VALUE;
+			if (index != null) {
+				index.nodePositions.clear();
+				for (int i = 0; i < nodes.size(); i++) {
+					index.nodePositions.put(nodes.get(i).getId(), i);
+				}
+			}
+		}
+	}
+
+	private void compactEdges() {
+		if (edgeTombstones > 0) {
+			edges.removeAll(Collections.singleton(null));
+			edgeTombstones = 0;
+			firstEdgeTombstone = Integer.MAX_VALUE;
+			if (index != null) {
+				index.edgePositions.clear();
+				for (int i = 0; i < edges.size(); i++) {
+					index.edgePositions.put(edges.get(i), i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Unmodifiable view of the nodes or edges of this graph that skips the
+	 * tombstones. Size and iteration do not compact the list; random access
+	 * compacts it only when reading at or after the first tombstone. As for
+	 * ArrayList, iterators throw a ConcurrentModificationException if the
+	 * list is changed during iteration.
+	 */
+	private abstract static class View<T> extends AbstractList<T> {
+		protected abstract ArrayList<T> getList();
+
+		protected abstract int getTombstones();
+
+		protected abstract int getFirstTombstone();
+
+		protected abstract int getChanges();
+
+		protected abstract void compact();
+
+		public T get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+			}
+			if (index >= getFirstTombstone()) {
+				compact();
+			}
+			return getList().get(index);
+		}
+
+		public int size() {
+			return getList().size() - getTombstones();
+		}
+
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				private final int changes = getChanges();
+				private int position = 0; //in the list with tombstones
+				private int returned = 0; //elements returned so far
+				private int listSize = getList().size();
+
+				public boolean hasNext() {
+					return returned < size();
+				}
+
+				public T next() {
+					if (getChanges() != changes) {
+						throw new ConcurrentModificationException();
+					}
+					if (getList().size() != listSize) {
+						//the list was compacted, which keeps the order of the elements
+						position = returned;
+						listSize = getList().size();
+					}
+					ArrayList<T> list = getList();
+					while (position < list.size()) {
+						T element = list.get(position++);
+						if (element != null) {
+							returned++;
+							return element;
+						}
+					}
+					throw new NoSuchElementException();
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Indexes of the nodes, edges and clusters of this graph (not of
+	 * sub-graphs).
+	 */
+	private class Index {
+		//by id, as nodes are equal if their ids are equal (see DotNode.equals())
+		private final Map<String, Integer> nodePositions = new HashMap<>(nodes.size() * 4 / 3 + 1);
+		private final Map<DotEdge, Integer> edgePositions = new IdentityHashMap<>(edges.size());
+		private final Map<String, DotElement> id2element = new HashMap<>(
+				(nodes.size() + edges.size() + clusters.size()) * 4 / 3 + 1);
+		private final Map<DotNode, List<DotEdge>> outgoing = new IdentityHashMap<>(nodes.size());
+		private final Map<DotNode, List<DotEdge>> incoming = new IdentityHashMap<>(nodes.size());
+
+		//if a node or edge was added twice, removal falls back to a linear scan
+		private boolean duplicateNodes = false;
+		private boolean duplicateEdges = false;
+
+		public Index() {
+			for (int i = 0; i < nodes.size(); i++) {
+				addNode(nodes.get(i), i);
+			}
+			for (int i = 0; i < edges.size(); i++) {
+				addEdge(edges.get(i), i);
+			}
+			for (DotCluster cluster : clusters) {
+				id2element.put(cluster.getId(), cluster);
+			}
+		}
+
+		public void addNode(DotNode node, int position) {
+			duplicateNodes |= nodePositions.put(node.getId(), position) != null;
+			id2element.put(node.getId(), node);
+		}
+
+		public void addEdge(DotEdge edge, int position) {
+			if (edgePositions.put(edge, position) != null) {
+				duplicateEdges = true;
+				return;
+			}
+			id2element.put(edge.getId(), edge);
+			add(outgoing, edge.getSource(), edge);
+			add(incoming, edge.getTarget(), edge);
+		}
+
+		public List<DotEdge> getOutgoing(DotNode node) {
+			return get(outgoing, node);
+		}
+
+		public List<DotEdge> getIncoming(DotNode node) {
+			return get(incoming, node);
+		}
+
+		private List<DotEdge> get(Map<DotNode, List<DotEdge>> adjacency, DotNode node) {
+			List<DotEdge> result = adjacency.get(node);
+			if (result == null) {
+				return Collections.emptyList();
+			}
+			return result;
+		}
+
+		private void add(Map<DotNode, List<DotEdge>> adjacency, DotNode node, DotEdge edge) {
+			List<DotEdge> list = adjacency.get(node);
+			if (list == null) {
+				list = new ArrayList<>(2);
+				adjacency.put(node, list);
+			}
+			list.add(edge);
+		}
+
+		public void remove(Map<DotNode, List<DotEdge>> adjacency, DotNode node, DotEdge edge) {
+			List<DotEdge> list = adjacency.get(node);
+			if (list != null) {
+				list.remove(edge);
+				if (list.isEmpty()) {
+					adjacency.remove(node);
+				}
+			}
+		}
+	}
+
 }
@@ -1,5 +1,9 @@
 package org.processmining.plugins.graphviz.dot;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -8,14 +12,23 @@ public class DotEdge extends AbstractDotElement {
 	private DotNode source;
 	private DotNode target;
 
+	/*
+	 * The graphs this edge was added to, which are told when the source or
+	 * target changes, such that they can rebuild their indexes (see
+	 * DotCluster). An edge is nearly always in one graph, which does not need
+	 * a list.
+	 */
+	private DotCluster graph = null;
+	private List<DotCluster> otherGraphs = null;
+
 	public DotEdge(DotNode source, DotNode target) {
-		this.setSource(source);
-		this.setTarget(target);
+		this.source = source;
+		this.target = target;
 	}
 
 	public DotEdge(DotNode source, DotNode target, String label, Map<String, String> optionsMap) {
-		this.setSource(source);
-		this.setTarget(target);
+		this.source = source;
+		this.target = target;
 		this.setLabel(label);
 		if (optionsMap != null) {
 			for (Entry<String, String> e : optionsMap.entrySet()) {
@@ -30,6 +43,7 @@ public class DotEdge extends AbstractDotElement {
 
 	public void setTarget(DotNode target) {
 		this.target = target;
+		endpointChanged();
 	}
 
 	public DotNode getSource() {
@@ -38,9 +52,54 @@ public class DotEdge extends AbstractDotElement {
 
 	public void setSource(DotNode source) {
 		this.source = source;
+		endpointChanged();
 	}
 
-	public String toString() {
+	private void endpointChanged() {
+		if (graph != null) {
+			graph.endpointChanged();
+		}
+		if (otherGraphs != null) {
+			for (DotCluster otherGraph : otherGraphs) {
+				otherGraph.endpointChanged();
+			}
+		}
+	}
+
+	/**
+	 * Called by a graph to which this edge is added.
+	 * 
+	 * @param graph
+	 */
+	void addGraph(DotCluster graph) {
+		if (this.graph == null) {
+			this.graph = graph;
+		} else {
+			if (otherGraphs == null) {
+				otherGraphs = new ArrayList<>(2);
+			}
+			otherGraphs.add(graph);
+		}
+	}
+
+	/**
+	 * Called by a graph from which all occurrences of this edge are removed.
+	 * 
+	 * @param graph
+	 */
+	void removeGraph(DotCluster graph) {
+		if (this.graph == graph) {
+			this.graph = null;
+		}
+		if (otherGraphs != null) {
+			otherGraphs.removeAll(Collections.singleton(graph));
+			if (otherGraphs.isEmpty()) {
+				otherGraphs = null;
+			}
+		}
+	}
+
+	public void appendTo(Appendable result) throws IOException {
 		/**
 		 * Dot does not support edges from/to clusters. I such edges are added,
 		 * use an arbitrary node in the cluster as the target.
@@ -56,23 +115,30 @@ public class DotEdge extends AbstractDotElement {
 			}
 		}
 
-		String result = "\"" + localSource.getId() + "\" -> \"" + localTarget.getId() + "\" [label=" + labelToString()
-				+ " id=\"" + getId() + "\"";
+		result.append('"');
+		result.append(localSource.getId());
+		result.append("\" -> \"");
+		result.append(localTarget.getId());
+		result.append("\" [label=");
+		appendLabel(result);
+		result.append(" id=\"");
+		result.append(getId());
+		result.append('"');
+
+		appendOptionList(result);
 
-		for (String key : getOptionKeySet()) {
-			result += "," + key + "=" + escapeString(getOption(key));
-		}
-		
 		/**
 		 * If the edges goes to/from a cluster, we need to set the lhead/ltail.
 		 */
 		if (localSource != source) {
-			result += ",ltail=" + escapeString(source.getId());
+			result.append(",ltail=");
+			appendEscaped(result, source.getId());
 		}
 		if (localTarget != target) {
-			result += ",lhead=" + escapeString(target.getId());
+			result.append(",lhead=");
+			appendEscaped(result, target.getId());
 		}
 
-		return result + "];";
+		result.append("];");
 	}
 }
@@ -1,6 +1,7 @@
 package org.processmining.plugins.graphviz.dot;
 
 import java.awt.event.MouseListener;
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 
@@ -29,6 +30,19 @@ public interface DotElement extends MouseListener {
 
 	public String getId();
 
+	/**
+	 * Appends the Dot-language representation of this element to result. This
+	 * is equivalent to result.append(toString()), but implementations can
+	 * avoid building the intermediate String, such that large graphs can be
+	 * streamed to a file or to the dot process.
+	 * 
+	 * @param result
+	 * @throws IOException
+	 */
+	public default void appendTo(Appendable result) throws IOException {
+		result.append(toString());
+	}
+
 	//mouse listeners, gui stuff
 
 	/**
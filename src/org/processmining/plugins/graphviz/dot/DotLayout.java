@@ -0,0 +1,523 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.processmining.plugins.graphviz.dot.Dot2Image.Engine;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+import org.processmining.plugins.graphviz.dot.DotTokenizer.Token;
+
+/**
+ * The geometry of a laid-out Dot: positions and sizes of nodes, control
+ * points of edge splines and bounding boxes of clusters, parsed from the
+ * xdot output of Graphviz. Elements are looked up by the id of their
+ * DotElement.
+ *
+ * All coordinates are in points, with the origin in the lower-left corner of
+ * the graph, as in Graphviz.
+ *
+ * @author sander
+ *
+ */
+public class DotLayout {
+
+	private float width;
+	private float height;
+
+	//nodes: x, y (centre), width, height
+	private final Map<String, Integer> nodeIndices = new HashMap<>();
+	private float[] nodes = new float[64];
+	private int numberOfNodes = 0;
+
+	//edges: the control points of edge e are x, y pairs in edgePoints[edgeStart[e] .. edgeStart[e + 1])
+	private final Map<String, Integer> edgeIndices = new HashMap<>();
+	private int[] edgeStart = new int[17];
+	private float[] edgePoints = new float[128];
+	private int numberOfEdges = 0;
+
+	//clusters: minX, minY, maxX, maxY
+	private final Map<String, Integer> clusterIndices = new HashMap<>();
+	private float[] clusters = new float[16];
+	private int numberOfClusters = 0;
+
+	private DotLayout() {
+
+	}
+
+	/**
+	 * Lays out the dot using Graphviz (taking the result from the cache if
+	 * possible).
+	 *
+	 * @param dot
+	 * @return the layout, or null if dot could not be run.
+	 */
+	public static DotLayout layout(Dot dot) {
+		return layout(dot, Dot2Image.getEngine(dot));
+	}
+
+	public static DotLayout layout(Dot dot, Engine engine) {
+		InputStream stream = Dot2ImageCache.getDefault().dot2imageInputStream(dot, Type.xdot, engine);
+		if (stream == null) {
+			return null;
+		}
+		try {
+			return parse(stream);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Parses the xdot (or dot) output of Graphviz.
+	 *
+	 * @param input
+	 * @return the layout
+	 * @throws IOException
+	 */
+	public static DotLayout parse(InputStream input) throws IOException {
+		return parse(new InputStreamReader(input, "UTF-8"));
+	}
+
+	public static DotLayout parse(Reader input) throws IOException {
+		DotLayout result = new DotLayout();
+		new Parser(new DotTokenizer(input), result).parseGraph();
+		return result;
+	}
+
+	/**
+	 *
+	 * @return The width of the graph.
+	 */
+	public float getWidth() {
+		return width;
+	}
+
+	/**
+	 *
+	 * @return The height of the graph.
+	 */
+	public float getHeight() {
+		return height;
+	}
+
+	public int getNumberOfNodes() {
+		return numberOfNodes;
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return the index of the node, or -1 if it was not laid out.
+	 */
+	public int getNodeIndex(String id) {
+		Integer index = nodeIndices.get(id);
+		return index == null ? -1 : index;
+	}
+
+	public float getNodeX(int node) {
+		return nodes[node * 4];
+	}
+
+	public float getNodeY(int node) {
+		return nodes[node * 4 + 1];
+	}
+
+	public float getNodeWidth(int node) {
+		return nodes[node * 4 + 2];
+	}
+
+	public float getNodeHeight(int node) {
+		return nodes[node * 4 + 3];
+	}
+
+	/**
+	 *
+	 * @param node
+	 * @return the bounding box of the node, or null if it was not laid out.
+	 */
+	public Rectangle2D getBounds(DotNode node) {
+		int index = getNodeIndex(node.getId());
+		if (index < 0) {
+			return getClusterBounds(getClusterIndex(node.getId()));
+		}
+		return new Rectangle2D.Float(getNodeX(index) - getNodeWidth(index) / 2,
+				getNodeY(index) - getNodeHeight(index) / 2, getNodeWidth(index), getNodeHeight(index));
+	}
+
+	public int getNumberOfEdges() {
+		return numberOfEdges;
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return the index of the edge, or -1 if it was not laid out.
+	 */
+	public int getEdgeIndex(String id) {
+		Integer index = edgeIndices.get(id);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @return The number of control points of the spline of the edge. The
+	 *         end points of arrow heads are not included.
+	 */
+	public int getNumberOfControlPoints(int edge) {
+		return (edgeStart[edge + 1] - edgeStart[edge]) / 2;
+	}
+
+	public float getControlPointX(int edge, int point) {
+		return edgePoints[edgeStart[edge] + point * 2];
+	}
+
+	public float getControlPointY(int edge, int point) {
+		return edgePoints[edgeStart[edge] + point * 2 + 1];
+	}
+
+	/**
+	 *
+	 * @param edge
+	 * @return A copy of the control points of the edge, as x, y pairs.
+	 */
+	public float[] getControlPoints(DotEdge edge) {
+		int index = getEdgeIndex(edge.getId());
+		if (index < 0) {
+			return null;
+		}
+		return Arrays.copyOfRange(edgePoints, edgeStart[index], edgeStart[index + 1]);
+	}
+
+	public int getNumberOfClusters() {
+		return numberOfClusters;
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return the index of the cluster, or -1 if it was not laid out.
+	 */
+	public int getClusterIndex(String id) {
+		Integer index = clusterIndices.get(id);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 *
+	 * @param cluster
+	 * @return the bounding box of the cluster, or null if the cluster was not
+	 *         laid out.
+	 */
+	public Rectangle2D getClusterBounds(int cluster) {
+		if (cluster < 0) {
+			return null;
+		}
+		return new Rectangle2D.Float(clusters[cluster * 4], clusters[cluster * 4 + 1],
+				clusters[cluster * 4 + 2] - clusters[cluster * 4],
+				clusters[cluster * 4 + 3] - clusters[cluster * 4 + 1]);
+	}
+
+	private void addNode(String id, String pos, String width, String height) {
+		float[] position = parsePoint(pos);
+		if (position == null) {
+			return;
+		}
+		if ((numberOfNodes + 1) * 4 > nodes.length) {
+			nodes = Arrays.copyOf(nodes, nodes.length * 2);
+		}
+		nodes[numberOfNodes * 4] = position[0];
+		nodes[numberOfNodes * 4 + 1] = position[1];
+		//Graphviz gives the size in inches
+		nodes[numberOfNodes * 4 + 2] = parseFloat(width) * 72;
+		nodes[numberOfNodes * 4 + 3] = parseFloat(height) * 72;
+		nodeIndices.put(id, numberOfNodes);
+		numberOfNodes++;
+	}
+
+	private void addEdge(String id, String pos) {
+		if (numberOfEdges + 2 > edgeStart.length) {
+			edgeStart = Arrays.copyOf(edgeStart, edgeStart.length * 2);
+		}
+		int end = edgeStart[numberOfEdges];
+		//a spline is a list of points, optionally preceded by the end points of the arrow heads (e,x,y and s,x,y); multiple splines are separated by ;
+		for (String point : pos.split("[\\s;]+")) {
+			if (point.isEmpty() || point.startsWith("e,") || point.startsWith("s,")) {
+				continue;
+			}
+			float[] p = parsePoint(point);
+			if (p == null) {
+				continue;
+			}
+			if (end + 2 > edgePoints.length) {
+				edgePoints = Arrays.copyOf(edgePoints, edgePoints.length * 2);
+			}
+			edgePoints[end] = p[0];
+			edgePoints[end + 1] = p[1];
+			end += 2;
+		}
+		edgeStart[numberOfEdges + 1] = end;
+		edgeIndices.put(id, numberOfEdges);
+		numberOfEdges++;
+	}
+
+	private void addCluster(String id, String bb) {
+		float[] box = parseFloats(bb);
+		if (box == null || box.length != 4) {
+			return;
+		}
+		if ((numberOfClusters + 1) * 4 > clusters.length) {
+			clusters = Arrays.copyOf(clusters, clusters.length * 2);
+		}
+		System.arraycopy(box, 0, clusters, numberOfClusters * 4, 4);
+		clusterIndices.put(id, numberOfClusters);
+		numberOfClusters++;
+	}
+
+	private static float[] parsePoint(String point) {
+		if (point == null) {
+			return null;
+		}
+		//a ! denotes a pinned position
+		float[] result = parseFloats(point.replace("!", ""));
+		if (result == null || result.length < 2) {
+			return null;
+		}
+		return result;
+	}
+
+	private static float[] parseFloats(String value) {
+		if (value == null) {
+			return null;
+		}
+		String[] parts = value.split(",");
+		float[] result = new float[parts.length];
+		try {
+			for (int i = 0; i < parts.length; i++) {
+				result[i] = Float.parseFloat(parts[i].trim());
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		return result;
+	}
+
+	private static float parseFloat(String value) {
+		if (value == null) {
+			return 0;
+		}
+		try {
+			return Float.parseFloat(value.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Reads the statements of a graph and stores the geometry attributes of
+	 * its elements.
+	 */
+	private static class Parser {
+		private final DotTokenizer tokenizer;
+		private final DotLayout layout;
+		private Token pushedBack = null;
+
+		public Parser(DotTokenizer tokenizer, DotLayout layout) {
+			this.tokenizer = tokenizer;
+			this.layout = layout;
+		}
+
+		private Token next() throws IOException {
+			if (pushedBack != null) {
+				Token result = pushedBack;
+				pushedBack = null;
+				return result;
+			}
+			return tokenizer.next();
+		}
+
+		private void expect(Token token) throws IOException {
+			Token actual = next();
+			if (actual != token) {
+				throw new IOException("expected " + token + " but found " + actual + " on line "
+						+ tokenizer.getLine());
+			}
+		}
+
+		public void parseGraph() throws IOException {
+			//[strict] (graph | digraph) [ID] {
+			Token token = next();
+			while (token == Token.ID) {
+				token = next();
+			}
+			if (token != Token.LEFT_BRACE) {
+				throw new IOException("expected a graph on line " + tokenizer.getLine());
+			}
+			Map<String, String> graphAttributes = new HashMap<>();
+			parseStatements(graphAttributes);
+
+			float[] bb = parseFloats(graphAttributes.get("bb"));
+			if (bb != null && bb.length == 4) {
+				layout.width = bb[2] - bb[0];
+				layout.height = bb[3] - bb[1];
+			}
+		}
+
+		/**
+		 * Parses statements up to and including the closing brace.
+		 */
+		private void parseStatements(Map<String, String> graphAttributes) throws IOException {
+			while (true) {
+				Token token = next();
+				switch (token) {
+					case RIGHT_BRACE :
+						return;
+					case END :
+						throw new IOException("unexpected end of graph");
+					case SEMICOLON :
+						break;
+					case LEFT_BRACE :
+						parseSubgraph(null);
+						break;
+					case ID :
+						parseStatement(graphAttributes);
+						break;
+					default :
+						throw new IOException("unexpected " + token + " on line " + tokenizer.getLine());
+				}
+			}
+		}
+
+		private void parseStatement(Map<String, String> graphAttributes) throws IOException {
+			String id = tokenizer.getValue();
+			boolean keyword = !tokenizer.isQuoted();
+
+			if (keyword && id.equalsIgnoreCase("subgraph")) {
+				Token token = next();
+				String name = null;
+				if (token == Token.ID) {
+					name = tokenizer.getValue();
+					token = next();
+				}
+				if (token != Token.LEFT_BRACE) {
+					throw new IOException("expected a subgraph on line " + tokenizer.getLine());
+				}
+				parseSubgraph(name);
+				return;
+			}
+
+			if (keyword && (id.equalsIgnoreCase("graph") || id.equalsIgnoreCase("node") || id.equalsIgnoreCase("edge"))) {
+				Map<String, String> attributes = new HashMap<>();
+				expect(Token.LEFT_BRACKET);
+				parseAttributes(attributes);
+				if (id.equalsIgnoreCase("graph")) {
+					graphAttributes.putAll(attributes);
+				}
+				return;
+			}
+
+			Token token = next();
+			skipPort(token);
+			token = next();
+			if (token == Token.EQUALS) {
+				expect(Token.ID);
+				graphAttributes.put(id, tokenizer.getValue());
+				return;
+			}
+
+			if (token == Token.EDGE_OP) {
+				//edge (chains are applied to every edge, but only the first has a position)
+				String head;
+				do {
+					expect(Token.ID);
+					head = tokenizer.getValue();
+					token = next();
+					skipPort(token);
+					token = next();
+				} while (token == Token.EDGE_OP);
+				Map<String, String> attributes = new HashMap<>();
+				if (token == Token.LEFT_BRACKET) {
+					parseAttributes(attributes);
+				} else {
+					pushedBack = token;
+				}
+				String pos = attributes.get("pos");
+				if (pos != null) {
+					String edgeId = attributes.get("id");
+					layout.addEdge(edgeId != null ? edgeId : id + "->" + head, pos);
+				}
+				return;
+			}
+
+			//node
+			Map<String, String> attributes = new HashMap<>();
+			if (token == Token.LEFT_BRACKET) {
+				parseAttributes(attributes);
+			} else {
+				pushedBack = token;
+			}
+			String nodeId = attributes.get("id");
+			layout.addNode(nodeId != null ? nodeId : id, attributes.get("pos"), attributes.get("width"),
+					attributes.get("height"));
+		}
+
+		/**
+		 * Skips a port (:port[:compass]) if token starts one; otherwise token
+		 * is pushed back.
+		 */
+		private void skipPort(Token token) throws IOException {
+			while (token == Token.COLON) {
+				expect(Token.ID);
+				token = next();
+			}
+			pushedBack = token;
+		}
+
+		private void parseSubgraph(String name) throws IOException {
+			Map<String, String> attributes = new HashMap<>();
+			parseStatements(attributes);
+			String bb = attributes.get("bb");
+			if (bb != null) {
+				String id = attributes.get("id");
+				if (id == null) {
+					id = name;
+				}
+				if (id != null) {
+					layout.addCluster(id, bb);
+				}
+			}
+		}
+
+		/**
+		 * Parses one or more attribute lists; the opening bracket of the first
+		 * list has been read already.
+		 */
+		private void parseAttributes(Map<String, String> attributes) throws IOException {
+			while (true) {
+				Token token = next();
+				if (token == Token.RIGHT_BRACKET) {
+					token = next();
+					if (token != Token.LEFT_BRACKET) {
+						pushedBack = token;
+						return;
+					}
+				} else if (token == Token.ID) {
+					String key = tokenizer.getValue();
+					expect(Token.EQUALS);
+					expect(Token.ID);
+					attributes.put(key, tokenizer.getValue());
+				} else if (token != Token.COMMA && token != Token.SEMICOLON) {
+					throw new IOException("unexpected " + token + " in attribute list on line "
+							+ tokenizer.getLine());
+				}
+			}
+		}
+	}
+}
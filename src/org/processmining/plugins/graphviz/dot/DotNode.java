@@ -1,5 +1,6 @@
 package org.processmining.plugins.graphviz.dot;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -21,12 +22,16 @@ public class DotNode extends AbstractDotElement {
 		return ((DotNode) object).getId().equals(getId());
 	}
 
-	public String toString() {
-		String result = "\"" + getId() + "\" [label=" + labelToString() + ", id=\"" + getId() + "\"";
-		for (String key : getOptionKeySet()) {
-			result += "," + key + "=" + escapeString(getOption(key));
-		}
-		return result + "];";
+	public void appendTo(Appendable result) throws IOException {
+		result.append('"');
+		result.append(getId());
+		result.append("\" [label=");
+		appendLabel(result);
+		result.append(", id=\"");
+		result.append(getId());
+		result.append('"');
+		appendOptionList(result);
+		result.append("];");
 	}
 
 }
@@ -0,0 +1,582 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.processmining.plugins.graphviz.dot.DotTokenizer.Token;
+
+/**
+ * Reads a graph in the DOT language into a Dot, with DotNodes, DotEdges and
+ * DotClusters. The text is streamed, so only the resulting graph is kept in
+ * memory.
+ *
+ * The DOT language is richer than Dot, hence:
+ * <ul>
+ * <li>Nodes, edges and clusters get new ids; DOT names and id attributes are
+ * not kept. The name of a node is its label if it has no label attribute.</li>
+ * <li>A node belongs to the deepest cluster it is mentioned in.</li>
+ * <li>Node and edge defaults apply to the nodes and edges created after them,
+ * in their (sub)graph and the subgraphs opened after them. Defaults that
+ * precede all nodes and edges are kept on their graph or cluster; other
+ * defaults are set on each node and edge they apply to.</li>
+ * <li>Subgraphs that are not clusters are flattened into their graph. If they
+ * have graph attributes (e.g. rank=same), they are kept as a DotSubgraph of
+ * their graph that refers to the nodes mentioned in them, and their graph
+ * attributes are inherited by the clusters opened in them.</li>
+ * <li>Quoted strings that start with &lt; and end with &gt; would be written
+ * as HTML strings by Dot, hence they are kept with a leading line
+ * continuation (backslash, newline), which Graphviz removes.</li>
+ * </ul>
+ *
+ * @author sander
+ *
+ */
+public class DotParser {
+
+	private final DotTokenizer tokenizer;
+	private Token pushedBack = null;
+
+	private final Map<String, DotNode> name2node = new HashMap<>();
+	private final Map<DotNode, DotCluster> node2cluster = new IdentityHashMap<>();
+	private final Map<DotCluster, DotCluster> cluster2parent = new IdentityHashMap<>();
+
+	private int numberOfNodes = 0;
+	private int numberOfEdges = 0;
+	private int numberOfClusters = 0;
+	private long nanoseconds = 0;
+
+	public DotParser(Reader reader) throws IOException {
+		tokenizer = new DotTokenizer(reader);
+	}
+
+	public DotParser(InputStream input) throws IOException {
+		this(new InputStreamReader(input, "UTF-8"));
+	}
+
+	/**
+	 * Parses a graph in the DOT language.
+	 *
+	 * @param input
+	 *            UTF-8 encoded DOT text
+	 * @return the graph
+	 * @throws IOException
+	 *             if reading fails or the text is not a valid graph.
+	 */
+	public static Dot parse(InputStream input) throws IOException {
+		return new Dot(input);
+	}
+
+	/**
+	 * Adds the graph read from the input to dot.
+	 *
+	 * @param dot
+	 * @throws IOException
+	 *             if reading fails or the text is not a valid graph.
+	 */
+	public void parse(Dot dot) throws IOException {
+		long start = System.nanoTime();
+
+		//[strict] (graph | digraph) [ID] {
+		Token token = next();
+		while (token == Token.ID) {
+			if (!tokenizer.isQuoted() && tokenizer.getValue().equalsIgnoreCase("graph")) {
+				//undirected graph; Dot writes a digraph
+				dot.setEdgeOption("dir", "none");
+			}
+			token = next();
+		}
+		if (token != Token.LEFT_BRACE) {
+			throw new IOException("expected a graph on line " + tokenizer.getLine());
+		}
+		parseStatements(new Scope(dot, true, null));
+
+		nanoseconds = System.nanoTime() - start;
+	}
+
+	/**
+	 *
+	 * @return The number of characters that were parsed.
+	 */
+	public long getCharactersRead() {
+		return tokenizer.getCharactersRead();
+	}
+
+	/**
+	 *
+	 * @return The time parse() took, in nanoseconds.
+	 */
+	public long getNanoseconds() {
+		return nanoseconds;
+	}
+
+	/**
+	 *
+	 * @return The parse throughput, in characters per second.
+	 */
+	public double getCharactersPerSecond() {
+		if (nanoseconds == 0) {
+			return 0;
+		}
+		return getCharactersRead() / (nanoseconds / 1000000000.0);
+	}
+
+	public int getNumberOfNodes() {
+		return numberOfNodes;
+	}
+
+	public int getNumberOfEdges() {
+		return numberOfEdges;
+	}
+
+	public int getNumberOfClusters() {
+		return numberOfClusters;
+	}
+
+	public String toString() {
+		return "parsed " + getCharactersRead() + " characters (" + numberOfNodes + " nodes, " + numberOfEdges
+				+ " edges, " + numberOfClusters + " clusters) in " + (nanoseconds / 1000000) + "ms, "
+				+ String.format("%.1f", getCharactersPerSecond() / 1000000) + "M characters/s";
+	}
+
+	/**
+	 * A graph or subgraph that is being parsed.
+	 */
+	private static class Scope {
+		//the cluster to which elements are added
+		private final DotCluster cluster;
+		private final boolean isCluster;
+		private final Scope parent;
+
+		//the defaults in force, which are set on the elements created in this scope
+		private final Map<String, String> nodeDefaults;
+		private final Map<String, String> edgeDefaults;
+
+		//the nodes mentioned in this subgraph (not kept for the root)
+		private final List<DotNode> nodes;
+
+		//for subgraphs that are not clusters: the graph attributes in force, and the subgraph that keeps its own
+		private final Map<String, String> graphAttributes;
+		private DotSubgraph subgraph = null;
+
+		public Scope(DotCluster cluster, boolean isCluster, Scope parent) {
+			this.cluster = cluster;
+			this.isCluster = isCluster;
+			this.parent = parent;
+			if (parent == null) {
+				nodeDefaults = new HashMap<>();
+				edgeDefaults = new HashMap<>();
+			} else {
+				//a subgraph starts with the defaults in force where it is opened
+				nodeDefaults = new HashMap<>(parent.nodeDefaults);
+				edgeDefaults = new HashMap<>(parent.edgeDefaults);
+			}
+			nodes = parent == null ? null : new ArrayList<DotNode>();
+			if (isCluster || parent.isCluster) {
+				graphAttributes = new LinkedHashMap<>();
+			} else {
+				graphAttributes = new LinkedHashMap<>(parent.graphAttributes);
+			}
+		}
+
+		public void mentioned(DotNode node) {
+			for (Scope scope = this; scope != null; scope = scope.parent) {
+				if (scope.nodes != null) {
+					scope.nodes.add(node);
+				}
+			}
+		}
+	}
+
+	private Token next() throws IOException {
+		if (pushedBack != null) {
+			Token result = pushedBack;
+			pushedBack = null;
+			return result;
+		}
+		return tokenizer.next();
+	}
+
+	private void expect(Token token) throws IOException {
+		Token actual = next();
+		if (actual != token) {
+			throw new IOException("expected " + token + " but found " + actual + " on line " + tokenizer.getLine());
+		}
+	}
+
+	/**
+	 * Parses statements up to and including the closing brace.
+	 */
+	private void parseStatements(Scope scope) throws IOException {
+		while (true) {
+			Token token = next();
+			switch (token) {
+				case RIGHT_BRACE :
+					return;
+				case END :
+					throw new IOException("unexpected end of graph");
+				case SEMICOLON :
+					break;
+				case LEFT_BRACE :
+				case ID :
+					pushedBack = token;
+					parseStatement(scope);
+					break;
+				default :
+					throw new IOException("unexpected " + token + " on line " + tokenizer.getLine());
+			}
+		}
+	}
+
+	private void parseStatement(Scope scope) throws IOException {
+		Token token = next();
+		if (token == Token.ID && !tokenizer.isQuoted()) {
+			String keyword = tokenizer.getValue();
+			if (keyword.equalsIgnoreCase("graph") || keyword.equalsIgnoreCase("node")
+					|| keyword.equalsIgnoreCase("edge")) {
+				expect(Token.LEFT_BRACKET);
+				Map<String, String> attributes = parseAttributes();
+				setDefaults(scope, keyword.toLowerCase(), attributes);
+				return;
+			}
+		}
+
+		if (token == Token.ID) {
+			//attribute statement, node statement or edge statement
+			String name = tokenizer.getValue();
+			if (!isSubgraphKeyword(name)) {
+				boolean quoted = tokenizer.isQuoted();
+				String key = quoted ? name : tokenizer.getInternedValue();
+				token = next();
+				if (token == Token.EQUALS) {
+					expect(Token.ID);
+					setGraphAttribute(scope, key, getValue());
+					return;
+				}
+				pushedBack = token;
+
+				DotNode node = getNode(name, quoted, scope);
+				String port = parsePort();
+				token = next();
+				if (token == Token.EDGE_OP) {
+					List<DotNode> sources = new ArrayList<>(1);
+					sources.add(node);
+					parseEdges(scope, sources, port);
+				} else {
+					Map<String, String> attributes = null;
+					if (token == Token.LEFT_BRACKET) {
+						attributes = parseAttributes();
+					} else {
+						pushedBack = token;
+					}
+					if (attributes != null) {
+						setAttributes(node, attributes);
+					}
+				}
+				return;
+			}
+		}
+
+		//subgraph, possibly the start of an edge statement
+		pushedBack = token;
+		List<DotNode> nodes = parseSubgraph(scope);
+		token = next();
+		if (token == Token.EDGE_OP) {
+			parseEdges(scope, nodes, null);
+		} else {
+			pushedBack = token;
+		}
+	}
+
+	private boolean isSubgraphKeyword(String value) {
+		return !tokenizer.isQuoted() && value.equalsIgnoreCase("subgraph");
+	}
+
+	/**
+	 * Parses a subgraph ([subgraph [ID]] { statements }).
+	 *
+	 * @return the nodes mentioned in the subgraph.
+	 */
+	private List<DotNode> parseSubgraph(Scope scope) throws IOException {
+		Token token = next();
+		String name = null;
+		if (token == Token.ID) {
+			//subgraph keyword
+			token = next();
+			if (token == Token.ID) {
+				name = tokenizer.getValue();
+				token = next();
+			}
+		}
+		if (token != Token.LEFT_BRACE) {
+			throw new IOException("expected a subgraph on line " + tokenizer.getLine());
+		}
+
+		Scope subScope;
+		if (name != null && name.startsWith("cluster")) {
+			DotCluster cluster = scope.cluster.addCluster();
+			cluster2parent.put(cluster, scope.cluster);
+			numberOfClusters++;
+			subScope = new Scope(cluster, true, scope);
+			//a cluster inherits the graph attributes of the subgraphs it is opened in
+			for (Entry<String, String> entry : scope.graphAttributes.entrySet()) {
+				setGraphAttribute(subScope, entry.getKey(), entry.getValue());
+			}
+		} else {
+			subScope = new Scope(scope.cluster, false, scope);
+		}
+		parseStatements(subScope);
+		if (subScope.subgraph != null) {
+			Map<DotNode, Boolean> added = new IdentityHashMap<>();
+			for (DotNode node : subScope.nodes) {
+				if (added.put(node, true) == null) {
+					subScope.subgraph.addNode(node);
+				}
+			}
+		}
+		return subScope.nodes;
+	}
+
+	/**
+	 * Parses the rest of an edge statement, after the first edge operator.
+	 */
+	private void parseEdges(Scope scope, List<DotNode> sources, String sourcePort) throws IOException {
+		//read the chain of operands
+		List<List<DotNode>> operands = new ArrayList<>();
+		List<String> ports = new ArrayList<>();
+		operands.add(sources);
+		ports.add(sourcePort);
+		Token token;
+		do {
+			token = next();
+			if (token == Token.ID && !isSubgraphKeyword(tokenizer.getValue())) {
+				List<DotNode> nodes = new ArrayList<>(1);
+				nodes.add(getNode(tokenizer.getValue(), tokenizer.isQuoted(), scope));
+				operands.add(nodes);
+				ports.add(parsePort());
+			} else {
+				pushedBack = token;
+				operands.add(parseSubgraph(scope));
+				ports.add(null);
+			}
+			token = next();
+		} while (token == Token.EDGE_OP);
+
+		Map<String, String> attributes = null;
+		if (token == Token.LEFT_BRACKET) {
+			attributes = parseAttributes();
+		} else {
+			pushedBack = token;
+		}
+
+		for (int i = 0; i + 1 < operands.size(); i++) {
+			for (DotNode source : operands.get(i)) {
+				for (DotNode target : operands.get(i + 1)) {
+					DotEdge edge = new DotEdge(source, target, "", null);
+					for (Entry<String, String> entry : scope.edgeDefaults.entrySet()) {
+						setAttribute(edge, entry.getKey(), entry.getValue());
+					}
+					if (ports.get(i) != null) {
+						edge.setOption("tailport", ports.get(i));
+					}
+					if (ports.get(i + 1) != null) {
+						edge.setOption("headport", ports.get(i + 1));
+					}
+					if (attributes != null) {
+						setAttributes(edge, attributes);
+					}
+					scope.cluster.addEdge(edge);
+					numberOfEdges++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses an optional port (:ID[:ID]).
+	 *
+	 * @return the port, or null if there is none.
+	 */
+	private String parsePort() throws IOException {
+		Token token = next();
+		if (token != Token.COLON) {
+			pushedBack = token;
+			return null;
+		}
+		expect(Token.ID);
+		String port = getValue();
+		token = next();
+		if (token == Token.COLON) {
+			expect(Token.ID);
+			port = port + ":" + getValue();
+		} else {
+			pushedBack = token;
+		}
+		return port;
+	}
+
+	/**
+	 * Parses one or more attribute lists; the opening bracket of the first
+	 * list has been read already.
+	 */
+	private Map<String, String> parseAttributes() throws IOException {
+		Map<String, String> result = new HashMap<>();
+		while (true) {
+			Token token = next();
+			if (token == Token.RIGHT_BRACKET) {
+				token = next();
+				if (token != Token.LEFT_BRACKET) {
+					pushedBack = token;
+					return result;
+				}
+			} else if (token == Token.ID) {
+				String key = tokenizer.getInternedValue();
+				expect(Token.EQUALS);
+				expect(Token.ID);
+				result.put(key, getValue());
+			} else if (token != Token.COMMA && token != Token.SEMICOLON) {
+				throw new IOException("unexpected " + token + " in attribute list on line " + tokenizer.getLine());
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return the value of the last ID token, as Dot should write it.
+	 */
+	private String getValue() {
+		return keepQuoted(tokenizer.getValue(), tokenizer.isQuoted());
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @param quoted
+	 * @return the value, such that Dot writes it as a quoted string if it was
+	 *         one (see AbstractDotElement.appendEscaped).
+	 */
+	private static String keepQuoted(String value, boolean quoted) {
+		if (quoted && value.length() > 2 && value.charAt(0) == '<' && value.charAt(value.length() - 1) == '>') {
+			//a line continuation, which Graphviz removes
+			return "\\\n" + value;
+		}
+		return value;
+	}
+
+	/**
+	 *
+	 * @return the node with the given name, which is created if it does not
+	 *         exist yet, and moved if it is mentioned in a cluster deeper than
+	 *         its current one.
+	 */
+	private DotNode getNode(String name, boolean quoted, Scope scope) {
+		DotNode node = name2node.get(name);
+		if (node == null) {
+			node = new DotNode(keepQuoted(name, quoted), null);
+			for (Entry<String, String> entry : scope.nodeDefaults.entrySet()) {
+				setAttribute(node, entry.getKey(), entry.getValue());
+			}
+			scope.cluster.addNode(node);
+			name2node.put(name, node);
+			node2cluster.put(node, scope.cluster);
+			numberOfNodes++;
+		} else {
+			DotCluster current = node2cluster.get(node);
+			if (current != scope.cluster && isAncestor(current, scope.cluster)) {
+				current.removeNode(node);
+				scope.cluster.addNode(node);
+				node2cluster.put(node, scope.cluster);
+			}
+		}
+		scope.mentioned(node);
+		return node;
+	}
+
+	private boolean isAncestor(DotCluster ancestor, DotCluster cluster) {
+		for (DotCluster c = cluster2parent.get(cluster); c != null; c = cluster2parent.get(c)) {
+			if (c == ancestor) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void setDefaults(Scope scope, String type, Map<String, String> attributes) {
+		/*
+		 * The options of a cluster apply to all its nodes and edges, including
+		 * the ones created before the options were set. Hence, they can only
+		 * hold defaults that precede all nodes and edges.
+		 */
+		boolean first = scope.isCluster && numberOfNodes == 0 && numberOfEdges == 0;
+		for (Entry<String, String> entry : attributes.entrySet()) {
+			if (type.equals("graph")) {
+				if (!scope.isCluster) {
+					setSubgraphAttribute(scope, entry.getKey(), entry.getValue());
+				} else {
+					scope.cluster.setGraphOption(entry.getKey(), entry.getValue());
+				}
+			} else if (type.equals("node")) {
+				if (first) {
+					scope.cluster.setNodeOption(entry.getKey(), entry.getValue());
+				} else {
+					scope.nodeDefaults.put(entry.getKey(), entry.getValue());
+				}
+			} else {
+				if (first) {
+					scope.cluster.setEdgeOption(entry.getKey(), entry.getValue());
+				} else {
+					scope.edgeDefaults.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	private static void setGraphAttribute(Scope scope, String key, String value) {
+		if (key.equals("id")) {
+			return;
+		}
+		if (!scope.isCluster) {
+			setSubgraphAttribute(scope, key, value);
+			return;
+		}
+		if (key.equals("label") && !(scope.cluster instanceof Dot)) {
+			scope.cluster.setLabel(value);
+		} else {
+			scope.cluster.setOption(key, value);
+		}
+	}
+
+	private static void setSubgraphAttribute(Scope scope, String key, String value) {
+		if (scope.subgraph == null) {
+			scope.subgraph = scope.cluster.addSubgraph();
+		}
+		scope.subgraph.setGraphOption(key, value);
+		scope.graphAttributes.put(key, value);
+	}
+
+	private static void setAttributes(DotElement element, Map<String, String> attributes) {
+		for (Entry<String, String> entry : attributes.entrySet()) {
+			setAttribute(element, entry.getKey(), entry.getValue());
+		}
+	}
+
+	private static void setAttribute(DotElement element, String key, String value) {
+		if (key.equals("id")) {
+			//ids are generated
+			return;
+		}
+		if (key.equals("label")) {
+			element.setLabel(value);
+		} else {
+			element.setOption(key, value);
+		}
+	}
+}
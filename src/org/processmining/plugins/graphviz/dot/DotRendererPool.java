@@ -0,0 +1,173 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.processmining.plugins.graphviz.dot.Dot2Image.Engine;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+
+/**
+ * Renders many graphs using a bounded number of concurrently running dot
+ * processes. Renders are queued; if the queue is full, render() blocks until
+ * a place becomes available (backpressure).
+ * 
+ * The result of a render is the complete output of the dot process, such that
+ * a renderer is available for the next graph as soon as dot finishes.
+ * 
+ * @author sander
+ * 
+ */
+public class DotRendererPool {
+
+	private static DotRendererPool defaultPool = null;
+
+	private final ExecutorService renderers;
+	private final Semaphore places;
+	private final int capacity;
+
+	/**
+	 * 
+	 * @param numberOfRenderers
+	 *            The maximum number of dot processes that run concurrently.
+	 * @param queueCapacity
+	 *            The maximum number of graphs that wait for a renderer; when
+	 *            reached, render() blocks.
+	 */
+	public DotRendererPool(int numberOfRenderers, int queueCapacity) {
+		if (numberOfRenderers < 1 || queueCapacity < 0) {
+			throw new IllegalArgumentException("a pool needs at least one renderer and a non-negative queue");
+		}
+		capacity = numberOfRenderers + queueCapacity;
+		places = new Semaphore(capacity, true);
+		renderers = Executors.newFixedThreadPool(numberOfRenderers, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Graphviz-dot renderer " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * 
+	 * @return A shared pool with a renderer per processor.
+	 */
+	public static synchronized DotRendererPool getDefault() {
+		if (defaultPool == null) {
+			int processors = Runtime.getRuntime().availableProcessors();
+			defaultPool = new DotRendererPool(processors, processors * 4);
+		}
+		return defaultPool;
+	}
+
+	public CompletableFuture<InputStream> render(Dot dot, Type type) {
+		return render(dot, type, Dot2Image.getEngine(dot));
+	}
+
+	/**
+	 * Queue a graph for rendering. Blocks while the queue is full.
+	 * 
+	 * @param dot
+	 * @param type
+	 * @param engine
+	 * @return a future that completes with the output of dot.
+	 */
+	public CompletableFuture<InputStream> render(final Dot dot, final Type type, final Engine engine) {
+		try {
+			return submit(new Callable<InputStream>() {
+				public InputStream call() throws Exception {
+					return renderNow(dot, type, engine);
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			CompletableFuture<InputStream> result = new CompletableFuture<>();
+			result.completeExceptionally(e);
+			return result;
+		}
+	}
+
+	/**
+	 * Queue a task that runs a dot process. Blocks while the queue is full.
+	 * 
+	 * @param task
+	 * @return a future that completes with the result of the task.
+	 * @throws InterruptedException
+	 */
+	<T> CompletableFuture<T> submit(final Callable<T> task) throws InterruptedException {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		places.acquire();
+
+		try {
+			renderers.execute(new Runnable() {
+				public void run() {
+					try {
+						if (!result.isDone()) {
+							result.complete(task.call());
+						}
+					} catch (Throwable e) {
+						result.completeExceptionally(e);
+					} finally {
+						places.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			//the pool has been shut down
+			places.release();
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	/**
+	 * 
+	 * @return The number of graphs that are queued or being rendered (not
+	 *         counting callers that are blocked because the queue is full).
+	 */
+	public int getNumberOfPendingRenders() {
+		return capacity - places.availablePermits();
+	}
+
+	/**
+	 * Stops accepting new graphs; graphs that are queued will still be
+	 * rendered.
+	 */
+	public void shutdown() {
+		renderers.shutdown();
+	}
+
+	private static InputStream renderNow(Dot dot, Type type, Engine engine) throws IOException {
+		long start = System.nanoTime();
+		Process dotProcess = Dot2Image.startDotProcess(type, engine);
+		if (dotProcess == null) {
+			throw new IOException("Graphviz-dot could not be started.");
+		}
+		try {
+			Dot2Image.writeDot(dot, dotProcess);
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (InputStream outputOfDot = Dot2Image.getOutput(dotProcess, start)) {
+				byte[] buffer = new byte[64 * 1024];
+				int read;
+				while ((read = outputOfDot.read(buffer)) != -1) {
+					output.write(buffer, 0, read);
+				}
+			}
+			return new ByteArrayInputStream(output.toByteArray());
+		} finally {
+			dotProcess.destroy();
+		}
+	}
+}
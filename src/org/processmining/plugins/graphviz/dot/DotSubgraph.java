@@ -0,0 +1,114 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A subgraph that is not a cluster, which gives graph options to a set of
+ * nodes, e.g. rank=same to put them on the same rank. It is not drawn and has
+ * no id. It refers to nodes rather than containing them: the nodes belong to
+ * a graph or cluster as usual, and removing a node from its graph does not
+ * remove it from the subgraph.
+ *
+ * @author sander
+ *
+ */
+public class DotSubgraph {
+
+	private final Map<String, String> graphOptionMap = new HashMap<>();
+	private final List<DotNode> nodes = new ArrayList<>();
+
+	protected DotSubgraph() {
+
+	}
+
+	/**
+	 * Sets an option of the subgraph, e.g. rank.
+	 *
+	 * @param option
+	 * @param value
+	 */
+	public void setGraphOption(String option, String value) {
+		graphOptionMap.put(option, value);
+	}
+
+	/**
+	 *
+	 * @param option
+	 * @return the value of the option, or null if it is not set.
+	 */
+	public String getGraphOption(String option) {
+		return graphOptionMap.get(option);
+	}
+
+	/**
+	 *
+	 * @return An unmodifiable set of the options that are set on this
+	 *         subgraph.
+	 */
+	public Set<String> getGraphOptions() {
+		return Collections.unmodifiableSet(graphOptionMap.keySet());
+	}
+
+	/**
+	 *
+	 * @return An unmodifiable list of the nodes of this subgraph.
+	 */
+	public List<DotNode> getNodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+
+	public void addNode(DotNode node) {
+		nodes.add(node);
+	}
+
+	/**
+	 * Removes all equivalent nodes from this subgraph.
+	 *
+	 * @param node
+	 */
+	public void removeNode(DotNode node) {
+		nodes.removeAll(Collections.singleton(node));
+	}
+
+	/**
+	 * Append a representation of this subgraph in the Dot-language to result.
+	 *
+	 * @param result
+	 * @throws IOException
+	 */
+	public void appendTo(Appendable result) throws IOException {
+		result.append("subgraph {\n");
+		for (String key : graphOptionMap.keySet()) {
+			result.append(key);
+			result.append('=');
+			AbstractDotElement.escape(result, graphOptionMap.get(key));
+			result.append(";\n");
+		}
+		for (DotNode node : nodes) {
+			result.append('"');
+			result.append(node.getId());
+			result.append("\";\n");
+		}
+		result.append('}');
+	}
+
+	/**
+	 * Get a string representation of this subgraph in the Dot-language.
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		try {
+			appendTo(result);
+		} catch (IOException e) {
+			//a StringBuilder does not throw IOExceptions
+			throw new RuntimeException(e);
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,356 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits text in the DOT language into tokens. Identifiers, numerals, quoted
+ * strings and HTML strings are all returned as ID tokens; the value of a
+ * quoted string is unescaped, the value of an HTML string includes its outer
+ * brackets (as with DotElement labels). Comments and whitespace are skipped.
+ * 
+ * The text is read in blocks into a fixed buffer, so memory use does not
+ * depend on the size of the text; runs of ordinary characters are copied
+ * from the buffer in bulk.
+ *
+ * @author sander
+ *
+ */
+public class DotTokenizer {
+
+	public enum Token {
+		ID, LEFT_BRACE, RIGHT_BRACE, LEFT_BRACKET, RIGHT_BRACKET, SEMICOLON, COMMA, EQUALS, COLON, EDGE_OP, END
+	}
+
+	private static final int bufferSize = 64 * 1024;
+	private static final int maximumInternedStrings = 4096;
+
+	private final Reader reader;
+	private final char[] buffer = new char[bufferSize];
+	private int position = 0;
+	private int limit = 0;
+	private long charactersRead = 0;
+	private int next;
+	private int line = 1;
+
+	private final StringBuilder value = new StringBuilder();
+	private boolean quoted;
+
+	//open-addressing table of interned strings
+	private String[] interned = new String[1024];
+	private int numberOfInterned = 0;
+
+	public DotTokenizer(Reader reader) throws IOException {
+		this.reader = reader;
+		read();
+		line = 1;
+	}
+
+	/**
+	 *
+	 * @return The next token.
+	 * @throws IOException
+	 *             if reading fails or the text contains an invalid character.
+	 */
+	public Token next() throws IOException {
+		value.setLength(0);
+		quoted = false;
+		skipWhitespaceAndComments();
+
+		int c = next;
+		switch (c) {
+			case -1 :
+				return Token.END;
+			case '{' :
+				read();
+				return Token.LEFT_BRACE;
+			case '}' :
+				read();
+				return Token.RIGHT_BRACE;
+			case '[' :
+				read();
+				return Token.LEFT_BRACKET;
+			case ']' :
+				read();
+				return Token.RIGHT_BRACKET;
+			case ';' :
+				read();
+				return Token.SEMICOLON;
+			case ',' :
+				read();
+				return Token.COMMA;
+			case '=' :
+				read();
+				return Token.EQUALS;
+			case ':' :
+				read();
+				return Token.COLON;
+			case '"' :
+				readQuoted();
+				return Token.ID;
+			case '<' :
+				readHTML();
+				return Token.ID;
+			case '-' :
+				read();
+				if (next == '>' || next == '-') {
+					value.append('-').append((char) next);
+					read();
+					return Token.EDGE_OP;
+				}
+				//a negative numeral
+				value.append('-');
+				readNumeral();
+				return Token.ID;
+			default :
+				if (c == '.' || (c >= '0' && c <= '9')) {
+					readNumeral();
+					return Token.ID;
+				}
+				if (isIdentifierCharacter(c)) {
+					readRun(false);
+					return Token.ID;
+				}
+				throw new IOException("unexpected character '" + (char) c + "' on line " + line);
+		}
+	}
+
+	/**
+	 *
+	 * @return The value of the last ID or EDGE_OP token.
+	 */
+	public String getValue() {
+		return value.toString();
+	}
+
+	/**
+	 * 
+	 * @return The value of the last ID token as a shared String instance,
+	 *         without allocating if this value was seen before. Intended for
+	 *         values that repeat often, such as attribute names.
+	 */
+	public String getInternedValue() {
+		int hash = 0;
+		for (int i = 0; i < value.length(); i++) {
+			hash = 31 * hash + value.charAt(i);
+		}
+		int mask = interned.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (interned[slot] != null) {
+			if (interned[slot].contentEquals(value)) {
+				return interned[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		String result = value.toString();
+		if (numberOfInterned < maximumInternedStrings) {
+			if ((numberOfInterned + 1) * 2 > interned.length) {
+				//grow and rehash
+				String[] old = interned;
+				interned = new String[old.length * 2];
+				mask = interned.length - 1;
+				for (String string : old) {
+					if (string != null) {
+						int h = string.hashCode();
+						int s = (h ^ (h >>> 16)) & mask;
+						while (interned[s] != null) {
+							s = (s + 1) & mask;
+						}
+						interned[s] = string;
+					}
+				}
+				slot = (hash ^ (hash >>> 16)) & mask;
+				while (interned[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+			}
+			interned[slot] = result;
+			numberOfInterned++;
+		}
+		return result;
+	}
+
+	/**
+	 * 
+	 * @return The number of characters read so far.
+	 */
+	public long getCharactersRead() {
+		return charactersRead;
+	}
+
+	/**
+	 *
+	 * @return Whether the last ID token was a quoted string.
+	 */
+	public boolean isQuoted() {
+		return quoted;
+	}
+
+	/**
+	 *
+	 * @return The line of the last token.
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	private static boolean isIdentifierCharacter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c >= 128;
+	}
+
+	private void read() throws IOException {
+		if (next == '\n') {
+			line++;
+		}
+		if (position == limit && !fill()) {
+			next = -1;
+			return;
+		}
+		next = buffer[position++];
+	}
+
+	/**
+	 * Reads the next block of the text into the buffer.
+	 * 
+	 * @return whether there was text left.
+	 */
+	private boolean fill() throws IOException {
+		int read;
+		do {
+			read = reader.read(buffer, 0, buffer.length);
+		} while (read == 0);
+		if (read < 0) {
+			position = limit = 0;
+			return false;
+		}
+		position = 0;
+		limit = read;
+		charactersRead += read;
+		return true;
+	}
+
+	/**
+	 * Appends next and the following characters up to (not including) the
+	 * first character that ends the run (see isRunEnd) to value, copying from
+	 * the buffer in bulk.
+	 */
+	private void readRun(boolean quotedString) throws IOException {
+		while (next != -1 && !isRunEnd(next, quotedString)) {
+			if (next == '\n') {
+				line++;
+			}
+			value.append((char) next);
+			//bulk-copy the rest of the run that is in the buffer
+			int start = position;
+			while (position < limit && !isRunEnd(buffer[position], quotedString)) {
+				if (buffer[position] == '\n') {
+					line++;
+				}
+				position++;
+			}
+			value.append(buffer, start, position - start);
+			if (position < limit) {
+				next = buffer[position++];
+			} else if (fill()) {
+				next = buffer[position++];
+			} else {
+				next = -1;
+			}
+		}
+	}
+
+	private static boolean isRunEnd(int c, boolean quotedString) {
+		if (quotedString) {
+			return c == '"' || c == '\\';
+		}
+		return !(isIdentifierCharacter(c) || (c >= '0' && c <= '9'));
+	}
+
+	private void skipWhitespaceAndComments() throws IOException {
+		while (true) {
+			if (Character.isWhitespace(next)) {
+				read();
+			} else if (next == '#') {
+				//preprocessor output line
+				while (next != '\n' && next != -1) {
+					read();
+				}
+			} else if (next == '/') {
+				read();
+				if (next == '/') {
+					while (next != '\n' && next != -1) {
+						read();
+					}
+				} else if (next == '*') {
+					read();
+					int previous = 0;
+					while (next != -1 && !(previous == '*' && next == '/')) {
+						previous = next;
+						read();
+					}
+					read();
+				} else {
+					throw new IOException("unexpected character '/' on line " + line);
+				}
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void readNumeral() throws IOException {
+		while (next == '.' || (next >= '0' && next <= '9')) {
+			value.append((char) next);
+			read();
+		}
+	}
+
+	private void readQuoted() throws IOException {
+		quoted = true;
+		read();
+		while (next != '"') {
+			if (next == -1) {
+				throw new IOException("unterminated string on line " + line);
+			}
+			if (next != '\\') {
+				readRun(true);
+			} else {
+				read();
+				if (next == '"') {
+					value.append('"');
+				} else if (next == '\n') {
+					//line continuation
+				} else if (next == '\r') {
+					read();
+					if (next != '\n') {
+						continue;
+					}
+				} else {
+					//other escapes (\n, \l, \N, ...) are interpreted by Graphviz
+					value.append('\\');
+					if (next != -1) {
+						value.append((char) next);
+					}
+				}
+				read();
+			}
+		}
+		read();
+	}
+
+	private void readHTML() throws IOException {
+		int depth = 0;
+		do {
+			if (next == -1) {
+				throw new IOException("unterminated HTML string on line " + line);
+			}
+			if (next == '<') {
+				depth++;
+			} else if (next == '>') {
+				depth--;
+			}
+			value.append((char) next);
+			read();
+		} while (depth > 0);
+	}
+}
@@ -0,0 +1,245 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measurements of the stages of the render pipeline: serialisation of the Dot,
+ * the dot process, parsing its svg output, painting and picking. Measurements
+ * are passed to the registered listeners; without listeners, nothing is
+ * measured and the instrumented code only reads a volatile boolean.
+ *
+ * To record measurements as JFR events, register a listener that creates,
+ * fills and commits a custom jdk.jfr.Event per measurement.
+ *
+ * @author sander
+ *
+ */
+public class GraphvizMetrics {
+
+	public enum Stage {
+		/**
+		 * Writing the Dot to the dot process; size: bytes of dot text.
+		 */
+		serialisation,
+		/**
+		 * From the start of the dot process until the first byte of its
+		 * output; size: 0.
+		 */
+		firstByte,
+		/**
+		 * From the start of the dot process until the end of its output (wall
+		 * time of the layout); size: bytes of output.
+		 */
+		layout,
+		/**
+		 * Parsing svg into a diagram; size: bytes of svg, or 0 if unknown.
+		 */
+		svgParse,
+		/**
+		 * Painting a panel (one frame); size: 0.
+		 */
+		paint,
+		/**
+		 * Finding the elements at a point; size: the number of elements found.
+		 */
+		pick
+	}
+
+	public interface Listener {
+		/**
+		 * Called on the thread that performed the stage; should return
+		 * quickly.
+		 *
+		 * @param stage
+		 * @param nanoseconds
+		 * @param size
+		 *            see Stage
+		 */
+		public void measured(Stage stage, long nanoseconds, long size);
+	}
+
+	private static final Listener[] noListeners = new Listener[0];
+	private static volatile Listener[] listeners = noListeners;
+	private static volatile boolean enabled = false;
+
+	/**
+	 *
+	 * @return Whether measurements are taken, i.e. whether there are
+	 *         listeners.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static synchronized void addListener(Listener listener) {
+		Listener[] result = new Listener[listeners.length + 1];
+		System.arraycopy(listeners, 0, result, 0, listeners.length);
+		result[listeners.length] = listener;
+		listeners = result;
+		enabled = true;
+	}
+
+	public static synchronized void removeListener(Listener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				Listener[] result = new Listener[listeners.length - 1];
+				System.arraycopy(listeners, 0, result, 0, i);
+				System.arraycopy(listeners, i + 1, result, i, listeners.length - i - 1);
+				listeners = result.length == 0 ? noListeners : result;
+				enabled = result.length > 0;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Passes a measurement to the listeners.
+	 *
+	 * @param stage
+	 * @param nanoseconds
+	 * @param size
+	 */
+	public static void measured(Stage stage, long nanoseconds, long size) {
+		for (Listener listener : listeners) {
+			listener.measured(stage, nanoseconds, size);
+		}
+	}
+
+	/**
+	 * Wraps the standard input of a dot process, to measure serialisation.
+	 * Call only if enabled.
+	 *
+	 * @param stdin
+	 * @return a stream that reports Stage.serialisation when closed.
+	 */
+	public static OutputStream measureSerialisation(OutputStream stdin) {
+		final long start = System.nanoTime();
+		return new FilterOutputStream(stdin) {
+			private long bytes = 0;
+
+			public void write(int b) throws IOException {
+				out.write(b);
+				bytes++;
+			}
+
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				bytes += len;
+			}
+
+			public void close() throws IOException {
+				super.close();
+				measured(Stage.serialisation, System.nanoTime() - start, bytes);
+			}
+		};
+	}
+
+	/**
+	 * Wraps the output of a dot process, to measure the time to the first
+	 * byte and the layout time. Call only if enabled.
+	 *
+	 * @param stdout
+	 * @param processStart
+	 *            System.nanoTime() at the start of the process.
+	 * @return a stream that reports Stage.firstByte on the first read and
+	 *         Stage.layout at the end of the output.
+	 */
+	public static InputStream measureLayout(InputStream stdout, final long processStart) {
+		return new FilterInputStream(stdout) {
+			private long bytes = 0;
+			private boolean first = true;
+			private boolean done = false;
+
+			public int read() throws IOException {
+				int result = in.read();
+				count(result < 0 ? -1 : 1);
+				return result;
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				int result = in.read(b, off, len);
+				count(result);
+				return result;
+			}
+
+			private void count(int read) {
+				if (first && read > 0) {
+					first = false;
+					measured(Stage.firstByte, System.nanoTime() - processStart, 0);
+				}
+				if (read > 0) {
+					bytes += read;
+				} else if (read < 0 && !done) {
+					done = true;
+					measured(Stage.layout, System.nanoTime() - processStart, bytes);
+				}
+			}
+		};
+	}
+
+	/**
+	 * A listener that keeps the number, total, maximum and total size of the
+	 * measurements per stage.
+	 */
+	public static class Summary implements Listener {
+		private final AtomicLongArray counts = new AtomicLongArray(Stage.values().length);
+		private final AtomicLongArray totals = new AtomicLongArray(Stage.values().length);
+		private final AtomicLongArray maxima = new AtomicLongArray(Stage.values().length);
+		private final AtomicLongArray sizes = new AtomicLongArray(Stage.values().length);
+
+		public void measured(Stage stage, long nanoseconds, long size) {
+			int i = stage.ordinal();
+			counts.incrementAndGet(i);
+			totals.addAndGet(i, nanoseconds);
+			sizes.addAndGet(i, size);
+			long maximum;
+			do {
+				maximum = maxima.get(i);
+			} while (nanoseconds > maximum && !maxima.compareAndSet(i, maximum, nanoseconds));
+		}
+
+		public long getCount(Stage stage) {
+			return counts.get(stage.ordinal());
+		}
+
+		/**
+		 *
+		 * @param stage
+		 * @return the total time of the stage, in nanoseconds.
+		 */
+		public long getTotal(Stage stage) {
+			return totals.get(stage.ordinal());
+		}
+
+		public long getMaximum(Stage stage) {
+			return maxima.get(stage.ordinal());
+		}
+
+		public long getTotalSize(Stage stage) {
+			return sizes.get(stage.ordinal());
+		}
+
+		public long getAverage(Stage stage) {
+			long count = getCount(stage);
+			return count == 0 ? 0 : getTotal(stage) / count;
+		}
+
+		public String toString() {
+			StringBuilder result = new StringBuilder();
+			for (Stage stage : Stage.values()) {
+				if (getCount(stage) == 0) {
+					continue;
+				}
+				result.append(stage).append(": ").append(getCount(stage)).append("x, average ")
+						.append(getAverage(stage) / 1000).append("us, maximum ").append(getMaximum(stage) / 1000)
+						.append("us, size ").append(getTotalSize(stage)).append('\n');
+			}
+			return result.toString();
+		}
+	}
+}
@@ -0,0 +1,580 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.processmining.plugins.graphviz.dot.Dot2Image.Engine;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+
+/**
+ * Lays out a Dot cluster by cluster, such that a change in one cluster only
+ * requires that cluster and its ancestors to be laid out again.
+ *
+ * Each cluster is laid out on its own, with its sub-clusters replaced by
+ * fixed-size placeholder nodes of the size of their layouts. The text of such
+ * a layout does not contain the ids of the elements, so the layout of a
+ * cluster is taken from the cache (Dot2ImageCache) if the cluster has been
+ * laid out before with the same content, even in a Dot that was rebuilt.
+ * Finally, the layouts of the sub-clusters are drawn at the positions of
+ * their placeholders.
+ *
+ * The result is an approximation of the layout of the whole Dot: clusters do
+ * not share ranks with their surroundings, and an edge that crosses the
+ * border of a cluster ends at the border of the cluster (ports, lhead and
+ * ltail are not used for such edges). Only the dot engine is supported.
+ *
+ * An instance may be used by several threads at once; its statistics cover
+ * all layouts made with it.
+ *
+ * @author sander
+ *
+ */
+public class HierarchicalLayout {
+
+	private static final Pattern canonicalId = Pattern.compile("id=\"(a_)?((?:cluster_)?h\\d+)([^\"]*)\"");
+	private static final Pattern viewBox = Pattern
+			.compile("viewBox=\"([-0-9.]+) ([-0-9.]+) ([-0-9.]+) ([-0-9.]+)\"");
+	private static final Pattern points = Pattern.compile("points=\"([^\"]*)\"");
+
+	/**
+	 * Allows a layout to be aborted: between clusters, and by destroying the
+	 * running dot process.
+	 */
+	public interface Cancellation {
+		/**
+		 * 
+		 * @return whether the layout is to be aborted.
+		 */
+		public boolean isCancelled();
+
+		/**
+		 * Is called with each dot process before the layout uses it. The
+		 * implementation keeps it, such that it can destroy it to abort the
+		 * layout.
+		 * 
+		 * @param process
+		 * @return false if the layout has been aborted already; the
+		 *         implementation destroys the process then.
+		 */
+		public boolean setProcess(Process process);
+	}
+
+	private final Dot2ImageCache cache;
+	private final AtomicLong clustersLaidOut = new AtomicLong();
+	private final AtomicLong clustersReused = new AtomicLong();
+
+	public HierarchicalLayout() {
+		this(Dot2ImageCache.getDefault());
+	}
+
+	/**
+	 *
+	 * @param cache
+	 *            Stores the layouts of the clusters.
+	 */
+	public HierarchicalLayout(Dot2ImageCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 *
+	 * @param dot
+	 * @return whether the dot benefits from a hierarchical layout, i.e. it has
+	 *         clusters and is to be laid out by the dot engine.
+	 */
+	public static boolean applies(Dot dot) {
+		return !dot.getClusters().isEmpty() && Dot2Image.getEngine(dot) == Engine.dot;
+	}
+
+	/**
+	 * Lays out the dot as svg.
+	 *
+	 * @param dot
+	 * @return the svg, or null if dot could not be run.
+	 */
+	public byte[] dot2svg(Dot dot) {
+		return dot2svg(dot, null);
+	}
+
+	/**
+	 * Lays out the dot as svg.
+	 *
+	 * @param dot
+	 * @param cancellation
+	 *            Is checked between clusters and is given the dot processes,
+	 *            or null if the layout cannot be aborted.
+	 * @return the svg, or null if dot could not be run or the layout was
+	 *         aborted.
+	 */
+	public byte[] dot2svg(Dot dot, Cancellation cancellation) {
+		if (!applies(dot)) {
+			return cache.dot2image(dot, Type.svg, Dot2Image.getEngine(dot));
+		}
+		Hierarchy hierarchy = new Hierarchy(dot);
+		try {
+			Layout layout = layout(hierarchy, dot, cancellation);
+			if (layout == null) {
+				return null;
+			}
+			return layout.svg.getBytes(StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			if (!isCancelled(cancellation)) {
+				e.printStackTrace();
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Lays out a cluster, with its sub-clusters laid out first.
+	 */
+	private Layout layout(Hierarchy hierarchy, DotCluster cluster, Cancellation cancellation) throws IOException {
+		List<DotCluster> children = cluster.getClusters();
+		List<Layout> childLayouts = new ArrayList<>(children.size());
+		for (DotCluster child : children) {
+			Layout childLayout = layout(hierarchy, child, cancellation);
+			if (childLayout == null) {
+				return null;
+			}
+			childLayouts.add(childLayout);
+		}
+
+		if (isCancelled(cancellation)) {
+			return null;
+		}
+		Level level = new Level(hierarchy, cluster);
+		String text = level.toDot(childLayouts);
+		String svg = layout(text, cancellation);
+		if (svg == null) {
+			return null;
+		}
+		svg = level.restoreIds(svg);
+		for (int i = 0; i < children.size(); i++) {
+			svg = place(svg, children.get(i), childLayouts.get(i));
+			if (svg == null) {
+				return null;
+			}
+		}
+		return new Layout(svg);
+	}
+
+	/**
+	 * Lays out the text of one level, or takes it from the cache.
+	 */
+	private String layout(String text, Cancellation cancellation) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		String key = Dot2ImageCache.getKey(bytes, Type.svg, Engine.dot);
+		byte[] result = cache.get(key);
+		if (result != null) {
+			clustersReused.incrementAndGet();
+		} else {
+			long start = System.nanoTime();
+			Process dotProcess = Dot2Image.startDotProcess(Type.svg, Engine.dot);
+			if (dotProcess == null || (cancellation != null && !cancellation.setProcess(dotProcess))) {
+				return null;
+			}
+			try {
+				Dot2Image.writeDot(bytes, dotProcess);
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				try (InputStream outputOfDot = Dot2Image.getOutput(dotProcess, start)) {
+					byte[] buffer = new byte[64 * 1024];
+					int read;
+					while ((read = outputOfDot.read(buffer)) != -1) {
+						output.write(buffer, 0, read);
+					}
+				}
+				result = output.toByteArray();
+			} catch (IOException e) {
+				if (isCancelled(cancellation)) {
+					//the process was destroyed
+					return null;
+				}
+				throw e;
+			} finally {
+				dotProcess.destroy();
+			}
+			if (result.length == 0 || isCancelled(cancellation)) {
+				return null;
+			}
+			clustersLaidOut.incrementAndGet();
+			cache.put(key, result);
+		}
+		return new String(result, StandardCharsets.UTF_8);
+	}
+
+	private static boolean isCancelled(Cancellation cancellation) {
+		return cancellation != null && cancellation.isCancelled();
+	}
+
+	/**
+	 * Replaces the placeholder of the cluster in svg by the layout of the
+	 * cluster.
+	 */
+	private static String place(String svg, DotCluster cluster, Layout layout) {
+		int id = svg.indexOf("id=\"" + getPlaceholderId(cluster) + "\"");
+		if (id < 0) {
+			return null;
+		}
+		int start = svg.lastIndexOf("<g ", id);
+		int end = svg.indexOf("</g>", id) + 4;
+		if (start < 0 || end < 4) {
+			return null;
+		}
+		Matcher matcher = points.matcher(svg.substring(start, end));
+		if (!matcher.find()) {
+			return null;
+		}
+		double x = Double.POSITIVE_INFINITY;
+		double y = Double.POSITIVE_INFINITY;
+		for (String point : matcher.group(1).trim().split("\\s+")) {
+			int comma = point.indexOf(',');
+			x = Math.min(x, Double.parseDouble(point.substring(0, comma)));
+			y = Math.min(y, Double.parseDouble(point.substring(comma + 1)));
+		}
+
+		StringBuilder result = new StringBuilder(svg.length() + layout.graph.length() + 64);
+		result.append(svg, 0, start);
+		result.append("<g transform=\"translate(").append(x).append(' ').append(y).append(")\">\n");
+		result.append(layout.graph);
+		result.append("\n</g>");
+		result.append(svg, end, svg.length());
+		return result.toString();
+	}
+
+	private static String getPlaceholderId(DotCluster cluster) {
+		return "placeholder_" + cluster.getId();
+	}
+
+	/**
+	 *
+	 * @return The number of clusters (including the root) that were laid out
+	 *         by dot.
+	 */
+	public long getClustersLaidOut() {
+		return clustersLaidOut.get();
+	}
+
+	/**
+	 *
+	 * @return The number of clusters (including the root) of which the layout
+	 *         was taken from the cache.
+	 */
+	public long getClustersReused() {
+		return clustersReused.get();
+	}
+
+	public String toString() {
+		return "hierarchical layout: " + getClustersLaidOut() + " clusters laid out, " + getClustersReused()
+				+ " reused";
+	}
+
+	/**
+	 * The laid out svg of a cluster, its size and its graph group.
+	 */
+	private static class Layout {
+		private final String svg;
+		private final double width;
+		private final double height;
+		private final String graph;
+
+		public Layout(String svg) throws IOException {
+			this.svg = svg;
+			Matcher matcher = viewBox.matcher(svg);
+			int graphStart = svg.indexOf("<g id=\"graph0\"");
+			int graphEnd = svg.lastIndexOf("</g>");
+			if (!matcher.find() || graphStart < 0 || graphEnd < graphStart) {
+				throw new IOException("the layout of a cluster could not be read");
+			}
+			width = Double.parseDouble(matcher.group(3));
+			height = Double.parseDouble(matcher.group(4));
+			//the group keeps its transformation, but not its id, which is not unique
+			String graph = "<g" + svg.substring(graphStart + 14, graphEnd + 4);
+
+			//remove the background, which would cover the fill of the enclosing cluster
+			int background = graph.indexOf("<polygon");
+			int firstGroup = graph.indexOf("<g", 2);
+			if (background >= 0 && (firstGroup < 0 || background < firstGroup)) {
+				graph = graph.substring(0, background) + graph.substring(graph.indexOf("/>", background) + 2);
+			}
+			this.graph = graph;
+		}
+	}
+
+	/**
+	 * The parents and depths of all nodes and clusters of a dot, and the
+	 * level at which each edge is laid out: the deepest cluster that contains
+	 * both its ends.
+	 */
+	private static class Hierarchy {
+		private final Map<DotNode, DotCluster> parents = new IdentityHashMap<>();
+		private final Map<DotNode, Integer> depths = new IdentityHashMap<>();
+		private final Map<DotCluster, List<DotEdge>> edges = new IdentityHashMap<>();
+		private final Dot root;
+
+		public Hierarchy(Dot dot) {
+			root = dot;
+			depths.put(dot, 0);
+			add(dot, 0);
+			for (DotEdge edge : dot.getEdgesRecursive()) {
+				DotCluster level = getCommonAncestor(edge.getSource(), edge.getTarget());
+				List<DotEdge> list = edges.get(level);
+				if (list == null) {
+					list = new ArrayList<>();
+					edges.put(level, list);
+				}
+				list.add(edge);
+			}
+		}
+
+		private void add(DotCluster cluster, int depth) {
+			for (DotNode node : cluster.getNodes()) {
+				parents.put(node, cluster);
+				depths.put(node, depth + 1);
+			}
+			for (DotCluster child : cluster.getClusters()) {
+				parents.put(child, cluster);
+				depths.put(child, depth + 1);
+				add(child, depth + 1);
+			}
+		}
+
+		private DotCluster getParent(DotNode node) {
+			DotCluster parent = parents.get(node);
+			return parent == null ? root : parent;
+		}
+
+		private int getDepth(DotNode node) {
+			Integer depth = depths.get(node);
+			return depth == null ? 1 : depth;
+		}
+
+		private DotCluster getCommonAncestor(DotNode a, DotNode b) {
+			DotCluster x = getParent(a);
+			DotCluster y = getParent(b);
+			while (getDepth(x) > getDepth(y)) {
+				x = getParent(x);
+			}
+			while (getDepth(y) > getDepth(x)) {
+				y = getParent(y);
+			}
+			while (x != y) {
+				x = getParent(x);
+				y = getParent(y);
+			}
+			return x;
+		}
+
+		/**
+		 *
+		 * @param node
+		 * @param level
+		 * @return the node or cluster that represents node in the layout of
+		 *         level, i.e. its ancestor that is a direct child of level.
+		 */
+		private DotNode getRepresentative(DotNode node, DotCluster level) {
+			DotNode result = node;
+			while (result != root && getParent(result) != level) {
+				result = getParent(result);
+			}
+			return result;
+		}
+
+		private List<DotEdge> getEdges(DotCluster level) {
+			List<DotEdge> result = edges.get(level);
+			return result == null ? new ArrayList<DotEdge>() : result;
+		}
+	}
+
+	/**
+	 * The dot text of one cluster, with its elements renamed to canonical
+	 * names that do not depend on their ids.
+	 */
+	private static class Level {
+		private final Hierarchy hierarchy;
+		private final DotCluster cluster;
+		private final Map<DotNode, String> names = new IdentityHashMap<>();
+		private final Map<String, String> ids = new HashMap<>();
+		private int nextName = 0;
+
+		public Level(Hierarchy hierarchy, DotCluster cluster) {
+			this.hierarchy = hierarchy;
+			this.cluster = cluster;
+		}
+
+		/**
+		 * Gives the element the next canonical name.
+		 */
+		private String name(DotElement element, String prefix) {
+			String result = prefix + "h" + nextName++;
+			if (element instanceof DotCluster && element != cluster) {
+				ids.put(result, getPlaceholderId((DotCluster) element));
+			} else {
+				ids.put(result, element.getId());
+			}
+			if (element instanceof DotNode) {
+				names.put((DotNode) element, result);
+			}
+			return result;
+		}
+
+		public String toDot(List<Layout> childLayouts) throws IOException {
+			StringBuilder result = new StringBuilder();
+			Dot root = hierarchy.root;
+			result.append("digraph G {\n");
+			for (String key : root.getOptionKeySet()) {
+				if (cluster != root && key.equals("label")) {
+					continue;
+				}
+				result.append(key);
+				result.append('=');
+				root.appendEscaped(result, root.getOption(key));
+				result.append(";\n");
+			}
+
+			//the defaults of the ancestors of the cluster apply to its elements
+			List<DotCluster> ancestors = new ArrayList<>();
+			for (DotCluster ancestor = cluster; ancestor != root; ancestor = hierarchy.getParent(ancestor)) {
+				ancestors.add(0, ancestor);
+			}
+			ancestors.add(0, root);
+			for (DotCluster ancestor : ancestors.subList(0, ancestors.size() - 1)) {
+				appendDefaults(result, ancestor);
+			}
+
+			if (cluster == root) {
+				appendDefaults(result, root);
+			} else {
+				String name = name(cluster, "cluster_");
+				result.append("subgraph \"").append(name).append("\"{\n");
+				result.append("id=\"").append(name).append("\";label=");
+				cluster.appendLabel(result);
+				result.append(';');
+				cluster.appendOptions(result);
+			}
+
+			for (DotNode node : cluster.getNodes()) {
+				String name = name(node, "");
+				result.append('"').append(name).append("\" [label=");
+				node.appendLabel(result);
+				result.append(", id=\"").append(name).append('"');
+				node.appendOptionList(result);
+				result.append("];\n");
+			}
+
+			List<DotCluster> children = cluster.getClusters();
+			for (int i = 0; i < children.size(); i++) {
+				String name = name(children.get(i), "");
+				Layout layout = childLayouts.get(i);
+				result.append('"').append(name).append("\" [label=\"\", id=\"").append(name);
+				result.append("\",shape=box,fixedsize=true,style=solid,peripheries=1");
+				result.append(String.format(Locale.ROOT, ",width=%.4f,height=%.4f", layout.width / 72,
+						layout.height / 72));
+				result.append("];\n");
+			}
+
+			//subgraphs (e.g. rank=same) apply to the nodes or placeholders that represent their nodes
+			for (DotSubgraph subgraph : cluster.getSubgraphs()) {
+				result.append("subgraph {\n");
+				for (String key : subgraph.getGraphOptions()) {
+					result.append(key).append('=');
+					cluster.appendEscaped(result, subgraph.getGraphOption(key));
+					result.append(";\n");
+				}
+				for (DotNode node : subgraph.getNodes()) {
+					String name = names.get(hierarchy.getRepresentative(node, cluster));
+					if (name != null) {
+						result.append('"').append(name).append("\";\n");
+					}
+				}
+				result.append("}\n");
+			}
+
+			for (DotEdge edge : hierarchy.getEdges(cluster)) {
+				DotNode source = hierarchy.getRepresentative(edge.getSource(), cluster);
+				DotNode target = hierarchy.getRepresentative(edge.getTarget(), cluster);
+				if (!names.containsKey(source) || !names.containsKey(target)
+						|| (source == target && source instanceof DotCluster)) {
+					//an edge between a cluster and its own content
+					continue;
+				}
+				String name = name(edge, "");
+				result.append('"').append(names.get(source)).append("\" -> \"").append(names.get(target));
+				result.append("\" [label=");
+				edge.appendLabel(result);
+				result.append(" id=\"").append(name).append('"');
+				for (String key : edge.getOptionKeySet()) {
+					if (key.equals("lhead") || key.equals("ltail")
+							|| (key.equals("tailport") && source != edge.getSource())
+							|| (key.equals("headport") && target != edge.getTarget())) {
+						continue;
+					}
+					result.append(',').append(key).append('=');
+					edge.appendEscaped(result, edge.getOption(key));
+				}
+				result.append("];\n");
+			}
+
+			if (cluster != root) {
+				result.append("}\n");
+			}
+			result.append('}');
+			return result.toString();
+		}
+
+		private static void appendDefaults(StringBuilder result, DotCluster cluster) throws IOException {
+			appendDefaults(result, cluster, "graph", cluster.getGraphOptions(), 0);
+			appendDefaults(result, cluster, "node", cluster.getNodeOptionKeySet(), 1);
+			appendDefaults(result, cluster, "edge", cluster.getEdgeOptions(), 2);
+		}
+
+		private static void appendDefaults(StringBuilder result, DotCluster cluster, String type,
+				Iterable<String> keys, int kind) throws IOException {
+			boolean first = true;
+			for (String key : keys) {
+				result.append(first ? type + "[" : ",");
+				first = false;
+				result.append(key).append('=');
+				String value = kind == 0 ? cluster.getGraphOption(key)
+						: (kind == 1 ? cluster.getNodeOption(key) : cluster.getEdgeOption(key));
+				cluster.appendEscaped(result, value);
+			}
+			if (!first) {
+				result.append("];\n");
+			}
+		}
+
+		/**
+		 * Replaces the canonical ids in the svg of this level by the ids of
+		 * the elements.
+		 */
+		public String restoreIds(String svg) {
+			Matcher matcher = canonicalId.matcher(svg);
+			StringBuffer result = new StringBuffer(svg.length());
+			while (matcher.find()) {
+				String id = ids.get(matcher.group(2));
+				if (id == null) {
+					id = matcher.group(2);
+				}
+				StringBuilder replacement = new StringBuilder("id=\"");
+				if (matcher.group(1) != null) {
+					replacement.append(matcher.group(1));
+				}
+				replacement.append(id).append(matcher.group(3)).append('"');
+				matcher.appendReplacement(result, Matcher.quoteReplacement(replacement.toString()));
+			}
+			matcher.appendTail(result);
+			return result.toString();
+		}
+	}
+}
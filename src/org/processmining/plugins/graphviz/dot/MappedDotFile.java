@@ -0,0 +1,181 @@
+package org.processmining.plugins.graphviz.dot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A .dot file that is mapped into memory rather than read onto the heap, such
+ * that files of several gigabytes can be parsed or handed to Graphviz without
+ * a matching heap size. The file is mapped in regions of at most
+ * regionSize bytes (a single mapping cannot exceed 2GB); the operating
+ * system pages the regions in and out as they are read.
+ *
+ * The text is decoded (UTF-8) while it is parsed, so no String of the whole
+ * file is ever built.
+ *
+ * @author sander
+ *
+ */
+public class MappedDotFile {
+
+	public static final int regionSize = 1 << 30;
+
+	private final File file;
+	private final long size;
+	private final MappedByteBuffer[] regions;
+
+	/**
+	 * Maps the file. The file should not be changed while it is mapped.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public MappedDotFile(File file) throws IOException {
+		this.file = file;
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+				FileChannel channel = randomAccessFile.getChannel()) {
+			size = channel.size();
+			int numberOfRegions = (int) ((size + regionSize - 1) / regionSize);
+			regions = new MappedByteBuffer[numberOfRegions];
+			for (int i = 0; i < numberOfRegions; i++) {
+				long position = (long) i * regionSize;
+				regions[i] = channel.map(MapMode.READ_ONLY, position, Math.min(regionSize, size - position));
+			}
+			//the mappings remain valid after the channel is closed
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 *
+	 * @return The size of the file in bytes.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Parses the file into nodes, edges and clusters (see DotParser).
+	 *
+	 * @return the graph
+	 * @throws IOException
+	 *             if the file is not a valid graph.
+	 */
+	public Dot parse() throws IOException {
+		return new Dot(getInputStream());
+	}
+
+	/**
+	 * Parses the file, keeping track of throughput (see DotParser).
+	 *
+	 * @return the parser, which has parsed the file into dot.
+	 * @throws IOException
+	 *             if the file is not a valid graph.
+	 */
+	public DotParser parse(Dot dot) throws IOException {
+		DotParser parser = new DotParser(getInputStream());
+		parser.parse(dot);
+		return parser;
+	}
+
+	/**
+	 *
+	 * @return A new stream over the bytes of the file. Streams are
+	 *         independent of one another.
+	 */
+	public InputStream getInputStream() {
+		return new MappedInputStream(regions);
+	}
+
+	/**
+	 * Writes the bytes of the file to output, straight from the mapped
+	 * regions.
+	 *
+	 * @param output
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream output) throws IOException {
+		byte[] block = new byte[64 * 1024];
+		for (MappedByteBuffer region : regions) {
+			ByteBuffer buffer = region.duplicate();
+			while (buffer.hasRemaining()) {
+				int length = Math.min(block.length, buffer.remaining());
+				buffer.get(block, 0, length);
+				output.write(block, 0, length);
+			}
+		}
+		output.flush();
+	}
+
+	private static class MappedInputStream extends InputStream {
+		private final ByteBuffer[] regions;
+		private int region = 0;
+
+		public MappedInputStream(MappedByteBuffer[] regions) {
+			//each stream has its own positions
+			this.regions = new ByteBuffer[regions.length];
+			for (int i = 0; i < regions.length; i++) {
+				this.regions[i] = regions[i].duplicate();
+			}
+		}
+
+		/**
+		 *
+		 * @return the current region, or null at the end of the file.
+		 */
+		private ByteBuffer current() {
+			while (region < regions.length && !regions[region].hasRemaining()) {
+				regions[region] = null;
+				region++;
+			}
+			return region < regions.length ? regions[region] : null;
+		}
+
+		public int read() {
+			ByteBuffer buffer = current();
+			if (buffer == null) {
+				return -1;
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			ByteBuffer buffer = current();
+			if (buffer == null) {
+				return -1;
+			}
+			int length = Math.min(len, buffer.remaining());
+			buffer.get(b, off, length);
+			return length;
+		}
+
+		public long skip(long n) {
+			long skipped = 0;
+			ByteBuffer buffer;
+			while (skipped < n && (buffer = current()) != null) {
+				int length = (int) Math.min(n - skipped, buffer.remaining());
+				buffer.position(buffer.position() + length);
+				skipped += length;
+			}
+			return skipped;
+		}
+
+		public int available() {
+			ByteBuffer buffer = current();
+			return buffer == null ? 0 : buffer.remaining();
+		}
+	}
+}
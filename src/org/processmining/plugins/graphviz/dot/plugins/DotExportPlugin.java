@@ -2,8 +2,9 @@ package org.processmining.plugins.graphviz.dot.plugins;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 
 import org.processmining.contexts.uitopia.annotations.UIExportPlugin;
 import org.processmining.contexts.uitopia.annotations.UITopiaVariant;
@@ -27,8 +28,9 @@ public final class DotExportPlugin {
 	@UITopiaVariant(affiliation = UITopiaVariant.EHV, author = "F. Mannhardt", email = "f.mannhardt@tue.nl")
 	@PluginVariant(requiredParameterLabels = { 0, 1 }, variantLabel = "Export Dot File")
 	public void export(PluginContext context, Dot dot, File file) throws IOException {
-		try (BufferedWriter fileWriter = new BufferedWriter(new FileWriter(file))) {
-			fileWriter.write(dot.toString());
+		try (BufferedWriter fileWriter = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+			dot.writeTo(fileWriter);
 		}
 	}
 }
\ No newline at end of file
@@ -5,11 +5,28 @@ import java.io.File;
 import java.io.IOException;
 
 import org.processmining.plugins.graphviz.dot.Dot;
+import org.processmining.plugins.graphviz.dot.Dot2Image;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+import org.processmining.plugins.graphviz.dot.Dot2ImageCache;
 import org.processmining.plugins.graphviz.visualisation.DotPanel;
 import org.processmining.plugins.graphviz.visualisation.export.Exporter;
 
 public abstract class DotImageExportPlugin {
 
+	/**
+	 * Writes the image as rendered by Graphviz, without building a panel.
+	 * 
+	 * @param dot
+	 * @param file
+	 * @param type
+	 * @throws IOException
+	 */
+	protected void export(Dot dot, File file, Type type) throws IOException {
+		if (!Dot2ImageCache.getDefault().dot2image(dot, file, type, Dot2Image.getEngine(dot))) {
+			throw new IOException("Cannot export Dot.");
+		}
+	}
+
 	protected void export(Dot dot, File file, Exporter exporter) throws IOException {
 		DotPanel panel = new DotPanel(dot);
 		panel.setSize(new Dimension((int) panel.getSVG().getWidth(), (int) panel.getSVG().getHeight()));
@@ -10,7 +10,7 @@ import org.processmining.framework.plugin.annotations.Plugin;
 import org.processmining.framework.plugin.annotations.PluginLevel;
 import org.processmining.framework.plugin.annotations.PluginVariant;
 import org.processmining.plugins.graphviz.dot.Dot;
-import org.processmining.plugins.graphviz.visualisation.export.ExporterPDF;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
 
 /**
  * Exports a Dot object
@@ -26,7 +26,7 @@ public final class DotPDFExportPlugin extends DotImageExportPlugin {
 	@UITopiaVariant(affiliation = UITopiaVariant.EHV, author = "F. Mannhardt", email = "f.mannhardt@tue.nl")
 	@PluginVariant(requiredParameterLabels = { 0, 1 }, variantLabel = "Export Dot as PDF")
 	public void exportAsPDF(PluginContext context, Dot dot, File file) throws IOException {
-		export(dot, file, new ExporterPDF());
+		export(dot, file, Type.pdf);
 	}
 	
 }
\ No newline at end of file
@@ -10,7 +10,7 @@ import org.processmining.framework.plugin.annotations.Plugin;
 import org.processmining.framework.plugin.annotations.PluginLevel;
 import org.processmining.framework.plugin.annotations.PluginVariant;
 import org.processmining.plugins.graphviz.dot.Dot;
-import org.processmining.plugins.graphviz.visualisation.export.ExporterPNG;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
 
 /**
  * Exports a Dot object
@@ -26,6 +26,6 @@ public final class DotPNGExportPlugin extends DotImageExportPlugin {
 	@UITopiaVariant(affiliation = UITopiaVariant.EHV, author = "F. Mannhardt", email = "f.mannhardt@tue.nl")
 	@PluginVariant(requiredParameterLabels = { 0, 1 }, variantLabel = "Export Dot as PNG")
 	public void exportAsPNG(PluginContext context, Dot dot, File file) throws IOException {
-		export(dot, file, new ExporterPNG());
+		export(dot, file, Type.png);
 	}
 }
\ No newline at end of file
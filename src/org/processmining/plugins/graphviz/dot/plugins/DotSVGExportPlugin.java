@@ -10,7 +10,7 @@ import org.processmining.framework.plugin.annotations.Plugin;
 import org.processmining.framework.plugin.annotations.PluginLevel;
 import org.processmining.framework.plugin.annotations.PluginVariant;
 import org.processmining.plugins.graphviz.dot.Dot;
-import org.processmining.plugins.graphviz.visualisation.export.ExporterSVG;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
 
 /**
  * Exports a Dot object
@@ -26,6 +26,6 @@ public final class DotSVGExportPlugin extends DotImageExportPlugin {
 	@UITopiaVariant(affiliation = UITopiaVariant.EHV, author = "F. Mannhardt", email = "f.mannhardt@tue.nl")
 	@PluginVariant(requiredParameterLabels = { 0, 1 }, variantLabel = "Export Dot as SVG")
 	public void exportAsSVG(PluginContext context, Dot dot, File file) throws IOException {
-		export(dot, file, new ExporterSVG());
+		export(dot, file, Type.svg);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,216 @@
+package org.processmining.plugins.graphviz.visualisation;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.processmining.plugins.graphviz.dot.DotElement;
+
+import com.kitfox.svg.SVGDiagram;
+import com.kitfox.svg.SVGElement;
+import com.kitfox.svg.ShapeElement;
+
+/**
+ * Spatial index to find the nodes and edges at a point of an image, without
+ * picking through the entire svg tree. The bounding boxes of the elements are
+ * stored in a uniform grid; only the elements of the grid cell of the point
+ * are tested against their exact shapes.
+ *
+ * The index is built for a fixed layout: it has to be rebuilt when the
+ * geometry of the image changes, but not when only styles change.
+ *
+ * @author sander
+ *
+ */
+public class DotElementIndex {
+
+	private static final int maximumCellsPerDimension = 512;
+
+	private final DotElement[] elements;
+	private final SVGElement[] svgElements;
+	private final Shape[][] shapes;
+
+	/**
+	 * Bounding boxes in image coordinates: minX, minY, maxX, maxY per element.
+	 */
+	private final float[] bounds;
+
+	private final double minX;
+	private final double minY;
+	private final double cellWidth;
+	private final double cellHeight;
+	private final int cellsX;
+	private final int cellsY;
+
+	/**
+	 * The elements of cell c are cellElements[cellStart[c] ..
+	 * cellStart[c+1]).
+	 */
+	private final int[] cellStart;
+	private final int[] cellElements;
+
+	/**
+	 *
+	 * @param image
+	 * @param id2element
+	 *            The elements to index, by the id of their svg element.
+	 */
+	public DotElementIndex(SVGDiagram image, Map<String, ? extends DotElement> id2element) {
+		List<DotElement> elementList = new ArrayList<>(id2element.size());
+		List<SVGElement> svgElementList = new ArrayList<>(id2element.size());
+		List<Rectangle2D> boundsList = new ArrayList<>(id2element.size());
+		for (Entry<String, ? extends DotElement> entry : id2element.entrySet()) {
+			SVGElement svgElement = image.getElement(entry.getKey());
+			if (svgElement == null) {
+				continue;
+			}
+			Rectangle2D box = NavigableSVGPanel.getBoundingBoxInImageCoordinates(svgElement);
+			if (box == null || box.isEmpty()) {
+				continue;
+			}
+			elementList.add(entry.getValue());
+			svgElementList.add(svgElement);
+			boundsList.add(box);
+		}
+
+		int n = elementList.size();
+		elements = elementList.toArray(new DotElement[n]);
+		svgElements = svgElementList.toArray(new SVGElement[n]);
+		shapes = new Shape[n][];
+		bounds = new float[n * 4];
+
+		//extent of the grid
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			Rectangle2D box = boundsList.get(i);
+			bounds[i * 4] = (float) box.getMinX();
+			bounds[i * 4 + 1] = (float) box.getMinY();
+			bounds[i * 4 + 2] = (float) box.getMaxX();
+			bounds[i * 4 + 3] = (float) box.getMaxY();
+			minX = Math.min(minX, box.getMinX());
+			minY = Math.min(minY, box.getMinY());
+			maxX = Math.max(maxX, box.getMaxX());
+			maxY = Math.max(maxY, box.getMaxY());
+		}
+		if (n == 0) {
+			minX = minY = 0;
+			maxX = maxY = 1;
+		}
+		double width = Math.max(maxX - minX, 1);
+		double height = Math.max(maxY - minY, 1);
+
+		//about one element per cell, with square-ish cells
+		cellsX = (int) Math.max(1, Math.min(maximumCellsPerDimension, Math.round(Math.sqrt(n * width / height))));
+		cellsY = (int) Math.max(1, Math.min(maximumCellsPerDimension, Math.round(Math.sqrt(n * height / width))));
+		this.minX = minX;
+		this.minY = minY;
+		cellWidth = width / cellsX;
+		cellHeight = height / cellsY;
+
+		//count the elements per cell, then fill the cells
+		cellStart = new int[cellsX * cellsY + 1];
+		for (int i = 0; i < n; i++) {
+			for (int y = cellY(bounds[i * 4 + 1]); y <= cellY(bounds[i * 4 + 3]); y++) {
+				for (int x = cellX(bounds[i * 4]); x <= cellX(bounds[i * 4 + 2]); x++) {
+					cellStart[y * cellsX + x + 1]++;
+				}
+			}
+		}
+		for (int c = 0; c < cellsX * cellsY; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		cellElements = new int[cellStart[cellsX * cellsY]];
+		int[] fill = new int[cellsX * cellsY];
+		for (int i = 0; i < n; i++) {
+			for (int y = cellY(bounds[i * 4 + 1]); y <= cellY(bounds[i * 4 + 3]); y++) {
+				for (int x = cellX(bounds[i * 4]); x <= cellX(bounds[i * 4 + 2]); x++) {
+					int c = y * cellsX + x;
+					cellElements[cellStart[c] + fill[c]] = i;
+					fill[c]++;
+				}
+			}
+		}
+	}
+
+	private int cellX(double x) {
+		return Math.max(0, Math.min(cellsX - 1, (int) ((x - minX) / cellWidth)));
+	}
+
+	private int cellY(double y) {
+		return Math.max(0, Math.min(cellsY - 1, (int) ((y - minY) / cellHeight)));
+	}
+
+	/**
+	 * Adds the elements whose shape contains the given point to result. Does
+	 * not allocate memory, except for the first query that hits an element.
+	 *
+	 * @param x
+	 *            in image coordinates
+	 * @param y
+	 *            in image coordinates
+	 * @param result
+	 */
+	public void getElementsAt(double x, double y, Collection<? super DotElement> result) {
+		if (x < minX || y < minY || x > minX + cellWidth * cellsX || y > minY + cellHeight * cellsY) {
+			return;
+		}
+		int c = cellY(y) * cellsX + cellX(x);
+		for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+			int i = cellElements[k];
+			if (x >= bounds[i * 4] && y >= bounds[i * 4 + 1] && x <= bounds[i * 4 + 2] && y <= bounds[i * 4 + 3]
+					&& contains(i, x, y)) {
+				result.add(elements[i]);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return whether one of the shapes of element i contains the point.
+	 */
+	private boolean contains(int i, double x, double y) {
+		if (shapes[i] == null) {
+			List<Shape> list = new ArrayList<>();
+			collectShapes(svgElements[i], list);
+			shapes[i] = list.toArray(new Shape[list.size()]);
+		}
+		for (Shape shape : shapes[i]) {
+			if (shape.contains(x, y)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the shapes of the element and its descendants, in image
+	 * coordinates.
+	 */
+	private static void collectShapes(SVGElement element, List<Shape> result) {
+		if (element instanceof ShapeElement) {
+			//the shape is in the coordinates of the parent
+			Shape shape = ((ShapeElement) element).getShape();
+			if (shape != null) {
+				AffineTransform transform = NavigableSVGPanel.getTransformElement2Image(element.getParent());
+				result.add(transform.createTransformedShape(shape));
+			}
+		}
+		for (int i = 0; i < element.getNumChildren(); i++) {
+			collectShapes(element.getChild(i), result);
+		}
+	}
+
+	/**
+	 *
+	 * @return The number of indexed elements.
+	 */
+	public int size() {
+		return elements.length;
+	}
+}
@@ -0,0 +1,393 @@
+package org.processmining.plugins.graphviz.visualisation;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.processmining.plugins.graphviz.dot.DotCluster;
+import org.processmining.plugins.graphviz.dot.DotElement;
+
+import com.kitfox.svg.A;
+import com.kitfox.svg.Group;
+import com.kitfox.svg.Path;
+import com.kitfox.svg.Polyline;
+import com.kitfox.svg.SVGElement;
+import com.kitfox.svg.SVGElementException;
+import com.kitfox.svg.ShapeElement;
+import com.kitfox.svg.Text;
+import com.kitfox.svg.animation.AnimationElement;
+import com.kitfox.svg.xml.ColorTable;
+
+/**
+ * The options of a node or edge that do not influence the layout, with the
+ * defaults it inherits from the graph and its clusters, together with a hash
+ * of the options that do influence the layout. Used by DotPanel.restyle() to
+ * patch the image of an element whose style changed.
+ *
+ * @author sander
+ *
+ */
+class DotElementStyle {
+
+	/**
+	 * Options that do not influence the layout; changes to these options can
+	 * be applied to the image directly.
+	 */
+	private static final String[] styleOptions = { "color", "fillcolor", "fontcolor", "style", "penwidth",
+			"tooltip" };
+	private static final int color = 0;
+	private static final int fillcolor = 1;
+	private static final int fontcolor = 2;
+	private static final int style = 3;
+	private static final int penwidth = 4;
+	private static final int tooltip = 5;
+
+	/**
+	 * Styles that do not influence the layout (other styles, e.g. rounded,
+	 * change the shape).
+	 */
+	private static final Set<String> styleValues = new HashSet<>(
+			Arrays.asList("", "filled", "solid", "dashed", "dotted", "bold", "invis"));
+
+	/**
+	 * The default options of a graph or cluster, and of the graphs it is
+	 * contained in.
+	 */
+	static class Defaults {
+		private final DotCluster cluster;
+		private final Defaults parent;
+
+		public Defaults(DotCluster cluster, Defaults parent) {
+			this.cluster = cluster;
+			this.parent = parent;
+		}
+	}
+
+	private final Defaults defaults;
+	private final boolean isEdge;
+	private final String[] values;
+	private final int layoutHash;
+
+	/**
+	 *
+	 * @param element
+	 * @param isEdge
+	 * @param defaults
+	 *            The defaults of the graph or cluster in which the element is
+	 *            declared, or null if it does not inherit defaults (clusters).
+	 */
+	public DotElementStyle(DotElement element, boolean isEdge, Defaults defaults) {
+		this.defaults = defaults;
+		this.isEdge = isEdge;
+
+		String[] values = null;
+		for (int i = 0; i < styleOptions.length; i++) {
+			String value = getOption(element, styleOptions[i], isEdge, defaults);
+			if (value != null) {
+				if (values == null) {
+					values = new String[styleOptions.length];
+				}
+				values[i] = value;
+			}
+		}
+		this.values = values;
+
+		int layoutHash = element.getLabel() == null ? 0 : element.getLabel().hashCode();
+		for (String key : element.getOptionKeySet()) {
+			if (!isStyleOption(key)) {
+				String value = element.getOption(key);
+				layoutHash += key.hashCode() ^ (value == null ? 0 : value.hashCode());
+			}
+		}
+		Set<String> layoutStyles = new TreeSet<>(getStyles());
+		layoutStyles.removeAll(styleValues);
+		this.layoutHash = layoutHash * 31 + layoutStyles.hashCode();
+	}
+
+	/**
+	 *
+	 * @param element
+	 * @return The style of the element with its current options, inheriting
+	 *         from the same graphs as this style.
+	 */
+	public DotElementStyle update(DotElement element) {
+		return new DotElementStyle(element, isEdge, defaults);
+	}
+
+	/**
+	 *
+	 * @param newStyle
+	 * @return Whether the image of this style can be patched to show the new
+	 *         style, i.e. whether only options changed that do not influence
+	 *         the layout. Changes of the inherited defaults of layout options
+	 *         are not detected.
+	 */
+	public boolean isRestylableTo(DotElementStyle newStyle) {
+		return layoutHash == newStyle.layoutHash;
+	}
+
+	private static boolean isStyleOption(String key) {
+		for (String option : styleOptions) {
+			if (option.equals(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String getOption(DotElement element, String key, boolean isEdge, Defaults defaults) {
+		String value = element.getOption(key);
+		for (Defaults d = defaults; value == null && d != null; d = d.parent) {
+			value = isEdge ? d.cluster.getEdgeOption(key) : d.cluster.getNodeOption(key);
+		}
+		return value;
+	}
+
+	private String get(int option) {
+		return values == null ? null : values[option];
+	}
+
+	private Set<String> getStyles() {
+		Set<String> result = new HashSet<>();
+		if (get(style) != null) {
+			for (String part : get(style).split(",")) {
+				result.add(part.trim());
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * The svg values in the way Graphviz draws the options.
+	 */
+
+	private String getStroke() {
+		return firstColour(get(color), "black");
+	}
+
+	private String getFill() {
+		if (isEdge) {
+			//arrowheads are filled with the colour of the edge
+			return getStroke();
+		}
+		if (!getStyles().contains("filled")) {
+			return "none";
+		}
+		return firstColour(get(fillcolor), get(color) != null ? getStroke() : "lightgrey");
+	}
+
+	private String getFontColour() {
+		return firstColour(get(fontcolor), "black");
+	}
+
+	private String getStrokeWidth() {
+		if (getStyles().contains("bold")) {
+			return "2";
+		}
+		return get(penwidth) != null ? get(penwidth) : "1";
+	}
+
+	private String getDashArray() {
+		Set<String> styles = getStyles();
+		if (styles.contains("dashed")) {
+			return "5,2";
+		} else if (styles.contains("dotted")) {
+			return "1,5";
+		}
+		return null;
+	}
+
+	private boolean isInvisible() {
+		return getStyles().contains("invis");
+	}
+
+	/**
+	 * Patches the svg group of the element, which shows oldStyle, to show
+	 * this style. Only the attributes whose options changed are changed, and
+	 * only on the shapes that Graphviz drew for them: the outline of a node
+	 * (and, when filled, its innermost periphery), the splines and arrowheads
+	 * of an edge, and the texts in the font colour. Other shapes, such as the
+	 * cells of html labels, are left alone. The caller must hold the lock of
+	 * the image.
+	 *
+	 * @param group
+	 * @param oldStyle
+	 */
+	public void applyTo(Group group, DotElementStyle oldStyle) {
+		if (isInvisible() != oldStyle.isInvisible()) {
+			DotPanel.setCSSAttributeOf(group, "visibility", isInvisible() ? "hidden" : null);
+		}
+
+		List<SVGElement> content = new ArrayList<>();
+		getContent(group, content);
+
+		//find the shapes that show the options
+		List<ShapeElement> outline = new ArrayList<>();
+		List<ShapeElement> arrowheads = new ArrayList<>();
+		if (isEdge) {
+			String splineStroke = null;
+			for (SVGElement element : content) {
+				if (element instanceof Path) {
+					outline.add((ShapeElement) element);
+					if (splineStroke == null) {
+						splineStroke = getValue(element, "stroke", "black");
+					}
+				}
+			}
+			for (SVGElement element : content) {
+				if (isShape(element) && !(element instanceof Path)
+						&& getValue(element, "stroke", "black").equals(splineStroke)) {
+					arrowheads.add((ShapeElement) element);
+				}
+			}
+		} else {
+			//the outline and its peripheries come first and are drawn with the same pen
+			String outlineStroke = null;
+			for (SVGElement element : content) {
+				if (!isShape(element)) {
+					if (element instanceof Text || (element instanceof Group && !(element instanceof A))
+							|| !outline.isEmpty()) {
+						break;
+					}
+					//the title or an anchor
+					continue;
+				}
+				String stroke = getValue(element, "stroke", "black");
+				if (outlineStroke == null) {
+					outlineStroke = stroke;
+				} else if (!stroke.equals(outlineStroke) || !(getValue(element, "fill", "black").equals("none")
+						|| getValue(element, "fill", "black").equals(getValue(outline.get(0), "fill", "black")))) {
+					break;
+				}
+				outline.add((ShapeElement) element);
+			}
+		}
+
+		if (!getStroke().equals(oldStyle.getStroke())) {
+			setStroke(outline, "stroke", getStroke());
+			setStroke(arrowheads, "stroke", getStroke());
+		}
+		if (!getStrokeWidth().equals(oldStyle.getStrokeWidth())) {
+			setStroke(outline, "stroke-width", getStrokeWidth());
+			setStroke(arrowheads, "stroke-width", getStrokeWidth());
+		}
+		if (!equals(getDashArray(), oldStyle.getDashArray())) {
+			//Graphviz draws arrowheads solid
+			setStroke(outline, "stroke-dasharray", getDashArray());
+		}
+		if (!getFill().equals(oldStyle.getFill())) {
+			if (isEdge) {
+				for (ShapeElement arrowhead : arrowheads) {
+					//open arrowheads are not filled
+					if (!getValue(arrowhead, "fill", "black").equals("none")) {
+						DotPanel.setCSSAttributeOf(arrowhead, "fill", getFill());
+					}
+				}
+			} else if (!outline.isEmpty() && !(outline.get(0) instanceof Polyline)) {
+				//only the innermost periphery is filled
+				DotPanel.setCSSAttributeOf(outline.get(0), "fill", getFill());
+			}
+		}
+		if (!getFontColour().equals(oldStyle.getFontColour())) {
+			for (SVGElement element : content) {
+				//texts in another colour, e.g. in html labels, keep it
+				if (element instanceof Text
+						&& isSameColour(getValue(element, "fill", "black"), oldStyle.getFontColour())) {
+					DotPanel.setCSSAttributeOf(element, "fill", getFontColour());
+				}
+			}
+		}
+		if (!equals(get(tooltip), oldStyle.get(tooltip)) && get(tooltip) != null) {
+			for (SVGElement element : content) {
+				if (element instanceof A) {
+					try {
+						if (element.hasAttribute("xlink:title", AnimationElement.AT_XML)) {
+							element.setAttribute("xlink:title", AnimationElement.AT_XML, get(tooltip));
+						}
+					} catch (SVGElementException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param element
+	 * @return whether the element is a basic shape (kitfox treats groups and
+	 *         anchors as shapes as well).
+	 */
+	private static boolean isShape(SVGElement element) {
+		return element instanceof ShapeElement && !(element instanceof Group);
+	}
+
+	/**
+	 * Sets a stroke attribute on the shapes, except on shapes that are drawn
+	 * without stroke (e.g. the transparent outline of plaintext nodes).
+	 */
+	private static void setStroke(List<ShapeElement> shapes, String attribute, String value) {
+		for (ShapeElement shape : shapes) {
+			String stroke = getValue(shape, "stroke", "black");
+			if (!stroke.equals("none") && !stroke.equals("transparent")) {
+				DotPanel.setCSSAttributeOf(shape, attribute, value);
+			}
+		}
+	}
+
+	/**
+	 * Adds the children of the group to the result; the anchors that Graphviz
+	 * wraps around the content of elements with a tooltip or url are
+	 * flattened.
+	 */
+	private static void getContent(SVGElement group, List<SVGElement> result) {
+		for (int i = 0; i < group.getNumChildren(); i++) {
+			SVGElement child = group.getChild(i);
+			if (child instanceof A || (child instanceof Group && child.getId() != null
+					&& child.getId().startsWith("a_"))) {
+				if (child instanceof A) {
+					result.add(child);
+				}
+				getContent(child, result);
+			} else {
+				result.add(child);
+			}
+		}
+	}
+
+	private static String getValue(SVGElement element, String attribute, String defaultValue) {
+		String value = DotPanel.getAttributeOf(element, attribute);
+		return value == null ? defaultValue : value;
+	}
+
+	private static boolean isSameColour(String a, String b) {
+		if (a.equalsIgnoreCase(b)) {
+			return true;
+		}
+		Color colourA = ColorTable.parseColor(a);
+		return colourA != null && colourA.equals(ColorTable.parseColor(b));
+	}
+
+	private static boolean equals(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 *
+	 * @param colour
+	 *            a Graphviz colour or colour list
+	 * @param defaultColour
+	 * @return the first colour of the list, or the default.
+	 */
+	private static String firstColour(String colour, String defaultColour) {
+		if (colour == null || colour.isEmpty()) {
+			return defaultColour;
+		}
+		int separator = colour.indexOf(':');
+		return separator < 0 ? colour : colour.substring(0, separator);
+	}
+}
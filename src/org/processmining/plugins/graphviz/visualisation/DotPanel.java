@@ -8,16 +8,27 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -28,12 +39,19 @@ import org.processmining.plugins.graphviz.colourMaps.ColourMap;
 import org.processmining.plugins.graphviz.dot.Dot;
 import org.processmining.plugins.graphviz.dot.Dot.GraphDirection;
 import org.processmining.plugins.graphviz.dot.Dot2Image;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Engine;
 import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+import org.processmining.plugins.graphviz.dot.Dot2ImageCache;
+import org.processmining.plugins.graphviz.dot.DotCluster;
 import org.processmining.plugins.graphviz.dot.DotEdge;
 import org.processmining.plugins.graphviz.dot.DotElement;
 import org.processmining.plugins.graphviz.dot.DotNode;
+import org.processmining.plugins.graphviz.dot.GraphvizMetrics;
+import org.processmining.plugins.graphviz.dot.GraphvizMetrics.Stage;
+import org.processmining.plugins.graphviz.dot.HierarchicalLayout;
 import org.processmining.plugins.graphviz.visualisation.export.Exporter;
 import org.processmining.plugins.graphviz.visualisation.export.ExporterDot;
+import org.processmining.plugins.graphviz.visualisation.export.ExporterGraphviz;
 import org.processmining.plugins.graphviz.visualisation.listeners.DotElementSelectionListener;
 import org.processmining.plugins.graphviz.visualisation.listeners.GraphChangedListener;
 import org.processmining.plugins.graphviz.visualisation.listeners.GraphChangedListener.GraphChangedReason;
@@ -41,7 +59,6 @@ import org.processmining.plugins.graphviz.visualisation.listeners.MouseInElement
 import org.processmining.plugins.graphviz.visualisation.listeners.SelectionChangedListener;
 
 import com.kitfox.svg.Group;
-import com.kitfox.svg.RenderableElement;
 import com.kitfox.svg.SVGDiagram;
 import com.kitfox.svg.SVGElement;
 import com.kitfox.svg.SVGElementException;
@@ -80,7 +97,7 @@ public class DotPanel extends NavigableSVGPanel {
 					break;
 			}
 			userSettings.setDirection(newDirection);
-			changeDot(dot, true);
+			changeDotAsync(dot, true);
 			graphChanged(GraphChangedReason.graphDirectionChanged, newDirection);
 		}
 	};
@@ -90,7 +107,7 @@ public class DotPanel extends NavigableSVGPanel {
 
 		public void actionPerformed(ActionEvent e) {
 			userSettings.nodeSeparation = Math.min(userSettings.nodeSeparation + .05, 4);
-			changeDot(dot, true);
+			changeDotAsync(dot, true);
 			graphChanged(GraphChangedReason.nodeSeparationChanged, userSettings.nodeSeparation);
 		}
 	};
@@ -100,14 +117,32 @@ public class DotPanel extends NavigableSVGPanel {
 
 		public void actionPerformed(ActionEvent e) {
 			userSettings.nodeSeparation = Math.max(userSettings.nodeSeparation - 0.05, 0.02);
-			changeDot(dot, true);
+			changeDotAsync(dot, true);
 			graphChanged(GraphChangedReason.nodeSeparationChanged, userSettings.nodeSeparation);
 		}
 	};
 
+	private static final ExecutorService layoutExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "DotPanel layout " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
 	private Dot dot;
+	private volatile LayoutJob currentLayout = null;
+	private volatile boolean hierarchicalLayout = false;
+	private final HierarchicalLayout hierarchicalLayouter = new HierarchicalLayout();
+	private volatile boolean layoutPreview = false;
 	private final DotPanelUserSettings userSettings;
 	private HashMap<String, DotElement> id2element;
+	private DotElementIndex elementIndex;
+	private HashMap<DotElement, DotElementStyle> laidOutStyles;
+	private final Point2D.Double hoverPoint = new Point2D.Double();
+	private final ArrayList<DotElement> hoverElements = new ArrayList<>();
 	private Set<DotElement> selectedElements;
 	private Set<DotElement> mouseInElements;
 	private final CopyOnWriteArrayList<SelectionChangedListener<DotElement>> selectionChangedListeners = new CopyOnWriteArrayList<>();
@@ -117,7 +152,7 @@ public class DotPanel extends NavigableSVGPanel {
 	public DotPanel(Dot dot) {
 		super(dot2svg(dot));
 		this.dot = dot;
-		prepareNodeSelection(dot);
+		prepareNodeSelection(dot, image);
 		mouseInElements = new HashSet<>();
 		userSettings = new DotPanelUserSettings(dot);
 
@@ -217,22 +252,32 @@ public class DotPanel extends NavigableSVGPanel {
 			changed = exitAllElements(e);
 		} else {
 			//process the mouseEnter and Exit of the dot elements
-			Set<DotElement> newElements = getElementsAtPoint(e.getPoint());
-			//exit
-			for (DotElement element : mouseInElements) {
-				if (!newElements.contains(element)) {
-					element.mouseExited(e);
-					changed = true;
-				}
+			hoverElements.clear();
+			getElementsAtPoint(e.getPoint(), hoverElements);
+
+			//only if the elements changed, a new set is made (hovering within an element does not allocate)
+			boolean same = hoverElements.size() == mouseInElements.size();
+			for (int i = 0; same && i < hoverElements.size(); i++) {
+				same = mouseInElements.contains(hoverElements.get(i));
 			}
-			//enter
-			for (DotElement element : newElements) {
-				if (!mouseInElements.contains(element)) {
-					element.mouseEntered(e);
-					changed = true;
+			if (!same) {
+				Set<DotElement> newElements = new HashSet<>(hoverElements);
+				//exit
+				for (DotElement element : mouseInElements) {
+					if (!newElements.contains(element)) {
+						element.mouseExited(e);
+						changed = true;
+					}
+				}
+				//enter
+				for (DotElement element : newElements) {
+					if (!mouseInElements.contains(element)) {
+						element.mouseEntered(e);
+						changed = true;
+					}
 				}
+				mouseInElements = newElements;
 			}
-			mouseInElements = newElements;
 
 			if (changed) {
 				mouseInElementsChanged();
@@ -255,6 +300,9 @@ public class DotPanel extends NavigableSVGPanel {
 	@Override
 	public List<Exporter> getExporters() {
 		List<Exporter> exporters = super.getExporters();
+		exporters.add(new ExporterGraphviz(Type.pdf));
+		exporters.add(new ExporterGraphviz(Type.png));
+		exporters.add(new ExporterGraphviz(Type.svg));
 		exporters.add(new ExporterDot());
 		return exporters;
 	}
@@ -339,47 +387,34 @@ public class DotPanel extends NavigableSVGPanel {
 		return false;
 	}
 
-	@SuppressWarnings("unchecked")
 	private Set<DotElement> getElementsAtPoint(Point pointUserCoordinates) {
 		HashSet<DotElement> result = new HashSet<DotElement>();
-		if (isInImage(pointUserCoordinates)) {
-			Point2D pointImageCoordinates = transformUser2Image(pointUserCoordinates);
-			try {
-				//get the elements at the clicked position
-				List<List<RenderableElement>> elements = image.pick(pointImageCoordinates, false, null);
-
-				StyleAttribute classAttribute = new StyleAttribute("class");
-				StyleAttribute idAttribute = new StyleAttribute("id");
-				for (List<RenderableElement> path : elements) {
-					for (RenderableElement element : path) {
-						//RenderableElement element = path.iterator().next();
-						if (element instanceof Group) {
-							Group group = (Group) element;
-
-							//get the class
-							group.getPres(classAttribute);
-
-							//get the id
-							group.getPres(idAttribute);
-							String id = idAttribute.getStringValue();
-
-							if (classAttribute.getStringValue().equals("node")
-									|| classAttribute.getStringValue().equals("edge")) {
-								//we have found a node or edge
-								DotElement dotElement = id2element.get(id);
-								if (dotElement != null) {
-									result.add(dotElement);
-								}
-							}
-						}
-					}
-				}
+		getElementsAtPoint(pointUserCoordinates, result);
+		return result;
+	}
 
-			} catch (SVGException e1) {
-				e1.printStackTrace();
-			}
+	/**
+	 * Adds the nodes and edges at the given point to result, using the
+	 * spatial index of the current image.
+	 * 
+	 * @param pointUserCoordinates
+	 * @param result
+	 */
+	public void getElementsAtPoint(Point pointUserCoordinates, Collection<DotElement> result) {
+		if (elementIndex == null || isInNavigation(pointUserCoordinates)) {
+			return;
+		}
+		boolean measure = GraphvizMetrics.isEnabled();
+		long start = measure ? System.nanoTime() : 0;
+		int before = result.size();
+
+		hoverPoint.setLocation(pointUserCoordinates.x, pointUserCoordinates.y);
+		Point2D pointImageCoordinates = transformUser2Image(hoverPoint, hoverPoint);
+		elementIndex.getElementsAt(pointImageCoordinates.getX(), pointImageCoordinates.getY(), result);
+
+		if (measure) {
+			GraphvizMetrics.measured(Stage.pick, System.nanoTime() - start, result.size() - before);
 		}
-		return result;
 	}
 
 	private boolean exitAllElements(MouseEvent e) {
@@ -404,10 +439,106 @@ public class DotPanel extends NavigableSVGPanel {
 	 */
 	public void changeDot(Dot dot, boolean resetView) {
 		userSettings.applyToDot(dot);
-		SVGDiagram diagram = dot2svg(dot);
+		SVGDiagram diagram;
+		if (hierarchicalLayout && HierarchicalLayout.applies(dot)) {
+			byte[] svg = hierarchicalLayouter.dot2svg(dot);
+			diagram = svg == null ? null : svg2diagram(new ByteArrayInputStream(svg), dot);
+		} else {
+			diagram = dot2svg(dot);
+		}
 		changeDot(dot, diagram, resetView);
 	}
 
+	/**
+	 * Sets a new image, but performs the layout and the parsing of the image
+	 * in the background. Until the new image is ready, the current image
+	 * remains visible. If another change is requested before the layout
+	 * finishes, the layout is aborted. Must be called from the event
+	 * dispatch thread.
+	 * 
+	 * @param dot
+	 *            ; set dot to this
+	 * @param resetView
+	 *            ; whether reset the view to centered+fitting
+	 * @return a future that completes with the new image once it is shown,
+	 *         or is cancelled if the change was superseded.
+	 */
+	public CompletableFuture<SVGDiagram> changeDotAsync(Dot dot, boolean resetView) {
+		cancelLayout();
+		userSettings.applyToDot(dot);
+		LayoutJob job = new LayoutJob(dot, resetView);
+		currentLayout = job;
+		layoutExecutor.execute(job);
+		return job.result;
+	}
+
+	/**
+	 * 
+	 * @return whether changes of the dot are laid out cluster by cluster (see
+	 *         HierarchicalLayout).
+	 */
+	public boolean isHierarchicalLayout() {
+		return hierarchicalLayout;
+	}
+
+	/**
+	 * Sets whether changes of the dot are laid out cluster by cluster, such
+	 * that only changed clusters are laid out again (see HierarchicalLayout).
+	 * This is faster for large graphs with many clusters, but the layout is
+	 * an approximation. Off by default; applies from the next change.
+	 * 
+	 * @param hierarchicalLayout
+	 */
+	public void setHierarchicalLayout(boolean hierarchicalLayout) {
+		this.hierarchicalLayout = hierarchicalLayout;
+	}
+
+	/**
+	 * 
+	 * @return The layouter used for hierarchical layouts of this panel, which
+	 *         keeps statistics of the clusters that were laid out and reused.
+	 */
+	public HierarchicalLayout getHierarchicalLayouter() {
+		return hierarchicalLayouter;
+	}
+
+	/**
+	 * 
+	 * @return whether changeDotAsync shows the new layout while it is being
+	 *         read.
+	 */
+	public boolean isLayoutPreview() {
+		return layoutPreview;
+	}
+
+	/**
+	 * Sets whether changeDotAsync shows the output of dot while it is being
+	 * read, as a lean scene (see SVGScene), before the diagram has been
+	 * parsed. The preview is not interactive. As the output is parsed twice
+	 * then, this only pays off for large graphs; off by default.
+	 * 
+	 * @param layoutPreview
+	 */
+	public void setLayoutPreview(boolean layoutPreview) {
+		this.layoutPreview = layoutPreview;
+	}
+
+	/**
+	 * 
+	 * @return whether a layout started by changeDotAsync is in progress.
+	 */
+	public boolean isLayoutInProgress() {
+		return currentLayout != null;
+	}
+
+	private void cancelLayout() {
+		LayoutJob job = currentLayout;
+		currentLayout = null;
+		if (job != null) {
+			job.cancel();
+		}
+	}
+
 	/**
 	 * Sets a new precomputed image. Assumptions are made about the dot & the
 	 * diagram, so do not provide arbitrary ones.
@@ -420,12 +551,35 @@ public class DotPanel extends NavigableSVGPanel {
 	 *            ; whether reset the view to centered+fitting
 	 */
 	public void changeDot(Dot dot, SVGDiagram diagram, boolean resetView) {
-		prepareNodeSelection(dot);
+		cancelLayout();
+		prepareNodeSelection(dot, diagram);
 		this.dot = dot;
+		SVGDiagram previous = image;
 		setImage(diagram, resetView);
+		release(previous, diagram);
 	}
 
-	private void prepareNodeSelection(Dot dot) {
+	/**
+	 * Removes the previous diagram from its universe, such that the universe
+	 * does not keep it alive. This happens after the renderings of the
+	 * previous diagram that are still queued, as references within a diagram
+	 * (e.g. gradients) are resolved through its universe. Hence, a diagram
+	 * cannot be shown again once the panel has moved on to another diagram.
+	 */
+	private static void release(final SVGDiagram previous, SVGDiagram next) {
+		if (previous == null || previous == next || previous.getUniverse() == null) {
+			return;
+		}
+		SVGRenderQueue.execute(getLock(previous), new Runnable() {
+			public void run() {
+				synchronized (getLock(previous)) {
+					previous.getUniverse().removeDocument(previous.getXMLBase());
+				}
+			}
+		});
+	}
+
+	private void prepareNodeSelection(Dot dot, SVGDiagram diagram) {
 		selectedElements = new HashSet<DotElement>();
 
 		id2element = new HashMap<String, DotElement>();
@@ -435,21 +589,84 @@ public class DotPanel extends NavigableSVGPanel {
 		for (DotEdge dotEdge : dot.getEdgesRecursive()) {
 			id2element.put(dotEdge.getId(), dotEdge);
 		}
+		elementIndex = new DotElementIndex(diagram, id2element);
+
+		laidOutStyles = new HashMap<>();
+		putStyles(dot, null);
+	}
+
+	private void putStyles(DotCluster cluster, DotElementStyle.Defaults parent) {
+		DotElementStyle.Defaults defaults = new DotElementStyle.Defaults(cluster, parent);
+		for (DotNode node : cluster.getNodes()) {
+			laidOutStyles.put(node, new DotElementStyle(node, false, defaults));
+		}
+		for (DotEdge edge : cluster.getEdges()) {
+			laidOutStyles.put(edge, new DotElementStyle(edge, true, defaults));
+		}
+		for (DotCluster child : cluster.getClusters()) {
+			laidOutStyles.put(child, new DotElementStyle(child, false, null));
+			putStyles(child, defaults);
+		}
+	}
+
+	/**
+	 * Shows changes to the options of the given elements. If only options that
+	 * do not influence the layout changed (color, fillcolor, fontcolor, style,
+	 * penwidth, tooltip), the current image is patched. Otherwise, the dot is
+	 * laid out again in the background (see changeDotAsync). Must be called
+	 * from the event dispatch thread.
+	 * 
+	 * @param elements
+	 *            the elements of the current dot whose options changed
+	 * @return whether the changes were applied to the image without a new
+	 *         layout.
+	 */
+	public boolean restyle(Collection<? extends DotElement> elements) {
+		Map<DotElement, DotElementStyle> changed = new HashMap<>();
+		for (DotElement element : elements) {
+			DotElementStyle oldStyle = laidOutStyles.get(element);
+			DotElementStyle newStyle = oldStyle == null ? null : oldStyle.update(element);
+			if (newStyle == null || !oldStyle.isRestylableTo(newStyle)) {
+				changeDotAsync(dot, false);
+				return false;
+			}
+			changed.put(element, newStyle);
+		}
+
+		synchronized (getLock(image)) {
+			for (Map.Entry<DotElement, DotElementStyle> entry : changed.entrySet()) {
+				Group group = getSVGElementOf(image, entry.getKey());
+				if (group != null) {
+					entry.getValue().applyTo(group, laidOutStyles.get(entry.getKey()));
+				}
+				laidOutStyles.put(entry.getKey(), entry.getValue());
+			}
+		}
+		repaint();
+		return true;
 	}
 
 	/*
-	 * convert Dot into svg
+	 * convert Dot into svg; layouts of identical dots are taken from the cache
 	 */
 	public static SVGDiagram dot2svg(Dot dot) {
+		InputStream stream = Dot2ImageCache.getDefault().dot2imageInputStream(dot, Type.svg);
+		return svg2diagram(stream, dot);
+	}
+
+	private static SVGDiagram svg2diagram(InputStream stream, Dot dot) {
 		SVGUniverse universe = new SVGUniverse();
 
-		InputStream stream = Dot2Image.dot2imageInputStream(dot, Type.svg);
+		long start = System.nanoTime();
 		URI uri;
 		try {
 			uri = universe.loadSVG(stream, "hoi");
 		} catch (IOException e) {
 			return null;
 		}
+		if (GraphvizMetrics.isEnabled()) {
+			GraphvizMetrics.measured(Stage.svgParse, System.nanoTime() - start, 0);
+		}
 
 		SVGDiagram diagram = universe.getDiagram(uri);
 
@@ -533,21 +750,25 @@ public class DotPanel extends NavigableSVGPanel {
 	 */
 	public static String setCSSAttributeOf(SVGElement element, String attribute, String value) {
 		try {
-			if (element.hasAttribute(attribute, AnimationElement.AT_CSS)) {
-				StyleAttribute sty = new StyleAttribute(attribute);
-				element.getStyle(sty);
-				String oldValue = sty.getStringValue();
-				if (value != null) {
-					element.setAttribute(attribute, AnimationElement.AT_CSS, value);
-				} else {
-					element.removeAttribute(attribute, AnimationElement.AT_CSS);
-				}
-				return oldValue;
-			} else {
-				if (value != null) {
+			String oldValue = null;
+			synchronized (NavigableSVGPanel.getLock(element)) {
+				if (element.hasAttribute(attribute, AnimationElement.AT_CSS)) {
+					StyleAttribute sty = new StyleAttribute(attribute);
+					element.getStyle(sty);
+					oldValue = sty.getStringValue();
+					if (value != null) {
+						element.setAttribute(attribute, AnimationElement.AT_CSS, value);
+					} else {
+						element.removeAttribute(attribute, AnimationElement.AT_CSS);
+					}
+				} else if (value != null) {
 					element.addAttribute(attribute, AnimationElement.AT_CSS, value);
+				} else {
+					return null;
 				}
 			}
+			NavigableSVGPanel.elementChanged(element);
+			return oldValue;
 		} catch (SVGElementException e) {
 			e.printStackTrace();
 		} catch (SVGException e) {
@@ -625,4 +846,172 @@ public class DotPanel extends NavigableSVGPanel {
 		userSettings.setDirection(direction);
 		changeDot(dot, true);
 	}
+
+	/**
+	 * Performs the layout of a dot and the parsing of the resulting image in
+	 * the background, and shows the result if it was not superseded.
+	 */
+	private class LayoutJob implements Runnable, HierarchicalLayout.Cancellation {
+		private final Dot dot;
+		private final boolean resetView;
+		private final CompletableFuture<SVGDiagram> result = new CompletableFuture<>();
+		private boolean cancelled = false;
+		private Process process = null;
+
+		public LayoutJob(Dot dot, boolean resetView) {
+			this.dot = dot;
+			this.resetView = resetView;
+		}
+
+		public synchronized void cancel() {
+			cancelled = true;
+			if (process != null) {
+				process.destroy();
+			}
+			result.cancel(false);
+		}
+
+		public synchronized boolean isCancelled() {
+			return cancelled;
+		}
+
+		public synchronized boolean setProcess(Process process) {
+			if (cancelled) {
+				process.destroy();
+				return false;
+			}
+			this.process = process;
+			return true;
+		}
+
+		public void run() {
+			SVGDiagram diagram = null;
+			try {
+				diagram = layout();
+				if (diagram == null && !isCancelled()) {
+					result.completeExceptionally(new IOException("Graphviz-dot could not be run."));
+				}
+			} catch (Throwable e) {
+				if (!isCancelled()) {
+					e.printStackTrace();
+					result.completeExceptionally(e);
+				}
+			}
+
+			final SVGDiagram newDiagram = diagram;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					if (currentLayout != LayoutJob.this) {
+						//superseded
+						return;
+					}
+					currentLayout = null;
+					if (newDiagram != null && !isCancelled()) {
+						changeDot(dot, newDiagram, resetView);
+						result.complete(newDiagram);
+					} else {
+						setPreview(null);
+					}
+				}
+			});
+		}
+
+		private SVGDiagram layout() throws IOException {
+			Dot2ImageCache cache = Dot2ImageCache.getDefault();
+			if (hierarchicalLayout && HierarchicalLayout.applies(dot)) {
+				//the clusters are laid out one by one; cancel() stops between clusters and destroys the running dot
+				byte[] svg = hierarchicalLayouter.dot2svg(dot, this);
+				if (svg == null || isCancelled()) {
+					return null;
+				}
+				return svg2diagram(new ByteArrayInputStream(svg), dot);
+			}
+			Engine engine = Dot2Image.getEngine(dot);
+			//serialise once, for both the key and dot
+			byte[] text = Dot2ImageCache.getText(dot);
+			String key = Dot2ImageCache.getKey(text, Type.svg, engine);
+			byte[] svg = cache.get(key);
+			if (svg == null) {
+				long start = System.nanoTime();
+				Process dotProcess = Dot2Image.startDotProcess(Type.svg, engine);
+				if (dotProcess == null || !setProcess(dotProcess)) {
+					return null;
+				}
+				try {
+					Dot2Image.writeDot(text, dotProcess);
+					svg = readSvg(Dot2Image.getOutput(dotProcess, start));
+				} catch (IOException e) {
+					if (isCancelled()) {
+						//the process was destroyed
+						return null;
+					}
+					throw e;
+				}
+				if (isCancelled()) {
+					return null;
+				}
+				cache.put(key, svg);
+			}
+			return svg2diagram(new ByteArrayInputStream(svg), dot);
+		}
+
+		/**
+		 * Reads the output of dot. If previews are enabled, the output is
+		 * loaded into a scene while it is being read, and the scene is shown
+		 * until the diagram is ready.
+		 */
+		private byte[] readSvg(InputStream stdout) throws IOException {
+			if (!layoutPreview) {
+				return toByteArray(stdout);
+			}
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			//keep a copy of everything the loader reads
+			InputStream input = new FilterInputStream(stdout) {
+				public int read() throws IOException {
+					int result = in.read();
+					if (result >= 0) {
+						buffer.write(result);
+					}
+					return result;
+				}
+
+				public int read(byte[] b, int off, int len) throws IOException {
+					int result = in.read(b, off, len);
+					if (result > 0) {
+						buffer.write(b, off, result);
+					}
+					return result;
+				}
+			};
+			final SVGScene scene = new SVGScene();
+			try {
+				new SVGSceneLoader(scene, new Runnable() {
+					public void run() {
+						if (currentLayout == LayoutJob.this && !isCancelled() && scene.getNumberOfGroups() > 0) {
+							setPreview(scene);
+						}
+					}
+				}).load(input);
+			} catch (IOException e) {
+				if (isCancelled()) {
+					throw e;
+				}
+				//no preview; the diagram is parsed regardless
+				e.printStackTrace();
+			}
+			//read the remainder, which is copied into the buffer as well
+			toByteArray(input);
+			return buffer.toByteArray();
+		}
+	}
+
+	private static byte[] toByteArray(InputStream input) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[64 * 1024];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			result.write(buffer, 0, read);
+		}
+		return result.toByteArray();
+	}
 }
@@ -0,0 +1,252 @@
+package org.processmining.plugins.graphviz.visualisation;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
+
+import javax.swing.Timer;
+
+/**
+ * Coalesces the frames requested by the mouse handlers of a
+ * NavigableSVGPanel: requests that arrive faster than the maximum frame rate
+ * are combined into one frame per tick. In a frame, the latest mouse move is
+ * processed (hover updates), the transformation listener is notified, an
+ * animation frame is rendered and the panel is repainted, each only if it was
+ * requested since the previous frame.
+ *
+ * Also keeps statistics of the frames and of the time it took to paint them.
+ *
+ * Apart from the statistics getters, all methods must be called on the event
+ * dispatch thread.
+ *
+ * @author sander
+ *
+ */
+public class FrameScheduler {
+
+	public static final int defaultMaximumFramesPerSecond = 60;
+
+	private final NavigableSVGPanel panel;
+	private final Timer timer;
+	private int maximumFramesPerSecond = defaultMaximumFramesPerSecond;
+
+	private boolean inFrame = false;
+	private long lastFrame = 0;
+	private MouseEvent mouseMove = null;
+	private boolean transformationChanged = false;
+	private boolean animationFrame = false;
+	private boolean repaint = false;
+
+	//statistics
+	private volatile long requests = 0;
+	private volatile long frames = 0;
+	private volatile long paints = 0;
+	private volatile long totalPaintTime = 0;
+	private volatile long maximumPaintTime = 0;
+	private volatile long lastPaintTime = 0;
+
+	public FrameScheduler(NavigableSVGPanel panel) {
+		this.panel = panel;
+		timer = new Timer(0, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				frame();
+			}
+		});
+		timer.setRepeats(false);
+	}
+
+	/**
+	 * Requests the panel to be repainted in the next frame.
+	 */
+	public void requestRepaint() {
+		repaint = true;
+		schedule();
+	}
+
+	/**
+	 * Requests the transformation listener to be notified and the panel to be
+	 * repainted in the next frame.
+	 */
+	public void requestTransformationChanged() {
+		transformationChanged = true;
+		schedule();
+	}
+
+	/**
+	 * Requests renderOneFrame() of the panel to be called in the next frame.
+	 */
+	public void requestAnimationFrame() {
+		animationFrame = true;
+		schedule();
+	}
+
+	/**
+	 * Requests the mouse move to be processed in the next frame. A later move
+	 * replaces it.
+	 *
+	 * @param e
+	 */
+	public void requestMouseMove(MouseEvent e) {
+		mouseMove = e;
+		schedule();
+	}
+
+	/**
+	 * Processes a requested mouse move now. Call before processing other mouse
+	 * events, such that they see the hover state of the latest move.
+	 */
+	public void flushMouseMove() {
+		MouseEvent e = mouseMove;
+		if (e != null) {
+			mouseMove = null;
+			panel.processMouseMove(e);
+		}
+	}
+
+	/**
+	 * Forgets a requested mouse move, e.g. when the mouse left the panel.
+	 */
+	public void discardMouseMove() {
+		mouseMove = null;
+	}
+
+	private void schedule() {
+		requests++;
+		if (inFrame) {
+			//will be handled by the current frame
+			return;
+		}
+		if (maximumFramesPerSecond <= 0) {
+			frame();
+			return;
+		}
+		if (timer.isRunning()) {
+			//coalesced with the frame that is scheduled already
+			return;
+		}
+		long wait = lastFrame + 1000000000L / maximumFramesPerSecond - System.nanoTime();
+		timer.setInitialDelay((int) Math.max(0, wait / 1000000));
+		timer.start();
+	}
+
+	private void frame() {
+		timer.stop();
+		lastFrame = System.nanoTime();
+		frames++;
+		inFrame = true;
+		try {
+			flushMouseMove();
+			if (transformationChanged) {
+				transformationChanged = false;
+				repaint = true;
+				panel.updateTransformation();
+			}
+			if (animationFrame) {
+				animationFrame = false;
+				repaint = true;
+				panel.renderOneFrame();
+			}
+			if (repaint) {
+				repaint = false;
+				panel.repaint();
+			}
+		} finally {
+			inFrame = false;
+		}
+	}
+
+	/**
+	 * Records the time it took to paint the panel.
+	 *
+	 * @param nanoseconds
+	 */
+	void painted(long nanoseconds) {
+		paints++;
+		totalPaintTime += nanoseconds;
+		lastPaintTime = nanoseconds;
+		if (nanoseconds > maximumPaintTime) {
+			maximumPaintTime = nanoseconds;
+		}
+	}
+
+	public int getMaximumFramesPerSecond() {
+		return maximumFramesPerSecond;
+	}
+
+	/**
+	 *
+	 * @param maximumFramesPerSecond
+	 *            The maximum number of frames per second. If 0 or less,
+	 *            requests are handled immediately.
+	 */
+	public void setMaximumFramesPerSecond(int maximumFramesPerSecond) {
+		this.maximumFramesPerSecond = maximumFramesPerSecond;
+	}
+
+	/**
+	 *
+	 * @return The number of requests since the last reset.
+	 */
+	public long getRequestCount() {
+		return requests;
+	}
+
+	/**
+	 *
+	 * @return The number of frames since the last reset. The difference with
+	 *         the number of requests is the number of requests that were
+	 *         coalesced.
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/**
+	 *
+	 * @return The number of times the panel was painted since the last reset.
+	 *         This includes paints that were not requested through this
+	 *         scheduler.
+	 */
+	public long getPaintCount() {
+		return paints;
+	}
+
+	/**
+	 *
+	 * @return The average time to paint the panel, in nanoseconds.
+	 */
+	public long getAveragePaintTime() {
+		long paints = this.paints;
+		return paints == 0 ? 0 : totalPaintTime / paints;
+	}
+
+	/**
+	 *
+	 * @return The maximum time to paint the panel, in nanoseconds.
+	 */
+	public long getMaximumPaintTime() {
+		return maximumPaintTime;
+	}
+
+	/**
+	 *
+	 * @return The time of the last paint of the panel, in nanoseconds.
+	 */
+	public long getLastPaintTime() {
+		return lastPaintTime;
+	}
+
+	public void resetStatistics() {
+		requests = 0;
+		frames = 0;
+		paints = 0;
+		totalPaintTime = 0;
+		maximumPaintTime = 0;
+		lastPaintTime = 0;
+	}
+
+	public String toString() {
+		return "requests " + requests + ", frames " + frames + ", paints " + paints + ", average paint "
+				+ getAveragePaintTime() / 1000 + "us, maximum paint " + maximumPaintTime / 1000 + "us";
+	}
+}
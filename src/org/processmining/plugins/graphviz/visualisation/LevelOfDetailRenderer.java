@@ -0,0 +1,419 @@
+package org.processmining.plugins.graphviz.visualisation;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import com.kitfox.svg.Group;
+import com.kitfox.svg.Path;
+import com.kitfox.svg.RenderableElement;
+import com.kitfox.svg.SVGDiagram;
+import com.kitfox.svg.SVGElement;
+import com.kitfox.svg.SVGException;
+import com.kitfox.svg.ShapeElement;
+import com.kitfox.svg.Text;
+import com.kitfox.svg.xml.StyleAttribute;
+
+/**
+ * Renders a Graphviz svg image, skipping the groups outside the visible area,
+ * and with less detail when it is zoomed out:
+ * <ul>
+ * <li>below textScale, texts are drawn as bars;
+ * <li>below geometryScale, edge splines are drawn as polylines through their
+ * end points (keeping their colour, width, dashes and opacity), and
+ * arrowheads are not drawn; the shapes of nodes and clusters are drawn as
+ * usual;
+ * <li>groups (nodes, edges, clusters) that would be smaller than
+ * minimumSize pixels are not drawn at all.
+ * </ul>
+ * The scale is the number of pixels per image unit (image2user.getScaleX()
+ * of the panel). The elements are rendered from the svg tree itself, so
+ * changes of their styles are shown as usual. Groups are culled using the
+ * bounding boxes that the svg tree keeps for them.
+ *
+ * With all thresholds at 0, the image is rendered with full detail, but
+ * still culled.
+ *
+ * @author sander
+ *
+ */
+public class LevelOfDetailRenderer {
+
+	public static final double defaultTextScale = 0.5;
+	public static final double defaultGeometryScale = 0.25;
+	public static final double defaultMinimumSize = 1;
+
+	private volatile double textScale = defaultTextScale;
+	private volatile double geometryScale = defaultGeometryScale;
+	private volatile double minimumSize = defaultMinimumSize;
+
+	public LevelOfDetailRenderer() {
+		this(defaultTextScale, defaultGeometryScale, defaultMinimumSize);
+	}
+
+	/**
+	 *
+	 * @param textScale
+	 * @param geometryScale
+	 * @param minimumSize
+	 *            see the setters.
+	 */
+	public LevelOfDetailRenderer(double textScale, double geometryScale, double minimumSize) {
+		this.textScale = textScale;
+		this.geometryScale = geometryScale;
+		this.minimumSize = minimumSize;
+	}
+
+	/**
+	 *
+	 * @param scale
+	 * @return whether the image is rendered with less detail at this scale;
+	 *         if not, it should be rendered as usual.
+	 */
+	public boolean isReduced(double scale) {
+		return scale < textScale || scale < geometryScale;
+	}
+
+	/**
+	 * Renders the image.
+	 *
+	 * @param g
+	 *            in image coordinates
+	 * @param image
+	 * @param scale
+	 * @throws SVGException
+	 */
+	public void render(Graphics2D g, SVGDiagram image, double scale) throws SVGException {
+		render(g, image, scale, null);
+	}
+
+	/**
+	 * Renders the groups of the image that intersect with area.
+	 *
+	 * @param g
+	 *            in image coordinates
+	 * @param image
+	 * @param scale
+	 * @param area
+	 *            in image coordinates, or null to render all groups.
+	 * @throws SVGException
+	 */
+	public void render(Graphics2D g, SVGDiagram image, double scale, Rectangle2D area) throws SVGException {
+		Context context = new Context(scale < textScale, scale < geometryScale, area);
+		AffineTransform oldTransform = g.getTransform();
+		Color oldColour = g.getColor();
+		Stroke oldStroke = g.getStroke();
+		try {
+			renderChildren(g, image.getRoot(), context, false);
+		} finally {
+			g.setTransform(oldTransform);
+			g.setColor(oldColour);
+			g.setStroke(oldStroke);
+		}
+	}
+
+	private void renderChildren(Graphics2D g, SVGElement parent, Context context, boolean inEdge)
+			throws SVGException {
+		for (int i = 0; i < parent.getNumChildren(); i++) {
+			SVGElement child = parent.getChild(i);
+			if (child instanceof Group) {
+				renderGroup(g, (Group) child, context, inEdge);
+			} else if (child instanceof Text) {
+				if (context.bars) {
+					drawBar(g, (Text) child, context);
+				} else {
+					((Text) child).render(g);
+				}
+			} else if (child instanceof ShapeElement) {
+				if (!context.simplify || !inEdge) {
+					((ShapeElement) child).render(g);
+				} else if (child instanceof Path) {
+					drawPolyline(g, (Path) child, context);
+				}
+				//else: an arrowhead
+			} else if (child instanceof RenderableElement) {
+				((RenderableElement) child).render(g);
+			}
+			//else: titles and other elements that are not drawn
+		}
+	}
+
+	private void renderGroup(Graphics2D g, Group group, Context context, boolean inEdge) throws SVGException {
+		if (!isVisible(group, context.style)) {
+			return;
+		}
+
+		//cull groups that are outside the area or would be smaller than the minimum size
+		Rectangle2D bounds = group.getBoundingBox();
+		if (bounds != null && context.area != null && !context.intersectsArea(bounds)) {
+			return;
+		}
+		if (bounds != null && minimumSize > 0) {
+			AffineTransform transform = g.getTransform();
+			double width = bounds.getWidth() * Math.hypot(transform.getScaleX(), transform.getShearY());
+			double height = bounds.getHeight() * Math.hypot(transform.getScaleY(), transform.getShearX());
+			if (width < minimumSize && height < minimumSize) {
+				return;
+			}
+		}
+
+		context.style.setName("class");
+		boolean isEdge = inEdge
+				|| (group.getPres(context.style) && "edge".equals(context.style.getStringValue()));
+
+		AffineTransform xform = group.getXForm();
+		if (xform == null) {
+			renderChildren(g, group, context, isEdge);
+		} else {
+			AffineTransform oldTransform = g.getTransform();
+			AffineTransform oldToImage = context.toImage;
+			g.transform(xform);
+			context.toImage = new AffineTransform(oldToImage);
+			context.toImage.concatenate(xform);
+			renderChildren(g, group, context, isEdge);
+			g.setTransform(oldTransform);
+			context.toImage = oldToImage;
+		}
+	}
+
+	private static boolean isVisible(SVGElement element, StyleAttribute style) throws SVGException {
+		style.setName("visibility");
+		if (element.getStyle(style) && style.getStringValue().equals("hidden")) {
+			return false;
+		}
+		style.setName("display");
+		if (element.getStyle(style) && style.getStringValue().equals("none")) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Draws a bar in the colour of the text, in the middle of its bounds.
+	 */
+	private static void drawBar(Graphics2D g, Text text, Context context) throws SVGException {
+		if (!isVisible(text, context.style)) {
+			return;
+		}
+		Color colour = Color.black;
+		context.style.setName("fill");
+		if (text.getStyle(context.style)) {
+			if (context.style.getStringValue().equals("none")) {
+				return;
+			}
+			colour = context.style.getColorValue();
+			if (colour == null) {
+				colour = Color.black;
+			}
+		}
+		Rectangle2D bounds = text.getBoundingBox();
+		if (bounds == null || bounds.isEmpty()) {
+			return;
+		}
+		g.setColor(context.barColour(colour));
+		context.bar.setRect(bounds.getX(), bounds.getY() + bounds.getHeight() * 0.3, bounds.getWidth(),
+				bounds.getHeight() * 0.4);
+		g.fill(context.bar);
+	}
+
+	/**
+	 * Draws a path as a polyline through the end points of its segments, with
+	 * the stroke of the path.
+	 */
+	private static void drawPolyline(Graphics2D g, Path path, Context context) throws SVGException {
+		if (!isVisible(path, context.style)) {
+			return;
+		}
+		context.style.setName("stroke");
+		if (!path.getStyle(context.style) || context.style.getStringValue().equals("none")) {
+			return;
+		}
+		Color colour = context.style.getColorValue();
+		if (colour == null) {
+			colour = Color.black;
+		}
+		context.style.setName("stroke-opacity");
+		float opacity = path.getStyle(context.style) ? context.style.getRatioValue() : 1;
+		if (opacity <= 0) {
+			return;
+		}
+		if (opacity < 1) {
+			colour = new Color(colour.getRed(), colour.getGreen(), colour.getBlue(),
+					Math.round(colour.getAlpha() * opacity));
+		}
+		context.style.setName("stroke-width");
+		float width = path.getStyle(context.style) ? context.style.getFloatValueWithUnits() : 1;
+		float[] dashes = null;
+		context.style.setName("stroke-dasharray");
+		if (path.getStyle(context.style) && !context.style.getStringValue().equals("none")) {
+			dashes = context.style.getFloatList();
+		}
+
+		//in the coordinates of the parent
+		Shape shape = path.getShape();
+		Path2D.Float polyline = context.polyline;
+		polyline.reset();
+		float[] coordinates = context.coordinates;
+		for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+			switch (it.currentSegment(coordinates)) {
+				case PathIterator.SEG_MOVETO :
+					polyline.moveTo(coordinates[0], coordinates[1]);
+					break;
+				case PathIterator.SEG_LINETO :
+					polyline.lineTo(coordinates[0], coordinates[1]);
+					break;
+				case PathIterator.SEG_QUADTO :
+					polyline.lineTo(coordinates[2], coordinates[3]);
+					break;
+				case PathIterator.SEG_CUBICTO :
+					polyline.lineTo(coordinates[4], coordinates[5]);
+					break;
+				case PathIterator.SEG_CLOSE :
+					polyline.closePath();
+					break;
+			}
+		}
+		g.setColor(colour);
+		g.setStroke(context.stroke(width, dashes));
+		g.draw(polyline);
+	}
+
+	public double getTextScale() {
+		return textScale;
+	}
+
+	/**
+	 *
+	 * @param textScale
+	 *            Below this scale (pixels per image unit), texts are drawn as
+	 *            bars.
+	 */
+	public void setTextScale(double textScale) {
+		this.textScale = textScale;
+	}
+
+	public double getGeometryScale() {
+		return geometryScale;
+	}
+
+	/**
+	 *
+	 * @param geometryScale
+	 *            Below this scale (pixels per image unit), edges are drawn
+	 *            as polylines without arrowheads.
+	 */
+	public void setGeometryScale(double geometryScale) {
+		this.geometryScale = geometryScale;
+	}
+
+	public double getMinimumSize() {
+		return minimumSize;
+	}
+
+	/**
+	 *
+	 * @param minimumSize
+	 *            Groups of which both the projected width and height are
+	 *            below this number of pixels are not drawn.
+	 */
+	public void setMinimumSize(double minimumSize) {
+		this.minimumSize = minimumSize;
+	}
+
+	/**
+	 * The state of one rendering, reused for all elements.
+	 */
+	private static class Context {
+		private final boolean bars;
+		private final boolean simplify;
+		private final Rectangle2D area;
+		private final double[] corners = new double[8];
+		private AffineTransform toImage = new AffineTransform(); //from the coordinates of the current group
+		private final StyleAttribute style = new StyleAttribute();
+		private final Rectangle2D.Double bar = new Rectangle2D.Double();
+		private final Path2D.Float polyline = new Path2D.Float();
+		private final float[] coordinates = new float[6];
+		private Color textColour = null;
+		private Color barColour = null;
+		private BasicStroke stroke = null;
+
+		public Context(boolean bars, boolean simplify, Rectangle2D area) {
+			this.bars = bars;
+			this.simplify = simplify;
+			this.area = area;
+		}
+
+		/**
+		 *
+		 * @param bounds
+		 *            in the coordinates of the current group
+		 * @return whether the bounds intersect with the area.
+		 */
+		private boolean intersectsArea(Rectangle2D bounds) {
+			if (toImage.isIdentity()) {
+				return area.intersects(bounds);
+			}
+			corners[0] = corners[6] = bounds.getMinX();
+			corners[2] = corners[4] = bounds.getMaxX();
+			corners[1] = corners[3] = bounds.getMinY();
+			corners[5] = corners[7] = bounds.getMaxY();
+			toImage.transform(corners, 0, corners, 0, 4);
+			double minX = Math.min(Math.min(corners[0], corners[2]), Math.min(corners[4], corners[6]));
+			double maxX = Math.max(Math.max(corners[0], corners[2]), Math.max(corners[4], corners[6]));
+			double minY = Math.min(Math.min(corners[1], corners[3]), Math.min(corners[5], corners[7]));
+			double maxY = Math.max(Math.max(corners[1], corners[3]), Math.max(corners[5], corners[7]));
+			return area.intersects(minX, minY, maxX - minX, maxY - minY);
+		}
+
+		/**
+		 * Bars are drawn translucently, such that they are lighter than the
+		 * text they replace.
+		 */
+		private Color barColour(Color textColour) {
+			if (!textColour.equals(this.textColour)) {
+				this.textColour = textColour;
+				barColour = new Color(textColour.getRed(), textColour.getGreen(), textColour.getBlue(),
+						textColour.getAlpha() / 2);
+			}
+			return barColour;
+		}
+
+		/**
+		 * 
+		 * @param width
+		 * @param dashes
+		 *            as in stroke-dasharray, or null for a solid stroke.
+		 * @return a stroke with the same caps and joins as kitfox uses.
+		 */
+		private BasicStroke stroke(float width, float[] dashes) {
+			if (dashes != null && !isDashed(dashes)) {
+				dashes = null;
+			}
+			if (stroke == null || stroke.getLineWidth() != width || !Arrays.equals(stroke.getDashArray(), dashes)) {
+				stroke = new BasicStroke(width, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 4, dashes, 0);
+			}
+			return stroke;
+		}
+
+		/**
+		 * BasicStroke rejects dash arrays without positive lengths.
+		 */
+		private static boolean isDashed(float[] dashes) {
+			boolean positive = false;
+			for (float dash : dashes) {
+				if (dash < 0) {
+					return false;
+				}
+				positive |= dash > 0;
+			}
+			return positive;
+		}
+	}
+}
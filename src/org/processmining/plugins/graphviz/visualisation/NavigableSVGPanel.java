@@ -14,6 +14,7 @@ import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.InputEvent;
@@ -27,13 +28,18 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.awt.print.PageFormat;
 import java.awt.print.Printable;
 import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -41,7 +47,10 @@ import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
+import org.processmining.plugins.graphviz.dot.GraphvizMetrics;
+import org.processmining.plugins.graphviz.dot.GraphvizMetrics.Stage;
 import org.processmining.plugins.graphviz.visualisation.export.ExportDialog;
 import org.processmining.plugins.graphviz.visualisation.export.Exporter;
 import org.processmining.plugins.graphviz.visualisation.export.ExporterEMF;
@@ -51,6 +60,7 @@ import org.processmining.plugins.graphviz.visualisation.export.ExporterPNG;
 import org.processmining.plugins.graphviz.visualisation.export.ExporterSVG;
 import org.processmining.plugins.graphviz.visualisation.listeners.ImageTransformationChangedListener;
 
+import com.kitfox.svg.RenderableElement;
 import com.kitfox.svg.SVGDiagram;
 import com.kitfox.svg.SVGElement;
 import com.kitfox.svg.SVGException;
@@ -76,6 +86,18 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 	private Point lastMousePosition;
 	private Dimension lastPanelDimension = null;
 	private boolean resetViewLater = false;
+	private SVGTileRenderer tileRenderer = null;
+	private volatile SVGScene preview = null;
+	private LevelOfDetailRenderer levelOfDetailRenderer = null;
+	private final LevelOfDetailRenderer cullingRenderer = new LevelOfDetailRenderer(0, 0, 0);
+	private boolean viewportCulling = true;
+	private final FrameScheduler frameScheduler = new FrameScheduler(this);
+
+	/**
+	 * Panels by the root of the image they display, such that changes to an
+	 * element can be forwarded to the panel.
+	 */
+	private static final Map<SVGRoot, WeakReference<NavigableSVGPanel>> panels = new WeakHashMap<>();
 
 	protected boolean isDraggingImage = false;
 	private final static double zoomIncrement = 1.8;
@@ -92,6 +114,16 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 
 	//navigation variables and constants
 	private double navigationScale = 1.0;
+	private BufferedImage navigationImage = null;
+	private boolean navigationImageValid = false;
+	private volatile Object navigationImageRequest = null;
+	public final static int navigationImageChangeDelay = 500; //ms
+	private final Timer navigationImageChangeTimer = new Timer(navigationImageChangeDelay, new ActionListener() {
+		public void actionPerformed(ActionEvent e) {
+			invalidateNavigationImage();
+			repaint();
+		}
+	});
 	public final static double navigationImageWidthInPartOfPanel = 0.1;
 	public final static Color navigationImageBorderColor = Color.black;
 	public final static float dash1[] = { 10.0f };
@@ -205,6 +237,7 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 		setOpaque(false);
 		setDoubleBuffered(true);
 		setFocusable(true);
+		navigationImageChangeTimer.setRepeats(false);
 		setImage(newImage, false);
 		setupListeners();
 	}
@@ -249,6 +282,7 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 					} else {
 						lastPanelDimension = new Dimension(width, height);
 					}
+					invalidateNavigationImage();
 				} catch (NoninvertibleTransformException e1) {
 					/*
 					 * Problems with the new transformations. No harm done, but
@@ -265,14 +299,17 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 		//set up mouse listener
 		addMouseListener(new MouseListener() {
 			public void mouseReleased(MouseEvent e) {
+				frameScheduler.flushMouseMove();
 				processMouseRelease(e);
 			}
 
 			public void mousePressed(MouseEvent e) {
+				frameScheduler.flushMouseMove();
 				processMousePress(e);
 			}
 
 			public void mouseExited(MouseEvent e) {
+				frameScheduler.discardMouseMove();
 				processMouseExit(e);
 			}
 
@@ -284,18 +321,21 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 				if (isFocusable()) {
 					requestFocusInWindow();
 				}
+				frameScheduler.flushMouseMove();
 				processMouseClick(e);
 			}
 		});
 
 		//set up drag listener
+		//mouse moves and drags are coalesced by the frame scheduler
 		addMouseMotionListener(new MouseMotionListener() {
 			public void mouseDragged(MouseEvent e) {
+				frameScheduler.flushMouseMove();
 				processMouseDrag(e);
 			}
 
 			public void mouseMoved(MouseEvent e) {
-				processMouseMove(e);
+				frameScheduler.requestMouseMove(e);
 			}
 		});
 
@@ -320,12 +360,12 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 						} else {
 							zoomOut(p);
 						}
-						updateTransformation();
+						frameScheduler.requestTransformationChanged();
 					} catch (NoninvertibleTransformException ex) {
 						ex.printStackTrace();
 					}
 				}
-				repaint();
+				frameScheduler.requestRepaint();
 			}
 		});
 
@@ -383,6 +423,9 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 	 *            the <code>Graphics</code> context for painting
 	 */
 	protected void paintComponent(Graphics g) {
+		boolean measure = GraphvizMetrics.isEnabled();
+		long start = System.nanoTime();
+
 		if (!isPaintingForPrint()) {
 			super.paintComponent(g); // Paints the background
 		}
@@ -429,7 +472,7 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 		if (!isPaintingForPrint() && !isImageCompletelyInPanel()) {
 			int width = (int) Math.round(getNavigationWidth());
 			int height = (int) Math.round(getNavigationHeight());
-			drawSVG(g2, image, 0, 0, width, height);
+			drawNavigationImage(g2, width, height);
 			g2.drawRect(0, 0, width, height);
 			drawNavigationOutline(g2);
 		}
@@ -443,18 +486,96 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 		if (!isPaintingForPrint()) {
 			drawAnimationControls((Graphics2D) g);
 		}
+
+		long time = System.nanoTime() - start;
+		if (!isPaintingForPrint()) {
+			frameScheduler.painted(time);
+		}
+		if (measure) {
+			GraphvizMetrics.measured(Stage.paint, time, 0);
+		}
 	}
 
 	protected void paintImage(Graphics2D g) {
+		SVGScene preview = this.preview;
+		if (preview != null && !isPaintingForPrint()) {
+			preview.render(g);
+			return;
+		}
+		if (tileRenderer != null && !isPaintingForPrint()) {
+			tileRenderer.paint(g);
+			return;
+		}
+		if (isPaintingForPrint()) {
+			try {
+				synchronized (getLock(image)) {
+					image.render(g);
+				}
+			} catch (SVGException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+
+		/*
+		 * Draw only the groups that intersect the visible part of the image.
+		 * The clip of g already is the part of the panel that needs to be
+		 * painted, so use that in image coordinates.
+		 */
+		Rectangle2D area = null;
+		if (viewportCulling && !isImageCompletelyInPanel()) {
+			area = g.getClipBounds();
+			if (area == null) {
+				area = getVisibleImageBoundingBoxInImageCoordinates();
+			}
+		}
+
+		LevelOfDetailRenderer renderer = this.levelOfDetailRenderer;
+		if (renderer == null || !renderer.isReduced(image2user.getScaleX())) {
+			renderer = area == null ? null : cullingRenderer;
+		}
+		if (renderer != null) {
+			try {
+				synchronized (getLock(image)) {
+					renderer.render(g, image, image2user.getScaleX(), area);
+				}
+			} catch (SVGException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
 		try {
 			//			System.out.println("[NavigableSVGPanel] Start rendering graph.");
-			image.render(g);
+			synchronized (getLock(image)) {
+				image.render(g);
+			}
 			//			System.out.println("[NavigableSVGPanel] End rendering graph.");
 		} catch (SVGException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Prints the image as print() does, but renders only the groups that
+	 * intersect with the given area, e.g. to export the image in parts. The
+	 * caller clips g to the part it needs.
+	 * 
+	 * @param g
+	 *            in image coordinates
+	 * @param area
+	 *            in image coordinates
+	 */
+	public void printArea(Graphics2D g, Rectangle2D area) {
+		try {
+			synchronized (getLock(image)) {
+				cullingRenderer.render(g, image, g.getTransform().getScaleX(), area);
+			}
+		} catch (SVGException e) {
+			e.printStackTrace();
+		}
+		drawAnimation(g);
+	}
+
 	/**
 	 * Draw an svg image at the given coordinates and of the given size.
 	 * 
@@ -474,7 +595,9 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 		g.scale(scaleX, scaleY);
 
 		try {
-			image.render(g);
+			synchronized (getLock(image)) {
+				image.render(g);
+			}
 		} catch (SVGException e) {
 			e.printStackTrace();
 		}
@@ -483,6 +606,74 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 		g.translate(-x, -y);
 	}
 
+	/**
+	 * Draws the cached navigation image. If it is not available or has the
+	 * wrong size, it is rendered in the background, and the outdated image (if
+	 * any) is drawn stretched in the meantime.
+	 * 
+	 * @param g
+	 * @param width
+	 * @param height
+	 */
+	private void drawNavigationImage(Graphics2D g, int width, int height) {
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		if (!navigationImageValid || navigationImage.getWidth() != width || navigationImage.getHeight() != height) {
+			renderNavigationImage(width, height);
+		}
+		if (navigationImage != null) {
+			g.drawImage(navigationImage, 0, 0, width, height, null);
+		}
+	}
+
+	/**
+	 * Renders the navigation image on the SVGRenderQueue, holding the lock of
+	 * the image, and hands it to the event dispatch thread when it is done.
+	 * Must be called on the event dispatch thread.
+	 */
+	private void renderNavigationImage(final int width, final int height) {
+		if (new Dimension(width, height).equals(navigationImageRequest)) {
+			//this image is being rendered already
+			return;
+		}
+		final Object request = new Dimension(width, height);
+		final SVGDiagram image = this.image;
+		navigationImageRequest = request;
+		SVGRenderQueue.execute(getLock(image), new Runnable() {
+			public void run() {
+				if (navigationImageRequest != request) {
+					//a newer request has been made already
+					return;
+				}
+				final BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+				Graphics2D g = result.createGraphics();
+				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				drawSVG(g, image, 0, 0, width, height);
+				g.dispose();
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (navigationImageRequest == request) {
+							navigationImageRequest = null;
+							navigationImage = result;
+							navigationImageValid = true;
+							repaint();
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Discards the navigation image, such that it is rendered again on the
+	 * next paint. The outdated image is shown until then.
+	 */
+	public void invalidateNavigationImage() {
+		navigationImageValid = false;
+		navigationImageRequest = null;
+	}
+
 	/**
 	 * Draw the animation.
 	 * 
@@ -822,6 +1013,16 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 				(int) Math.abs(y2 - y1));
 	}
 
+	/**
+	 * 
+	 * @return The part of the image that is visible in the panel, in image
+	 *         coordinates.
+	 */
+	public Rectangle2D getVisibleImageBoundingBoxInImageCoordinates() {
+		Rectangle2D panel = new Rectangle2D.Double(0, 0, getWidth(), getHeight());
+		return user2image.createTransformedShape(panel).getBounds2D();
+	}
+
 	/**
 	 * 
 	 * @return the bounding box of the complete image in user coordinates
@@ -882,8 +1083,19 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 			System.out.println("invalid dot given");
 			throw new NullPointerException("invalid dot given");
 		}
+		synchronized (panels) {
+			if (this.image != null) {
+				panels.remove(this.image.getRoot());
+			}
+			panels.put(image.getRoot(), new WeakReference<>(this));
+		}
 		this.image = image;
+		preview = null;
 		image.setDeviceViewport(new java.awt.Rectangle(0, 0, (int) image.getWidth(), (int) image.getHeight()));
+		if (tileRenderer != null) {
+			tileRenderer.setImage(image);
+		}
+		invalidateNavigationImage();
 
 		if (resetView) {
 			try {
@@ -926,6 +1138,7 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 
 		//reset navigation image
 		navigationScale = 1.0;
+		invalidateNavigationImage();
 	}
 
 	/**
@@ -1098,8 +1311,7 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 				}
 			}
 			lastMousePosition = point;
-			updateTransformation();
-			repaint();
+			frameScheduler.requestTransformationChanged();
 			return true;
 		} else if (isDraggingAnimation) {
 			pause();
@@ -1107,7 +1319,7 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 			double progress = Math.min(1,
 					Math.max(0, (e.getX() - getControlsProgressLine().x) / (getControlsProgressLine().width * 1.0)));
 			seek(getAnimationMinimumTime() + progress * (getAnimationMaximumTime() - getAnimationMinimumTime()));
-			renderOneFrame();
+			frameScheduler.requestAnimationFrame();
 			lastMousePosition = e.getPoint();
 			return true;
 		} else if (isDraggingTimeScale) {
@@ -1115,7 +1327,7 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 					Math.max(0, (e.getX() - controlsTimeScale.x) / (controlsTimeScale.width * 1.0)));
 			setTimeScale(progress);
 			lastMousePosition = e.getPoint();
-			repaint();
+			frameScheduler.requestRepaint();
 			return true;
 		}
 
@@ -1136,24 +1348,24 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 			//we have to show the helper controls
 			helperControlsShowing = true;
 			animationControlsShowing = false;
-			repaint();
+			frameScheduler.requestRepaint();
 			return true;
 		} else if (!isDraggingImage && animationControls != null && !animationControlsShowing
 				&& isInAnimationControls(e.getPoint())) {
 			//we have to show the animation controls
 			animationControlsShowing = true;
 			helperControlsShowing = false;
-			repaint();
+			frameScheduler.requestRepaint();
 			return true;
 		} else {
 			//hide things
 			if (animationControlsShowing && !isInAnimationControls(e.getPoint())) {
 				animationControlsShowing = false;
-				repaint();
+				frameScheduler.requestRepaint();
 			}
 			if (helperControlsShowing && !isInHelperControls(e.getPoint())) {
 				helperControlsShowing = false;
-				repaint();
+				frameScheduler.requestRepaint();
 			}
 			return helperControlsShowing || animationControlsShowing || isInNavigation(e.getPoint());
 		}
@@ -1230,18 +1442,186 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 	 */
 	private void zoomNavigation(double zoomFactor) {
 		navigationScale *= zoomFactor;
+		invalidateNavigationImage();
 	}
 
 	public void setImageTransformationChangedListener(ImageTransformationChangedListener listener) {
 		this.imageTransformationChangedListener = listener;
 	}
 
-	private void updateTransformation() {
+	void updateTransformation() {
 		if (imageTransformationChangedListener != null) {
 			imageTransformationChangedListener.imageTransformationChanged(image2user, user2image);
 		}
 	}
 
+	/**
+	 * Enables or disables tile rendering. If enabled, the image is rendered
+	 * in tiles by a background thread and painting only copies tiles, which
+	 * keeps panning and zooming of large images responsive. Changes to the
+	 * image that are not made through DotPanel.setCSSAttributeOf require a
+	 * call to elementChanged().
+	 * 
+	 * @param enabled
+	 */
+	public void setTileRendering(boolean enabled) {
+		if (enabled && tileRenderer == null) {
+			tileRenderer = new SVGTileRenderer(this, SVGTileRenderer.defaultMaximumNumberOfTiles);
+			tileRenderer.setImage(image);
+		} else if (!enabled) {
+			tileRenderer = null;
+		}
+		repaint();
+	}
+
+	/**
+	 * Enables or disables level-of-detail rendering. If enabled, the image is
+	 * drawn with less detail when it is zoomed out: texts become bars, edges
+	 * become polylines without arrowheads and elements smaller than a pixel
+	 * are skipped (see LevelOfDetailRenderer for the thresholds).
+	 * 
+	 * @param enabled
+	 */
+	public void setLevelOfDetail(boolean enabled) {
+		if (enabled && levelOfDetailRenderer == null) {
+			levelOfDetailRenderer = new LevelOfDetailRenderer();
+		} else if (!enabled) {
+			levelOfDetailRenderer = null;
+		}
+		repaint();
+	}
+
+	public boolean isLevelOfDetail() {
+		return levelOfDetailRenderer != null;
+	}
+
+	/**
+	 * Enables or disables viewport culling. If enabled and the image does not
+	 * fit in the panel, only the nodes, edges and clusters that intersect the
+	 * visible part of the image are drawn.
+	 * 
+	 * @param enabled
+	 */
+	public void setViewportCulling(boolean enabled) {
+		viewportCulling = enabled;
+		repaint();
+	}
+
+	public boolean isViewportCulling() {
+		return viewportCulling;
+	}
+
+	/**
+	 * 
+	 * @return The scheduler that coalesces the repaints, transformation
+	 *         notifications and hover updates caused by the mouse, and keeps
+	 *         frame-time statistics.
+	 */
+	public FrameScheduler getFrameScheduler() {
+		return frameScheduler;
+	}
+
+	/**
+	 * 
+	 * @return The level-of-detail renderer, or null if level-of-detail
+	 *         rendering is disabled.
+	 */
+	public LevelOfDetailRenderer getLevelOfDetailRenderer() {
+		return levelOfDetailRenderer;
+	}
+
+	/**
+	 * Shows a scene instead of the image, until the next call of setImage().
+	 * The scene may still be loading (see SVGSceneLoader); the panel shows
+	 * what has been loaded so far. May be called from any thread.
+	 * 
+	 * @param preview
+	 *            the scene, or null to show the image again.
+	 */
+	public void setPreview(SVGScene preview) {
+		this.preview = preview;
+		repaint();
+	}
+
+	/**
+	 * 
+	 * @return The scene that is shown instead of the image, or null.
+	 */
+	public SVGScene getPreview() {
+		return preview;
+	}
+
+	public boolean isTileRendering() {
+		return tileRenderer != null;
+	}
+
+	/**
+	 * 
+	 * @return The tile renderer, or null if tile rendering is disabled.
+	 */
+	public SVGTileRenderer getTileRenderer() {
+		return tileRenderer;
+	}
+
+	/**
+	 * Kitfox is not thread-safe: rendering caches shapes and styles in the
+	 * elements. Therefore, all code that renders or changes an image holds
+	 * the lock returned by this method.
+	 * 
+	 * @param image
+	 * @return The object to synchronise on before rendering or changing the
+	 *         image.
+	 */
+	public static Object getLock(SVGDiagram image) {
+		SVGRoot root = image.getRoot();
+		return root == null ? image : root;
+	}
+
+	/**
+	 * 
+	 * @param element
+	 * @return The object to synchronise on before rendering or changing the
+	 *         image of the element (see getLock(SVGDiagram)).
+	 */
+	public static Object getLock(SVGElement element) {
+		SVGRoot root = element.getRoot();
+		return root == null ? element : root;
+	}
+
+	/**
+	 * Notifies the panel that displays the element that the element has
+	 * changed, such that cached renderings of the element are discarded.
+	 * 
+	 * @param element
+	 */
+	public static void elementChanged(SVGElement element) {
+		NavigableSVGPanel panel;
+		synchronized (panels) {
+			WeakReference<NavigableSVGPanel> reference = panels.get(element.getRoot());
+			panel = reference == null ? null : reference.get();
+		}
+		if (panel != null) {
+			panel.imageChanged(element);
+		}
+	}
+
+	/**
+	 * Called when an element of the image has changed.
+	 * 
+	 * @param element
+	 */
+	protected void imageChanged(SVGElement element) {
+		SVGTileRenderer tileRenderer = this.tileRenderer;
+		if (tileRenderer != null) {
+			tileRenderer.invalidate(element);
+		}
+		//element changes come in bursts (e.g. hovering), so update the navigation image once after a delay
+		if (!navigationImageChangeTimer.isRunning()) {
+			navigationImageChangeTimer.start();
+		}
+		repaint();
+	}
+
 	public void setTransformation(AffineTransform image2user, AffineTransform user2image) {
 		this.image2user = image2user;
 		this.user2image = user2image;
@@ -1251,6 +1631,18 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 		return user2image.transform(p, null);
 	}
 
+	/**
+	 * Transforms p to image coordinates without allocating a new point.
+	 * 
+	 * @param p
+	 * @param result
+	 *            may be p
+	 * @return result
+	 */
+	public Point2D transformUser2Image(Point2D p, Point2D result) {
+		return user2image.transform(p, result);
+	}
+
 	public Point2D transformImage2User(Point2D p) {
 		return image2user.transform(p, null);
 	}
@@ -1275,6 +1667,55 @@ public class NavigableSVGPanel extends JPanel implements Printable {
 		return result;
 	}
 
+	/**
+	 *
+	 * @param svgElement
+	 * @return The bounding box of the element in image coordinates, or null if
+	 *         it cannot be determined.
+	 */
+	public static Rectangle2D getBoundingBoxInImageCoordinates(SVGElement svgElement) {
+		if (!(svgElement instanceof RenderableElement)) {
+			return null;
+		}
+		Rectangle2D result;
+		try {
+			//the bounding box is in the coordinates of the parent
+			result = ((RenderableElement) svgElement).getBoundingBox();
+		} catch (SVGException e) {
+			return null;
+		}
+		if (result == null) {
+			return null;
+		}
+
+		return getTransformElement2Image(svgElement.getParent()).createTransformedShape(result).getBounds2D();
+	}
+
+	/**
+	 * 
+	 * @param svgElement
+	 * @return The transformation from the coordinates of the element (i.e.
+	 *         the coordinates of its children) to image coordinates.
+	 */
+	public static AffineTransform getTransformElement2Image(SVGElement svgElement) {
+		AffineTransform result = new AffineTransform();
+		SVGElement element = svgElement;
+		while (element != null && element instanceof TransformableElement) {
+			AffineTransform xForm;
+			if (element instanceof SVGRoot) {
+				xForm = ((SVGRoot) element).getViewXform();
+			} else {
+				xForm = ((TransformableElement) element).getXForm();
+			}
+			if (xForm != null) {
+				result.preConcatenate(xForm);
+			}
+
+			element = element.getParent();
+		}
+		return result;
+	}
+
 	/**
 	 * Needs to be overridden by a subclass.
 	 * 
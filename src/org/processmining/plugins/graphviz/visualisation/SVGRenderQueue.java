@@ -0,0 +1,113 @@
+package org.processmining.plugins.graphviz.visualisation;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs background renderings of svg images on a shared, bounded pool of
+ * daemon threads. Tasks for the same image (i.e. with the same lock, see
+ * NavigableSVGPanel.getLock()) run one after the other in the order in which
+ * they were added, such that they do not occupy several threads waiting for
+ * the lock; tasks for different images run concurrently. After each task, the
+ * image yields its thread to the other images, such that one large image
+ * cannot starve the others.
+ *
+ * @author sander
+ *
+ */
+class SVGRenderQueue {
+
+	private static final ExecutorService workers = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "SVG renderer " + count.incrementAndGet());
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				}
+			});
+
+	/**
+	 * The queues by lock. A queue does not refer to its lock, so it is removed
+	 * once the image is gone; pending tasks keep their image alive.
+	 */
+	private static final Map<Object, Queue> queues = new WeakHashMap<>();
+
+	private SVGRenderQueue() {
+
+	}
+
+	/**
+	 * Runs the task in the background, after the tasks that were added before
+	 * with the same lock.
+	 *
+	 * @param lock
+	 *            the lock of the image the task renders.
+	 * @param task
+	 * @return a future that completes when the task has run.
+	 */
+	public static Future<?> execute(Object lock, Runnable task) {
+		FutureTask<Object> future = new FutureTask<>(task, null);
+		Queue queue;
+		synchronized (queues) {
+			queue = queues.get(lock);
+			if (queue == null) {
+				queue = new Queue();
+				queues.put(lock, queue);
+			}
+		}
+		queue.add(future);
+		return future;
+	}
+
+	/**
+	 * The pending tasks of one image. At most one task of a queue is running
+	 * or waiting in the pool at any time.
+	 */
+	private static class Queue implements Runnable {
+		private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+		private boolean scheduled = false;
+
+		public void add(Runnable task) {
+			synchronized (this) {
+				tasks.add(task);
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+			workers.execute(this);
+		}
+
+		public void run() {
+			Runnable task;
+			synchronized (this) {
+				task = tasks.poll();
+			}
+			try {
+				if (task != null) {
+					task.run();
+				}
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			synchronized (this) {
+				if (tasks.isEmpty()) {
+					scheduled = false;
+					return;
+				}
+			}
+			//go to the back of the pool's queue, behind the other images
+			workers.execute(this);
+		}
+	}
+}
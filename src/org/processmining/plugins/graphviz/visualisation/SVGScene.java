@@ -0,0 +1,497 @@
+package org.processmining.plugins.graphviz.visualisation;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A lean scene graph of an svg image as written by Graphviz: only the paths,
+ * polygons, polylines, ellipses and texts, grouped by the node, edge and
+ * cluster groups they belong to. All elements are stored in flat arrays, in
+ * image coordinates (as the ones of the SVGDiagram of the same svg).
+ *
+ * A scene is filled by an SVGSceneLoader, possibly while it is being
+ * rendered by another thread: rendering shows the groups that have been
+ * loaded completely. Each completed group publishes a snapshot of the arrays
+ * through a volatile field; the loader never changes the part of the arrays
+ * that a snapshot covers, and grows arrays by copying them, so readers only
+ * use data that is complete and safely published.
+ *
+ * @author sander
+ *
+ */
+public class SVGScene {
+
+	public static final byte kindGraph = 0;
+	public static final byte kindCluster = 1;
+	public static final byte kindNode = 2;
+	public static final byte kindEdge = 3;
+
+	static final byte typePolygon = 0;
+	static final byte typePolyline = 1;
+	static final byte typePath = 2;
+	static final byte typeEllipse = 3;
+	static final byte typeText = 4;
+
+	static final byte anchorStart = 0;
+	static final byte anchorMiddle = 1;
+	static final byte anchorEnd = 2;
+
+	/*
+	 * Writer state; only accessed by the loader.
+	 */
+
+	//groups
+	private String[] groupIds = new String[64];
+	private byte[] groupKinds = new byte[64];
+	private float[] groupBounds = new float[64 * 4];
+	private int[] groupEnds = new int[64]; //end (exclusive) of the primitives of each group
+
+	//primitives
+	private byte[] types = new byte[256];
+	private int[] coordinateEnds = new int[256]; //end (exclusive) of the coordinates of each primitive
+	private int[] strokes = new int[256]; //argb, 0 = none
+	private int[] fills = new int[256]; //argb, 0 = none
+	private float[] strokeWidths = new float[256]; //for texts: the font size
+	private int[] dashes = new int[256]; //index in dashPatterns, -1 = solid
+	private int[] textIndices = new int[256];
+	private float[] coordinates = new float[1024];
+
+	//texts
+	private String[] texts = new String[64];
+	private byte[] textAnchors = new byte[64];
+	private Font[] fonts = new Font[64];
+	private final HashMap<String, Font> fontCache = new HashMap<>();
+
+	private int numberOfGroups = 0;
+	private int numberOfPrimitives = 0;
+	private int numberOfCoordinates = 0;
+	private int numberOfTexts = 0;
+	private int groupStart = 0;
+
+	/*
+	 * Shared state.
+	 */
+
+	private final List<float[]> dashPatterns = new CopyOnWriteArrayList<>();
+
+	private volatile Rectangle2D viewRect = new Rectangle2D.Float();
+	private volatile boolean complete = false;
+	private volatile Snapshot snapshot = new Snapshot(this);
+
+	/**
+	 * The arrays of the scene as they were when a group was completed. The
+	 * loader does not change the first numberOfGroups groups, or their
+	 * primitives and texts, afterwards.
+	 */
+	private static final class Snapshot {
+		private final int numberOfGroups;
+		private final String[] groupIds;
+		private final byte[] groupKinds;
+		private final float[] groupBounds;
+		private final int[] groupEnds;
+		private final byte[] types;
+		private final int[] coordinateEnds;
+		private final int[] strokes;
+		private final int[] fills;
+		private final float[] strokeWidths;
+		private final int[] dashes;
+		private final int[] textIndices;
+		private final float[] coordinates;
+		private final String[] texts;
+		private final byte[] textAnchors;
+		private final Font[] fonts;
+
+		public Snapshot(SVGScene scene) {
+			numberOfGroups = scene.numberOfGroups;
+			groupIds = scene.groupIds;
+			groupKinds = scene.groupKinds;
+			groupBounds = scene.groupBounds;
+			groupEnds = scene.groupEnds;
+			types = scene.types;
+			coordinateEnds = scene.coordinateEnds;
+			strokes = scene.strokes;
+			fills = scene.fills;
+			strokeWidths = scene.strokeWidths;
+			dashes = scene.dashes;
+			textIndices = scene.textIndices;
+			coordinates = scene.coordinates;
+			texts = scene.texts;
+			textAnchors = scene.textAnchors;
+			fonts = scene.fonts;
+		}
+	}
+
+	/**
+	 *
+	 * @return The number of groups that have been loaded completely.
+	 */
+	public int getNumberOfGroups() {
+		return snapshot.numberOfGroups;
+	}
+
+	/**
+	 *
+	 * @return Whether the loader has finished.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 *
+	 * @return The area of the image, in image coordinates.
+	 */
+	public Rectangle2D getViewRect() {
+		return viewRect;
+	}
+
+	/**
+	 *
+	 * @param group
+	 * @return The id of the svg group, or null if it has none.
+	 */
+	public String getGroupId(int group) {
+		return snapshot.groupIds[group];
+	}
+
+	/**
+	 *
+	 * @param group
+	 * @return kindGraph, kindCluster, kindNode or kindEdge
+	 */
+	public byte getGroupKind(int group) {
+		return snapshot.groupKinds[group];
+	}
+
+	/**
+	 *
+	 * @param group
+	 * @return The bounding box of the group, in image coordinates.
+	 */
+	public Rectangle2D getGroupBounds(int group) {
+		float[] bounds = snapshot.groupBounds;
+		return new Rectangle2D.Float(bounds[group * 4], bounds[group * 4 + 1],
+				bounds[group * 4 + 2] - bounds[group * 4], bounds[group * 4 + 3] - bounds[group * 4 + 1]);
+	}
+
+	/**
+	 * Draws the loaded groups.
+	 *
+	 * @param g
+	 *            in image coordinates
+	 */
+	public void render(Graphics2D g) {
+		render(g, null);
+	}
+
+	/**
+	 * Draws the loaded groups that intersect with area.
+	 *
+	 * @param g
+	 *            in image coordinates
+	 * @param area
+	 *            in image coordinates, or null to draw all groups
+	 */
+	public void render(Graphics2D g, Rectangle2D area) {
+		Snapshot scene = snapshot;
+		int groups = scene.numberOfGroups;
+		float[] groupBounds = scene.groupBounds;
+		int[] groupEnds = scene.groupEnds;
+		byte[] types = scene.types;
+		int[] coordinateEnds = scene.coordinateEnds;
+		int[] strokes = scene.strokes;
+		int[] fills = scene.fills;
+		float[] coordinates = scene.coordinates;
+
+		Path2D.Float shape = new Path2D.Float();
+		Ellipse2D.Float ellipse = new Ellipse2D.Float();
+		Color colour = null;
+		BasicStroke stroke = null;
+		for (int group = 0; group < groups; group++) {
+			int first = group == 0 ? 0 : groupEnds[group - 1];
+			if (area != null && !area.intersects(groupBounds[group * 4], groupBounds[group * 4 + 1],
+					groupBounds[group * 4 + 2] - groupBounds[group * 4],
+					groupBounds[group * 4 + 3] - groupBounds[group * 4 + 1])) {
+				continue;
+			}
+			for (int primitive = first; primitive < groupEnds[group]; primitive++) {
+				int start = primitive == 0 ? 0 : coordinateEnds[primitive - 1];
+				int end = coordinateEnds[primitive];
+				if (types[primitive] == typeText) {
+					colour = setColour(g, colour, fills[primitive]);
+					drawText(g, scene, primitive, coordinates[start], coordinates[start + 1]);
+					continue;
+				}
+
+				Shape s;
+				if (types[primitive] == typeEllipse) {
+					float rx = coordinates[start + 2];
+					float ry = coordinates[start + 3];
+					ellipse.setFrame(coordinates[start] - rx, coordinates[start + 1] - ry, 2 * rx, 2 * ry);
+					s = ellipse;
+				} else {
+					shape.reset();
+					appendShape(shape, coordinates, types[primitive], start, end);
+					s = shape;
+				}
+				if (fills[primitive] != 0 && types[primitive] != typePolyline) {
+					colour = setColour(g, colour, fills[primitive]);
+					g.fill(s);
+				}
+				if (strokes[primitive] != 0) {
+					colour = setColour(g, colour, strokes[primitive]);
+					stroke = setStroke(g, stroke, scene.strokeWidths[primitive], scene.dashes[primitive]);
+					g.draw(s);
+				}
+			}
+		}
+	}
+
+	private static void appendShape(Path2D.Float shape, float[] c, byte type, int start, int end) {
+		shape.moveTo(c[start], c[start + 1]);
+		if (type == typePath) {
+			for (int i = start + 2; i + 5 < end; i += 6) {
+				shape.curveTo(c[i], c[i + 1], c[i + 2], c[i + 3], c[i + 4], c[i + 5]);
+			}
+		} else {
+			for (int i = start + 2; i + 1 < end; i += 2) {
+				shape.lineTo(c[i], c[i + 1]);
+			}
+			if (type == typePolygon) {
+				shape.closePath();
+			}
+		}
+	}
+
+	private static void drawText(Graphics2D g, Snapshot scene, int primitive, float x, float y) {
+		int text = scene.textIndices[primitive];
+		Font font = scene.fonts[text];
+		g.setFont(font);
+		if (scene.textAnchors[text] != anchorStart) {
+			double width = font.getStringBounds(scene.texts[text], g.getFontRenderContext()).getWidth();
+			x -= scene.textAnchors[text] == anchorMiddle ? width / 2 : width;
+		}
+		g.drawString(scene.texts[text], x, y);
+	}
+
+	private static Color setColour(Graphics2D g, Color current, int argb) {
+		if (current != null && current.getRGB() == argb) {
+			return current;
+		}
+		Color result = new Color(argb, true);
+		g.setColor(result);
+		return result;
+	}
+
+	private BasicStroke setStroke(Graphics2D g, BasicStroke current, float width, int dash) {
+		float[] pattern = dash < 0 ? null : dashPatterns.get(dash);
+		if (current != null && current.getLineWidth() == width
+				&& Arrays.equals(current.getDashArray(), pattern)) {
+			return current;
+		}
+		BasicStroke result = new BasicStroke(width, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, pattern, 0);
+		g.setStroke(result);
+		return result;
+	}
+
+	/*
+	 * Writing; only by the loader.
+	 */
+
+	void setViewRect(Rectangle2D viewRect) {
+		this.viewRect = viewRect;
+	}
+
+	int getDashPattern(float[] pattern) {
+		for (int i = 0; i < dashPatterns.size(); i++) {
+			if (Arrays.equals(dashPatterns.get(i), pattern)) {
+				return i;
+			}
+		}
+		dashPatterns.add(pattern);
+		return dashPatterns.size() - 1;
+	}
+
+	/**
+	 * Adds a shape of which the coordinates have been added already.
+	 */
+	void addShape(byte type, int stroke, int fill, float strokeWidth, int dash) {
+		int primitive = addPrimitive(type);
+		strokes[primitive] = stroke;
+		fills[primitive] = fill;
+		strokeWidths[primitive] = strokeWidth;
+		dashes[primitive] = dash;
+	}
+
+	void addText(float x, float y, String text, String fontFamily, byte fontStyle, float fontSize, byte anchor,
+			int fill) {
+		addCoordinate(x, y);
+		int primitive = addPrimitive(typeText);
+		fills[primitive] = fill;
+		strokes[primitive] = 0;
+		strokeWidths[primitive] = fontSize;
+		dashes[primitive] = -1;
+
+		if (numberOfTexts == texts.length) {
+			int length = texts.length * 2;
+			texts = Arrays.copyOf(texts, length);
+			textAnchors = Arrays.copyOf(textAnchors, length);
+			fonts = Arrays.copyOf(fonts, length);
+		}
+		texts[numberOfTexts] = text;
+		textAnchors[numberOfTexts] = anchor;
+		fonts[numberOfTexts] = getFont(fontFamily, fontStyle, fontSize);
+		textIndices[primitive] = numberOfTexts;
+		numberOfTexts++;
+	}
+
+	private Font getFont(String family, byte style, float size) {
+		String key = family + '|' + style + '|' + size;
+		Font result = fontCache.get(key);
+		if (result == null) {
+			result = new Font(family, style, 1).deriveFont(size);
+			fontCache.put(key, result);
+		}
+		return result;
+	}
+
+	void addCoordinate(float x, float y) {
+		if (numberOfCoordinates + 2 > coordinates.length) {
+			coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+		}
+		coordinates[numberOfCoordinates++] = x;
+		coordinates[numberOfCoordinates++] = y;
+	}
+
+	/**
+	 *
+	 * @return The number of coordinates added so far (twice the number of
+	 *         points).
+	 */
+	int getNumberOfCoordinates() {
+		return numberOfCoordinates;
+	}
+
+	/**
+	 * Discards the coordinates added after the last primitive.
+	 */
+	void discardCoordinates() {
+		numberOfCoordinates = numberOfPrimitives == 0 ? 0 : coordinateEnds[numberOfPrimitives - 1];
+	}
+
+	private int addPrimitive(byte type) {
+		if (numberOfPrimitives == types.length) {
+			int length = types.length * 2;
+			types = Arrays.copyOf(types, length);
+			coordinateEnds = Arrays.copyOf(coordinateEnds, length);
+			strokes = Arrays.copyOf(strokes, length);
+			fills = Arrays.copyOf(fills, length);
+			strokeWidths = Arrays.copyOf(strokeWidths, length);
+			dashes = Arrays.copyOf(dashes, length);
+			textIndices = Arrays.copyOf(textIndices, length);
+		}
+		types[numberOfPrimitives] = type;
+		coordinateEnds[numberOfPrimitives] = numberOfCoordinates;
+		return numberOfPrimitives++;
+	}
+
+	/**
+	 * Closes the group of the primitives added since the previous group and
+	 * makes it visible to renderers. Does nothing if there are no such
+	 * primitives.
+	 *
+	 * @param id
+	 * @param kind
+	 */
+	void endGroup(String id, byte kind) {
+		if (groupStart == numberOfPrimitives) {
+			return;
+		}
+		int group = numberOfGroups;
+		if (group == groupIds.length) {
+			int length = groupIds.length * 2;
+			groupIds = Arrays.copyOf(groupIds, length);
+			groupKinds = Arrays.copyOf(groupKinds, length);
+			groupBounds = Arrays.copyOf(groupBounds, length * 4);
+			groupEnds = Arrays.copyOf(groupEnds, length);
+		}
+		groupIds[group] = id;
+		groupKinds[group] = kind;
+		groupEnds[group] = numberOfPrimitives;
+
+		float minX = Float.POSITIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		for (int primitive = groupStart; primitive < numberOfPrimitives; primitive++) {
+			int start = primitive == 0 ? 0 : coordinateEnds[primitive - 1];
+			float x = coordinates[start];
+			float y = coordinates[start + 1];
+			if (types[primitive] == typeEllipse) {
+				float margin = strokeWidths[primitive] / 2;
+				minX = Math.min(minX, x - coordinates[start + 2] - margin);
+				maxX = Math.max(maxX, x + coordinates[start + 2] + margin);
+				minY = Math.min(minY, y - coordinates[start + 3] - margin);
+				maxY = Math.max(maxY, y + coordinates[start + 3] + margin);
+			} else if (types[primitive] == typeText) {
+				//estimate the extent of the text
+				int text = textIndices[primitive];
+				float size = strokeWidths[primitive];
+				float width = 0.6f * size * texts[text].length();
+				float left = textAnchors[text] == anchorStart ? x
+						: (textAnchors[text] == anchorMiddle ? x - width / 2 : x - width);
+				minX = Math.min(minX, left);
+				maxX = Math.max(maxX, left + width);
+				minY = Math.min(minY, y - size);
+				maxY = Math.max(maxY, y + size * 0.3f);
+			} else {
+				float margin = strokeWidths[primitive] / 2;
+				for (int i = start; i + 1 < coordinateEnds[primitive]; i += 2) {
+					minX = Math.min(minX, coordinates[i] - margin);
+					maxX = Math.max(maxX, coordinates[i] + margin);
+					minY = Math.min(minY, coordinates[i + 1] - margin);
+					maxY = Math.max(maxY, coordinates[i + 1] + margin);
+				}
+			}
+		}
+		groupBounds[group * 4] = minX;
+		groupBounds[group * 4 + 1] = minY;
+		groupBounds[group * 4 + 2] = maxX;
+		groupBounds[group * 4 + 3] = maxY;
+
+		groupStart = numberOfPrimitives;
+		numberOfGroups = group + 1;
+
+		//make the group visible to renderers
+		snapshot = new Snapshot(this);
+	}
+
+	void setComplete() {
+		complete = true;
+	}
+
+	/**
+	 *
+	 * @return An estimate of the memory used by the arrays of the scene, in
+	 *         bytes.
+	 */
+	public long getMemorySize() {
+		return groupIds.length * (4L + 1 + 16 + 4) + types.length * (1L + 4 + 4 + 4 + 4 + 4 + 4)
+				+ coordinates.length * 4L + texts.length * (4L + 1 + 4);
+	}
+
+	public String toString() {
+		return "scene of " + numberOfGroups + " groups, " + numberOfPrimitives + " primitives, "
+				+ numberOfCoordinates / 2 + " points";
+	}
+}
@@ -0,0 +1,572 @@
+package org.processmining.plugins.graphviz.visualisation;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.kitfox.svg.xml.ColorTable;
+
+/**
+ * Reads svg as written by Graphviz into an SVGScene, while the svg is being
+ * read from a stream (StAX). No document tree is built: each element is
+ * added to the scene as soon as it has been read, and each group becomes
+ * visible to renderers as soon as it has been closed. Hence, the scene can be
+ * shown while the dot process is still writing its output.
+ *
+ * Only the subset of svg that Graphviz uses is supported: groups with
+ * transformations, and paths (absolute M, L and C commands), polygons,
+ * polylines, ellipses and texts with attribute styles.
+ *
+ * @author sander
+ *
+ */
+public class SVGSceneLoader {
+
+	/**
+	 * The number of groups after which the progress callback is called.
+	 */
+	public static final int progressInterval = 512;
+
+	private static final XMLInputFactory factory;
+	static {
+		factory = XMLInputFactory.newInstance();
+		//Graphviz refers to the svg dtd, which must not be fetched
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
+
+	private final SVGScene scene;
+	private final Runnable progress;
+	private final Map<String, Integer> colours = new HashMap<>();
+	private final StringBuilder text = new StringBuilder();
+	private final float[] numbers = new float[2];
+
+	/**
+	 * Per open g element: the transformation and whether it is a node,
+	 * edge, cluster or graph group.
+	 */
+	private final Deque<Frame> frames = new ArrayDeque<>();
+	private AffineTransform transform = new AffineTransform();
+	private String groupId = null;
+	private byte groupKind = SVGScene.kindGraph;
+	private int groupsSinceProgress = 0;
+
+	/**
+	 *
+	 * @param scene
+	 *            An empty scene to load into.
+	 * @param progress
+	 *            Called on the loading thread every progressInterval groups
+	 *            and once at the end; may be null.
+	 */
+	public SVGSceneLoader(SVGScene scene, Runnable progress) {
+		this.scene = scene;
+		this.progress = progress;
+	}
+
+	/**
+	 * Reads the svg into a new scene.
+	 *
+	 * @param input
+	 *            Is not closed.
+	 * @return the scene
+	 * @throws IOException
+	 */
+	public static SVGScene read(InputStream input) throws IOException {
+		SVGScene result = new SVGScene();
+		new SVGSceneLoader(result, null).load(input);
+		return result;
+	}
+
+	/**
+	 * Reads the svg into the scene of this loader. Returns at the end of the
+	 * svg document; the stream may not have been read completely.
+	 *
+	 * @param input
+	 *            Is not closed.
+	 * @throws IOException
+	 */
+	public void load(InputStream input) throws IOException {
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(input, "UTF-8");
+			try {
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						startElement(reader);
+					} else if (event == XMLStreamConstants.END_ELEMENT) {
+						if (endElement(reader.getLocalName())) {
+							break;
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			scene.setComplete();
+			if (progress != null) {
+				progress.run();
+			}
+		}
+	}
+
+	private void startElement(XMLStreamReader reader) throws XMLStreamException {
+		String name = reader.getLocalName();
+		switch (name) {
+			case "svg" :
+				startSvg(reader);
+				break;
+			case "g" :
+				startGroup(reader);
+				break;
+			case "polygon" :
+				addPoints(reader, SVGScene.typePolygon);
+				break;
+			case "polyline" :
+				addPoints(reader, SVGScene.typePolyline);
+				break;
+			case "path" :
+				addPath(reader);
+				break;
+			case "ellipse" :
+				addEllipse(reader);
+				break;
+			case "text" :
+				addText(reader);
+				break;
+			default :
+				//title, a, comments: nothing to draw
+		}
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @return whether the document has ended.
+	 */
+	private boolean endElement(String name) {
+		if (name.equals("g")) {
+			Frame frame = frames.pop();
+			transform = frame.transform;
+			if (frame.group) {
+				endGroup();
+				groupId = frame.groupId;
+				groupKind = frame.groupKind;
+			}
+		} else if (name.equals("svg") && frames.isEmpty()) {
+			endGroup();
+			return true;
+		}
+		return false;
+	}
+
+	private void startSvg(XMLStreamReader reader) {
+		if (!frames.isEmpty()) {
+			return;
+		}
+		float width = parseLength(reader.getAttributeValue(null, "width"));
+		float height = parseLength(reader.getAttributeValue(null, "height"));
+		String viewBox = reader.getAttributeValue(null, "viewBox");
+		if (viewBox != null) {
+			String[] parts = viewBox.trim().split("[\\s,]+");
+			if (parts.length == 4) {
+				float x = Float.parseFloat(parts[0]);
+				float y = Float.parseFloat(parts[1]);
+				float w = Float.parseFloat(parts[2]);
+				float h = Float.parseFloat(parts[3]);
+				if (width <= 0 || height <= 0) {
+					width = w;
+					height = h;
+				}
+				transform.scale(width / w, height / h);
+				transform.translate(-x, -y);
+			}
+		}
+		scene.setViewRect(new Rectangle2D.Float(0, 0, width, height));
+	}
+
+	private void startGroup(XMLStreamReader reader) {
+		Frame frame = new Frame(transform, groupId, groupKind);
+		String transformation = reader.getAttributeValue(null, "transform");
+		if (transformation != null) {
+			transform = new AffineTransform(transform);
+			applyTransformation(transform, transformation);
+		}
+		String kind = reader.getAttributeValue(null, "class");
+		if (kind != null) {
+			byte newKind;
+			switch (kind) {
+				case "node" :
+					newKind = SVGScene.kindNode;
+					break;
+				case "edge" :
+					newKind = SVGScene.kindEdge;
+					break;
+				case "cluster" :
+					newKind = SVGScene.kindCluster;
+					break;
+				case "graph" :
+					newKind = SVGScene.kindGraph;
+					break;
+				default :
+					newKind = -1;
+			}
+			if (newKind >= 0) {
+				endGroup();
+				frame.group = true;
+				groupKind = newKind;
+				groupId = reader.getAttributeValue(null, "id");
+			}
+		}
+		frames.push(frame);
+	}
+
+	private void endGroup() {
+		scene.endGroup(groupId, groupKind);
+		groupsSinceProgress++;
+		if (progress != null && groupsSinceProgress >= progressInterval) {
+			groupsSinceProgress = 0;
+			progress.run();
+		}
+	}
+
+	private void addPoints(XMLStreamReader reader, byte type) {
+		String points = reader.getAttributeValue(null, "points");
+		if (points == null) {
+			return;
+		}
+		int position = 0;
+		while ((position = parseNumbers(points, position, 2)) >= 0) {
+			addPoint(numbers[0], numbers[1]);
+		}
+		addShape(reader, type);
+	}
+
+	private void addPath(XMLStreamReader reader) {
+		String d = reader.getAttributeValue(null, "d");
+		if (d == null) {
+			return;
+		}
+		float lastX = 0;
+		float lastY = 0;
+		char command = 'M';
+		boolean started = false;
+		int position = 0;
+		while (position < d.length()) {
+			char c = d.charAt(position);
+			if (Character.isLetter(c)) {
+				command = c;
+				position++;
+				continue;
+			}
+			if (c == ' ' || c == ',' || c == '\n' || c == '\t' || c == '\r') {
+				position++;
+				continue;
+			}
+			switch (command) {
+				case 'M' :
+					if ((position = parseNumbers(d, position, 2)) < 0) {
+						return;
+					}
+					if (started) {
+						//a new subpath becomes a new primitive
+						addShape(reader, SVGScene.typePath);
+					}
+					started = true;
+					lastX = numbers[0];
+					lastY = numbers[1];
+					addPoint(lastX, lastY);
+					//further pairs are lines
+					command = 'L';
+					break;
+				case 'L' :
+					if (!started || (position = parseNumbers(d, position, 2)) < 0) {
+						return;
+					}
+					addPoint(lastX, lastY);
+					addPoint(numbers[0], numbers[1]);
+					addPoint(numbers[0], numbers[1]);
+					lastX = numbers[0];
+					lastY = numbers[1];
+					break;
+				case 'C' :
+					for (int i = 0; i < 3; i++) {
+						if (!started || (position = parseNumbers(d, position, 2)) < 0) {
+							scene.discardCoordinates();
+							return;
+						}
+						addPoint(numbers[0], numbers[1]);
+					}
+					lastX = numbers[0];
+					lastY = numbers[1];
+					break;
+				default :
+					//not written by Graphviz
+					scene.discardCoordinates();
+					return;
+			}
+		}
+		if (started) {
+			addShape(reader, SVGScene.typePath);
+		}
+	}
+
+	private void addEllipse(XMLStreamReader reader) {
+		Point2D.Float centre = new Point2D.Float(parseFloat(reader.getAttributeValue(null, "cx")),
+				parseFloat(reader.getAttributeValue(null, "cy")));
+		transform.transform(centre, centre);
+		//rotations are not supported for ellipses
+		scene.addCoordinate(centre.x, centre.y);
+		scene.addCoordinate((float) (parseFloat(reader.getAttributeValue(null, "rx")) * transform.getScaleX()),
+				(float) (parseFloat(reader.getAttributeValue(null, "ry")) * transform.getScaleY()));
+		addShape(reader, SVGScene.typeEllipse);
+	}
+
+	private void addText(XMLStreamReader reader) throws XMLStreamException {
+		Point2D.Float position = new Point2D.Float(parseFloat(reader.getAttributeValue(null, "x")),
+				parseFloat(reader.getAttributeValue(null, "y")));
+		transform.transform(position, position);
+		String family = reader.getAttributeValue(null, "font-family");
+		if (family == null) {
+			family = Font.SERIF;
+		} else {
+			//Graphviz gives a list of families, the first one is the requested one
+			int comma = family.indexOf(',');
+			if (comma >= 0) {
+				family = family.substring(0, comma);
+			}
+			family = family.trim().intern();
+		}
+		String sizeValue = reader.getAttributeValue(null, "font-size");
+		float size = (float) ((sizeValue == null ? 14 : parseFloat(sizeValue)) * Math.abs(transform.getScaleY()));
+		byte style = Font.PLAIN;
+		if ("bold".equals(reader.getAttributeValue(null, "font-weight"))) {
+			style |= Font.BOLD;
+		}
+		if ("italic".equals(reader.getAttributeValue(null, "font-style"))) {
+			style |= Font.ITALIC;
+		}
+		String anchorValue = reader.getAttributeValue(null, "text-anchor");
+		byte anchor = SVGScene.anchorStart;
+		if ("middle".equals(anchorValue)) {
+			anchor = SVGScene.anchorMiddle;
+		} else if ("end".equals(anchorValue)) {
+			anchor = SVGScene.anchorEnd;
+		}
+		int fill = getColour(reader.getAttributeValue(null, "fill"), reader.getAttributeValue(null, "fill-opacity"),
+				0xFF000000);
+
+		//the content of the text, including the content of nested elements
+		text.setLength(0);
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				text.append(reader.getText());
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+		if (text.length() > 0 && fill != 0) {
+			scene.addText(position.x, position.y, text.toString(), family, style, size, anchor, fill);
+		}
+	}
+
+	private void addPoint(float x, float y) {
+		Point2D.Float point = new Point2D.Float(x, y);
+		transform.transform(point, point);
+		scene.addCoordinate(point.x, point.y);
+	}
+
+	private void addShape(XMLStreamReader reader, byte type) {
+		int fill = getColour(reader.getAttributeValue(null, "fill"), reader.getAttributeValue(null, "fill-opacity"),
+				0xFF000000);
+		int stroke = getColour(reader.getAttributeValue(null, "stroke"),
+				reader.getAttributeValue(null, "stroke-opacity"), 0);
+		if (fill == 0 && stroke == 0) {
+			scene.discardCoordinates();
+			return;
+		}
+		String widthValue = reader.getAttributeValue(null, "stroke-width");
+		float width = (float) ((widthValue == null ? 1 : parseFloat(widthValue)) * Math.abs(transform.getScaleX()));
+		int dash = -1;
+		String dashValue = reader.getAttributeValue(null, "stroke-dasharray");
+		if (dashValue != null && !dashValue.equals("none")) {
+			String[] parts = dashValue.trim().split("[\\s,]+");
+			float[] pattern = new float[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				pattern[i] = parseFloat(parts[i]);
+			}
+			dash = scene.getDashPattern(pattern);
+		}
+		scene.addShape(type, stroke, fill, width, dash);
+	}
+
+	/**
+	 *
+	 * @return the colour as argb, 0 if the colour is none or unknown.
+	 */
+	private int getColour(String value, String opacity, int defaultColour) {
+		int result;
+		if (value == null) {
+			result = defaultColour;
+		} else {
+			Integer cached = colours.get(value);
+			if (cached == null) {
+				Color colour = null;
+				if (!value.equals("none") && !value.equals("transparent")) {
+					try {
+						colour = ColorTable.parseColor(value);
+					} catch (RuntimeException e) {
+						//unknown colour
+					}
+				}
+				cached = colour == null ? 0 : colour.getRGB();
+				colours.put(value, cached);
+			}
+			result = cached;
+		}
+		if (opacity != null && result != 0) {
+			int alpha = Math.round(Math.min(Math.max(parseFloat(opacity), 0), 1) * ((result >>> 24) & 0xFF));
+			result = (alpha << 24) | (result & 0xFFFFFF);
+		}
+		return result;
+	}
+
+	/**
+	 * Parses count numbers from position into numbers.
+	 *
+	 * @return the position after the numbers, or -1 if there are not enough
+	 *         numbers.
+	 */
+	private int parseNumbers(String value, int position, int count) {
+		int length = value.length();
+		for (int n = 0; n < count; n++) {
+			while (position < length && (value.charAt(position) == ' ' || value.charAt(position) == ','
+					|| value.charAt(position) == '\n' || value.charAt(position) == '\t'
+					|| value.charAt(position) == '\r')) {
+				position++;
+			}
+			int start = position;
+			while (position < length) {
+				char c = value.charAt(position);
+				if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E'
+						|| ((c == '-' || c == '+') && (position == start || value.charAt(position - 1) == 'e'
+								|| value.charAt(position - 1) == 'E'))) {
+					position++;
+				} else {
+					break;
+				}
+			}
+			if (start == position) {
+				return -1;
+			}
+			numbers[n] = Float.parseFloat(value.substring(start, position));
+		}
+		return position;
+	}
+
+	private static float parseFloat(String value) {
+		if (value == null) {
+			return 0;
+		}
+		try {
+			return Float.parseFloat(value.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return the length without its unit (Graphviz uses pt, which the
+	 *         SVGDiagram treats as user units as well).
+	 */
+	private static float parseLength(String value) {
+		if (value == null) {
+			return 0;
+		}
+		int end = value.length();
+		while (end > 0 && Character.isLetter(value.charAt(end - 1))) {
+			end--;
+		}
+		return parseFloat(value.substring(0, end));
+	}
+
+	/**
+	 * Applies an svg transform attribute, e.g. "scale(1 1) rotate(0)
+	 * translate(4 112)".
+	 */
+	static void applyTransformation(AffineTransform transform, String value) {
+		int position = 0;
+		while (true) {
+			int open = value.indexOf('(', position);
+			int close = value.indexOf(')', open + 1);
+			if (open < 0 || close < 0) {
+				return;
+			}
+			String name = value.substring(position, open).trim();
+			String[] parts = value.substring(open + 1, close).trim().split("[\\s,]+");
+			double[] arguments = new double[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				arguments[i] = parts[i].isEmpty() ? 0 : parseFloat(parts[i]);
+			}
+			switch (name) {
+				case "translate" :
+					transform.translate(arguments[0], arguments.length > 1 ? arguments[1] : 0);
+					break;
+				case "scale" :
+					transform.scale(arguments[0], arguments.length > 1 ? arguments[1] : arguments[0]);
+					break;
+				case "rotate" :
+					if (arguments.length >= 3) {
+						transform.rotate(Math.toRadians(arguments[0]), arguments[1], arguments[2]);
+					} else {
+						transform.rotate(Math.toRadians(arguments[0]));
+					}
+					break;
+				case "matrix" :
+					if (arguments.length == 6) {
+						transform.concatenate(new AffineTransform(arguments));
+					}
+					break;
+				default :
+					//skewX and skewY are not written by Graphviz
+			}
+			position = close + 1;
+		}
+	}
+
+	private static class Frame {
+		private final AffineTransform transform;
+		private final String groupId;
+		private final byte groupKind;
+		private boolean group = false;
+
+		public Frame(AffineTransform transform, String groupId, byte groupKind) {
+			this.transform = transform;
+			this.groupId = groupId;
+			this.groupKind = groupKind;
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package org.processmining.plugins.graphviz.visualisation;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+
+import com.kitfox.svg.SVGDiagram;
+import com.kitfox.svg.SVGElement;
+import com.kitfox.svg.SVGException;
+
+/**
+ * Backing store for a NavigableSVGPanel. The image is rasterised into square
+ * tiles per zoom level by a worker thread; painting only copies tiles. Tiles
+ * that are not ready yet are drawn from tiles of another zoom level, if
+ * available. As kitfox is not thread-safe, the tiles of an image are rendered
+ * one at a time on the shared SVGRenderQueue, holding the lock of the image
+ * (see NavigableSVGPanel.getLock()); tiles of different images are rendered
+ * concurrently.
+ *
+ * Changes to the image made through DotPanel.setCSSAttributeOf invalidate
+ * the tiles under the changed element (see
+ * NavigableSVGPanel.elementChanged()).
+ *
+ * @author sander
+ *
+ */
+public class SVGTileRenderer {
+
+	public static final int tileSize = 256;
+	public static final int defaultMaximumNumberOfTiles = 256;
+
+	private final Component component;
+	private final int maximumNumberOfTiles;
+	private SVGDiagram image;
+	private volatile double currentScale = 0;
+
+	private final LinkedHashMap<Tile, BufferedImage> tiles = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<Tile, Object> pending = new HashMap<>();
+
+	/**
+	 *
+	 * @param component
+	 *            The component that is repainted when a tile becomes
+	 *            available.
+	 * @param maximumNumberOfTiles
+	 *            The maximum number of tiles that is kept, over all zoom
+	 *            levels.
+	 */
+	public SVGTileRenderer(Component component, int maximumNumberOfTiles) {
+		this.component = component;
+		this.maximumNumberOfTiles = maximumNumberOfTiles;
+	}
+
+	/**
+	 * Sets the image to be rendered and discards all tiles.
+	 *
+	 * @param image
+	 */
+	public synchronized void setImage(SVGDiagram image) {
+		this.image = image;
+		tiles.clear();
+		pending.clear();
+	}
+
+	/**
+	 * Paints the image on g, which must be transformed to image coordinates.
+	 * Rotated or skewed transformations are painted directly.
+	 *
+	 * @param g
+	 */
+	public void paint(Graphics2D g) {
+		SVGDiagram image = this.image;
+		if (image == null) {
+			return;
+		}
+
+		AffineTransform transform = g.getTransform();
+		double scale = transform.getScaleX();
+		if (scale <= 0 || scale != transform.getScaleY() || transform.getShearX() != 0
+				|| transform.getShearY() != 0) {
+			try {
+				synchronized (NavigableSVGPanel.getLock(image)) {
+					image.render(g);
+				}
+			} catch (SVGException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		currentScale = scale;
+
+		//work in device coordinates
+		Shape oldClip = g.getClip();
+		g.setTransform(new AffineTransform());
+		int originX = (int) Math.round(transform.getTranslateX());
+		int originY = (int) Math.round(transform.getTranslateY());
+		int columns = (int) Math.ceil(image.getWidth() * scale / tileSize);
+		int rows = (int) Math.ceil(image.getHeight() * scale / tileSize);
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(originX, originY, columns * tileSize, rows * tileSize);
+		}
+
+		int fromColumn = Math.max(0, Math.floorDiv(clip.x - originX, tileSize));
+		int toColumn = Math.min(columns - 1, Math.floorDiv(clip.x + clip.width - 1 - originX, tileSize));
+		int fromRow = Math.max(0, Math.floorDiv(clip.y - originY, tileSize));
+		int toRow = Math.min(rows - 1, Math.floorDiv(clip.y + clip.height - 1 - originY, tileSize));
+
+		for (int row = fromRow; row <= toRow; row++) {
+			for (int column = fromColumn; column <= toColumn; column++) {
+				Tile tile = new Tile(scale, column, row);
+				int x = originX + column * tileSize;
+				int y = originY + row * tileSize;
+				BufferedImage bitmap;
+				synchronized (this) {
+					bitmap = tiles.get(tile);
+				}
+				if (bitmap != null) {
+					g.drawImage(bitmap, x, y, null);
+				} else {
+					schedule(tile, image);
+					paintFallback(g, tile, x, y, originX, originY);
+				}
+			}
+		}
+
+		g.setTransform(transform);
+		g.setClip(oldClip);
+	}
+
+	/**
+	 * Paints the tiles of other zoom levels that overlap with the given
+	 * (missing) tile.
+	 */
+	private void paintFallback(Graphics2D g, Tile missing, int x, int y, int originX, int originY) {
+		List<Entry<Tile, BufferedImage>> candidates;
+		synchronized (this) {
+			candidates = new ArrayList<>(tiles.size());
+			for (Entry<Tile, BufferedImage> entry : tiles.entrySet()) {
+				if (entry.getKey().scale != missing.scale
+						&& entry.getKey().getImageBounds().intersects(missing.getImageBounds())) {
+					candidates.add(entry);
+				}
+			}
+		}
+		if (candidates.isEmpty()) {
+			return;
+		}
+
+		Shape oldClip = g.getClip();
+		g.clipRect(x, y, tileSize, tileSize);
+		for (Entry<Tile, BufferedImage> entry : candidates) {
+			Tile tile = entry.getKey();
+			double factor = missing.scale / tile.scale;
+			AffineTransform transform = new AffineTransform();
+			transform.translate(originX + tile.column * tileSize * factor, originY + tile.row * tileSize * factor);
+			transform.scale(factor, factor);
+			g.drawImage(entry.getValue(), transform, null);
+		}
+		g.setClip(oldClip);
+	}
+
+	private void schedule(final Tile tile, final SVGDiagram image) {
+		final Object ticket = new Object();
+		synchronized (this) {
+			if (pending.containsKey(tile)) {
+				return;
+			}
+			pending.put(tile, ticket);
+		}
+
+		SVGRenderQueue.execute(NavigableSVGPanel.getLock(image), new Runnable() {
+			public void run() {
+				synchronized (SVGTileRenderer.this) {
+					//skip tiles that were invalidated or that belong to an abandoned zoom level
+					if (pending.get(tile) != ticket || tile.scale != currentScale) {
+						if (pending.get(tile) == ticket) {
+							pending.remove(tile);
+						}
+						return;
+					}
+				}
+
+				BufferedImage bitmap = render(tile, image);
+
+				synchronized (SVGTileRenderer.this) {
+					if (pending.get(tile) != ticket) {
+						return;
+					}
+					pending.remove(tile);
+					if (bitmap == null || SVGTileRenderer.this.image != image) {
+						return;
+					}
+					tiles.put(tile, bitmap);
+
+					//evict the least-recently used tiles
+					Iterator<Tile> it = tiles.keySet().iterator();
+					while (tiles.size() > maximumNumberOfTiles && it.hasNext()) {
+						it.next();
+						it.remove();
+					}
+				}
+				component.repaint();
+			}
+		});
+	}
+
+	private static BufferedImage render(Tile tile, SVGDiagram image) {
+		BufferedImage bitmap = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = bitmap.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.translate(-tile.column * tileSize, -tile.row * tileSize);
+			g.scale(tile.scale, tile.scale);
+			synchronized (NavigableSVGPanel.getLock(image)) {
+				image.render(g);
+			}
+			return bitmap;
+		} catch (SVGException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Waits until the tiles that have been scheduled so far are rendered or
+	 * skipped, e.g. to measure painting from a complete set of tiles.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void waitForScheduledTiles() throws InterruptedException {
+		SVGDiagram image = this.image;
+		if (image == null) {
+			return;
+		}
+		//the tasks of an image run in order
+		try {
+			SVGRenderQueue.execute(NavigableSVGPanel.getLock(image), new Runnable() {
+				public void run() {
+				}
+			}).get();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Discards all tiles.
+	 */
+	public synchronized void invalidate() {
+		tiles.clear();
+		pending.clear();
+		component.repaint();
+	}
+
+	/**
+	 * Discards the tiles that overlap with the given area.
+	 *
+	 * @param imageArea
+	 *            in image coordinates
+	 */
+	public synchronized void invalidate(Rectangle2D imageArea) {
+		Iterator<Tile> it = tiles.keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().getImageBounds().intersects(imageArea)) {
+				it.remove();
+			}
+		}
+		it = pending.keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().getImageBounds().intersects(imageArea)) {
+				it.remove();
+			}
+		}
+		component.repaint();
+	}
+
+	/**
+	 * Discards the tiles that show the given element.
+	 *
+	 * @param element
+	 */
+	public void invalidate(SVGElement element) {
+		Rectangle2D bounds = NavigableSVGPanel.getBoundingBoxInImageCoordinates(element);
+		if (bounds == null) {
+			invalidate();
+		} else {
+			//strokes and anti-aliasing may extend beyond the bounding box
+			invalidate(new Rectangle2D.Double(bounds.getX() - 2, bounds.getY() - 2, bounds.getWidth() + 4,
+					bounds.getHeight() + 4));
+		}
+	}
+
+	private static class Tile {
+		private final double scale;
+		private final int column;
+		private final int row;
+
+		public Tile(double scale, int column, int row) {
+			this.scale = scale;
+			this.column = column;
+			this.row = row;
+		}
+
+		/**
+		 *
+		 * @return The area of the image covered by this tile.
+		 */
+		public Rectangle2D getImageBounds() {
+			double size = tileSize / scale;
+			return new Rectangle2D.Double(column * size, row * size, size, size);
+		}
+
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(scale);
+			return (int) (bits ^ (bits >>> 32)) * 31 * 31 + column * 31 + row;
+		}
+
+		public boolean equals(Object object) {
+			if (!(object instanceof Tile)) {
+				return false;
+			}
+			Tile other = (Tile) object;
+			return scale == other.scale && column == other.column && row == other.row;
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package org.processmining.plugins.graphviz.visualisation.export;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
 
 import org.processmining.plugins.graphviz.visualisation.DotPanel;
 import org.processmining.plugins.graphviz.visualisation.NavigableSVGPanel;
@@ -19,9 +21,10 @@ public class ExporterDot extends Exporter {
 
 	public void export(NavigableSVGPanel panel, File file) throws Exception {
 		if (panel instanceof DotPanel) {
-			PrintWriter writer = new PrintWriter(file);
-			writer.print(((DotPanel) panel).getDot());
-			writer.close();
+			try (BufferedWriter writer = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+				((DotPanel) panel).getDot().writeTo(writer);
+			}
 		}
 	}
 
@@ -0,0 +1,64 @@
+package org.processmining.plugins.graphviz.visualisation.export;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.processmining.plugins.graphviz.dot.Dot;
+import org.processmining.plugins.graphviz.dot.Dot2Image;
+import org.processmining.plugins.graphviz.dot.Dot2Image.Type;
+import org.processmining.plugins.graphviz.dot.Dot2ImageCache;
+import org.processmining.plugins.graphviz.visualisation.DotPanel;
+import org.processmining.plugins.graphviz.visualisation.NavigableSVGPanel;
+
+/**
+ * Writes the image as produced by Graphviz itself, rather than painting the
+ * panel. The output is taken from the Dot2ImageCache if it is there (for svg,
+ * it usually is, as the panel shows it), so no layout or rendering in Java is
+ * needed. Styles that were only applied to the panel (e.g. selection) are not
+ * exported.
+ * 
+ * Panels that do not show a Dot are exported by painting them.
+ * 
+ * @author sander
+ *
+ */
+public class ExporterGraphviz extends Exporter {
+
+	private final Type type;
+
+	public ExporterGraphviz(Type type) {
+		this.type = type;
+	}
+
+	protected String getExtension() {
+		return type.toString();
+	}
+
+	public String getDescription() {
+		return type + " (as rendered by Graphviz)";
+	}
+
+	public void export(NavigableSVGPanel panel, File file) throws Exception {
+		if (panel instanceof DotPanel) {
+			Dot dot = ((DotPanel) panel).getDot();
+			if (!Dot2ImageCache.getDefault().dot2image(dot, file, type, Dot2Image.getEngine(dot))) {
+				throw new IOException("Graphviz-dot could not export to " + file);
+			}
+			return;
+		}
+
+		switch (type) {
+			case png :
+				new ExporterPNG().export(panel, file);
+				break;
+			case pdf :
+				new ExporterPDF().export(panel, file);
+				break;
+			case svg :
+				new ExporterSVG().export(panel, file);
+				break;
+			default :
+				throw new IOException("Only graphs can be exported as " + type);
+		}
+	}
+}
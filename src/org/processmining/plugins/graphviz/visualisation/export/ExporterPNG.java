@@ -2,27 +2,185 @@ package org.processmining.plugins.graphviz.visualisation.export;
 
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
 import java.io.File;
-
-import javax.imageio.ImageIO;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
 import org.processmining.plugins.graphviz.visualisation.NavigableSVGPanel;
+import org.processmining.plugins.graphviz.visualisation.export.PNGEncoder.CompressedRows;
 
+/**
+ * Exports the image as PNG. The image is printed in horizontal strips, one
+ * after the other, as the diagram cannot be rendered by several threads at
+ * once; each strip renders only the groups that intersect with it (see
+ * NavigableSVGPanel.printArea). The strips are compressed in parallel while
+ * the next ones are printed, and written in order. The strips are as tall as
+ * the free memory allows for the strips in flight, up to a maximum size.
+ *
+ * @author sander
+ *
+ */
 public class ExporterPNG extends Exporter {
 
+	/**
+	 * The maximum size of a strip, in bytes.
+	 */
+	private static final long maximumStripBytes = 256L << 20;
+
+	/**
+	 * The part of the free memory that the strips in flight may use.
+	 */
+	private static final double stripMemoryShare = 0.5;
+
+	/**
+	 * Strokes and anti-aliasing may extend beyond the bounding boxes of the
+	 * groups, in image units.
+	 */
+	private static final double stripMargin = 2;
+
+	private static final ExecutorService stripEncoders = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "PNG strip encoder " + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final double scale;
+	private final int compressionLevel;
+
+	public ExporterPNG() {
+		this(1, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 *
+	 * @param scale
+	 *            The number of pixels per image unit; 1 corresponds to 72
+	 *            DPI.
+	 * @param compressionLevel
+	 *            0 (none, fastest) to 9 (best, slowest), or
+	 *            Deflater.DEFAULT_COMPRESSION.
+	 */
+	public ExporterPNG(double scale, int compressionLevel) {
+		this.scale = scale;
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 *
+	 * @param dpi
+	 * @param compressionLevel
+	 * @return an exporter that renders the image at the given resolution.
+	 */
+	public static ExporterPNG withDPI(double dpi, int compressionLevel) {
+		return new ExporterPNG(dpi / 72, compressionLevel);
+	}
+
 	protected String getExtension() {
 		return "png";
 	}
 
 	public void export(NavigableSVGPanel panel, File file) throws Exception {
-		float width = (float) panel.getImage().getViewRect().getWidth();
-		float height = (float) panel.getImage().getViewRect().getHeight();
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+			export(panel, output);
+		}
+	}
+
+	/**
+	 * Prints the image of the panel and writes it as PNG to output.
+	 *
+	 * @param panel
+	 * @param output
+	 *            Is not closed.
+	 * @throws Exception
+	 */
+	public void export(NavigableSVGPanel panel, OutputStream output) throws Exception {
+		Rectangle2D viewRect = panel.getImage().getViewRect();
+		int width = Math.max(1, (int) Math.round(viewRect.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(viewRect.getHeight() * scale));
+
+		//keep a bounded number of strips in flight
+		int inFlight = Runtime.getRuntime().availableProcessors() * 2;
+		int stripHeight = getStripHeight(width, height, inFlight + 1);
+		int strips = (height + stripHeight - 1) / stripHeight;
+
+		final PNGEncoder encoder = new PNGEncoder(output, width, height, compressionLevel, 72 * scale);
+		Deque<Future<CompressedRows>> pending = new ArrayDeque<>();
+		try {
+			for (int strip = 0; strip < strips; strip++) {
+				final int y = strip * stripHeight;
+				final int rows = Math.min(stripHeight, height - y);
+				final int[] pixels = printStrip(panel, viewRect, width, rows, y);
+				final int stride = width;
+				if (pending.size() >= inFlight) {
+					encoder.writeCompressedRows(pending.poll().get());
+				}
+				pending.add(stripEncoders.submit(new Callable<CompressedRows>() {
+					public CompressedRows call() throws Exception {
+						return encoder.compressRows(pixels, 0, stride, rows);
+					}
+				}));
+			}
+			while (!pending.isEmpty()) {
+				encoder.writeCompressedRows(pending.poll().get());
+			}
+		} finally {
+			for (Future<CompressedRows> future : pending) {
+				future.cancel(true);
+			}
+		}
+		encoder.finish();
+	}
+
+	/**
+	 * 
+	 * @param width
+	 * @param height
+	 * @param strips
+	 *            the number of strips that may be in memory at once
+	 * @return the number of rows of a strip.
+	 */
+	private static int getStripHeight(int width, int height, int strips) {
+		Runtime runtime = Runtime.getRuntime();
+		long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		long bytes = Math.min(maximumStripBytes, (long) (free * stripMemoryShare / strips));
+		long rows = bytes / (4L * width);
+		return (int) Math.max(1, Math.min(height, rows));
+	}
 
-		BufferedImage bi = new BufferedImage(Math.round(width), Math.round(height), BufferedImage.TYPE_INT_ARGB);
+	private int[] printStrip(NavigableSVGPanel panel, Rectangle2D viewRect, int width, int rows, int y) {
+		BufferedImage bi = new BufferedImage(width, rows, BufferedImage.TYPE_INT_ARGB);
 		Graphics2D g = bi.createGraphics();
-		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		panel.print(g);
-		ImageIO.write(bi, "PNG", file);
+		try {
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.translate(0, -y);
+			g.scale(scale, scale);
+			g.translate(-viewRect.getX(), -viewRect.getY());
+			//the strip in image coordinates; the bitmap clips to it
+			Rectangle2D area = new Rectangle2D.Double(viewRect.getX() - stripMargin,
+					viewRect.getY() + y / scale - stripMargin, viewRect.getWidth() + 2 * stripMargin,
+					rows / scale + 2 * stripMargin);
+			panel.printArea(g, area);
+		} finally {
+			g.dispose();
+		}
+		return ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
 	}
 }
\ No newline at end of file
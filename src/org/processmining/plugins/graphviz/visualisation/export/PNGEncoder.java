@@ -0,0 +1,305 @@
+package org.processmining.plugins.graphviz.visualisation.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG image (8-bit RGBA) scanline by scanline, such that the image
+ * never has to be in memory as a whole. Rows must be written from top to
+ * bottom; the image data is compressed while it is written.
+ *
+ * Alternatively, strips of rows can be compressed independently, on any
+ * thread, by compressRows(), and then be written in order by
+ * writeCompressedRows(). The strips are deflated separately and joined into
+ * one zlib stream, as pigz does.
+ *
+ * @author sander
+ *
+ */
+public class PNGEncoder {
+
+	private static final byte[] signature = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+	private static final int maximumChunkSize = 64 * 1024;
+
+	private final OutputStream output;
+	private final int width;
+	private final int height;
+	private final int compressionLevel;
+	private final byte[] scanline;
+	private int rowsWritten = 0;
+
+	//rows written uncompressed
+	private Deflater deflater = null;
+	private DeflaterOutputStream data = null;
+
+	//rows written compressed: the checksum of the zlib stream so far
+	private long adler = -1;
+
+	/**
+	 * Rows that have been compressed independently of the other rows.
+	 */
+	public static class CompressedRows {
+		private final byte[] data;
+		private final int rows;
+		private final long length;
+		private final long adler;
+
+		private CompressedRows(byte[] data, int rows, long length, long adler) {
+			this.data = data;
+			this.rows = rows;
+			this.length = length;
+			this.adler = adler;
+		}
+	}
+
+	/**
+	 *
+	 * @param output
+	 *            Is not closed by the encoder.
+	 * @param width
+	 * @param height
+	 * @param compressionLevel
+	 *            0 (none, fastest) to 9 (best, slowest), or
+	 *            Deflater.DEFAULT_COMPRESSION.
+	 * @param dpi
+	 *            The resolution to store in the image, or 0 to store none.
+	 * @throws IOException
+	 */
+	public PNGEncoder(OutputStream output, int width, int height, int compressionLevel, double dpi)
+			throws IOException {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("a png image cannot be empty");
+		}
+		this.output = output;
+		this.width = width;
+		this.height = height;
+		this.compressionLevel = compressionLevel;
+		scanline = new byte[1 + width * 4];
+
+		output.write(signature);
+
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8; //bit depth
+		header[9] = 6; //colour type: RGBA
+		header[10] = 0; //compression: deflate
+		header[11] = 0; //filter method
+		header[12] = 0; //no interlacing
+		writeChunk("IHDR", header, 0, header.length);
+
+		if (dpi > 0) {
+			int pixelsPerMetre = (int) Math.round(dpi / 0.0254);
+			byte[] physical = new byte[9];
+			putInt(physical, 0, pixelsPerMetre);
+			putInt(physical, 4, pixelsPerMetre);
+			physical[8] = 1; //unit: metre
+			writeChunk("pHYs", physical, 0, physical.length);
+		}
+	}
+
+	/**
+	 * Writes the next rows of the image.
+	 *
+	 * @param argb
+	 *            Pixels in the format of BufferedImage.TYPE_INT_ARGB
+	 *            (non-premultiplied).
+	 * @param offset
+	 *            The index of the first pixel of the first row.
+	 * @param stride
+	 *            The distance between the first pixels of consecutive rows.
+	 * @param rows
+	 * @throws IOException
+	 */
+	public void writeRows(int[] argb, int offset, int stride, int rows) throws IOException {
+		if (rowsWritten + rows > height) {
+			throw new IllegalStateException("more rows than the height of the image");
+		}
+		if (adler >= 0) {
+			throw new IllegalStateException("rows have been written compressed already");
+		}
+		if (data == null) {
+			deflater = new Deflater(compressionLevel);
+			data = new DeflaterOutputStream(new ChunkOutputStream(), deflater, maximumChunkSize);
+		}
+		for (int row = 0; row < rows; row++) {
+			putScanline(argb, offset + row * stride, scanline, 0);
+			data.write(scanline);
+		}
+		rowsWritten += rows;
+	}
+
+	/**
+	 * Compresses rows of the image, independently of the other rows. May be
+	 * called concurrently, from any thread.
+	 *
+	 * @param argb
+	 *            Pixels in the format of BufferedImage.TYPE_INT_ARGB
+	 *            (non-premultiplied).
+	 * @param offset
+	 *            The index of the first pixel of the first row.
+	 * @param stride
+	 *            The distance between the first pixels of consecutive rows.
+	 * @param rows
+	 * @return the compressed rows, to be passed to writeCompressedRows().
+	 */
+	public CompressedRows compressRows(int[] argb, int offset, int stride, int rows) {
+		byte[] raw = new byte[rows * scanline.length];
+		for (int row = 0; row < rows; row++) {
+			putScanline(argb, offset + row * stride, raw, row * scanline.length);
+		}
+		Adler32 checksum = new Adler32();
+		checksum.update(raw, 0, raw.length);
+
+		//end with a sync flush, such that the next strip starts on a byte boundary
+		Deflater strip = new Deflater(compressionLevel, true);
+		try {
+			strip.setInput(raw);
+			ByteArrayOutputStream result = new ByteArrayOutputStream(raw.length / 4 + 64);
+			byte[] buffer = new byte[maximumChunkSize];
+			int length;
+			do {
+				length = strip.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+				result.write(buffer, 0, length);
+			} while (length == buffer.length);
+			return new CompressedRows(result.toByteArray(), rows, raw.length, checksum.getValue());
+		} finally {
+			strip.end();
+		}
+	}
+
+	/**
+	 * Writes the next rows of the image, which have been compressed by
+	 * compressRows(). Cannot be combined with writeRows().
+	 *
+	 * @param rows
+	 * @throws IOException
+	 */
+	public void writeCompressedRows(CompressedRows rows) throws IOException {
+		if (rowsWritten + rows.rows > height) {
+			throw new IllegalStateException("more rows than the height of the image");
+		}
+		if (data != null) {
+			throw new IllegalStateException("rows have been written uncompressed already");
+		}
+		if (adler < 0) {
+			//zlib header: deflate with a 32K window, default compression
+			writeChunk("IDAT", new byte[] { 0x78, (byte) 0x9C }, 0, 2);
+			adler = 1;
+		}
+		new ChunkOutputStream().write(rows.data, 0, rows.data.length);
+		adler = combineAdler32(adler, rows.adler, rows.length);
+		rowsWritten += rows.rows;
+	}
+
+	/**
+	 * Completes the image. The output stream is flushed, not closed.
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (rowsWritten != height) {
+			throw new IllegalStateException("only " + rowsWritten + " of " + height + " rows have been written");
+		}
+		if (data != null) {
+			data.finish();
+			deflater.end();
+		} else {
+			//an empty final block and the checksum end the zlib stream
+			byte[] end = new byte[6];
+			end[0] = 0x03;
+			end[1] = 0x00;
+			putInt(end, 2, (int) adler);
+			writeChunk("IDAT", end, 0, end.length);
+		}
+		writeChunk("IEND", new byte[0], 0, 0);
+		output.flush();
+	}
+
+	private void writeChunk(String type, byte[] buffer, int offset, int length) throws IOException {
+		byte[] typeBytes = type.getBytes("US-ASCII");
+		byte[] number = new byte[4];
+		putInt(number, 0, length);
+		output.write(number);
+		output.write(typeBytes);
+		output.write(buffer, offset, length);
+
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(buffer, offset, length);
+		putInt(number, 0, (int) crc.getValue());
+		output.write(number);
+	}
+
+	/**
+	 * Converts a row of pixels to a scanline without filter.
+	 */
+	private void putScanline(int[] argb, int p, byte[] buffer, int offset) {
+		buffer[offset] = 0; //filter: none
+		for (int x = 0, i = offset + 1; x < width; x++, i += 4) {
+			int pixel = argb[p + x];
+			buffer[i] = (byte) (pixel >> 16);
+			buffer[i + 1] = (byte) (pixel >> 8);
+			buffer[i + 2] = (byte) pixel;
+			buffer[i + 3] = (byte) (pixel >> 24);
+		}
+	}
+
+	/**
+	 *
+	 * @return the Adler-32 checksum of two concatenated byte sequences, given
+	 *         their checksums and the length of the second (as zlib's
+	 *         adler32_combine).
+	 */
+	private static long combineAdler32(long adler1, long adler2, long length2) {
+		final long base = 65521;
+		long remainder = length2 % base;
+		long sum1 = adler1 & 0xFFFF;
+		long sum2 = (remainder * sum1) % base;
+		sum1 += (adler2 & 0xFFFF) + base - 1;
+		sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + base - remainder;
+		if (sum1 >= base) {
+			sum1 -= base;
+		}
+		if (sum1 >= base) {
+			sum1 -= base;
+		}
+		if (sum2 >= (base << 1)) {
+			sum2 -= (base << 1);
+		}
+		if (sum2 >= base) {
+			sum2 -= base;
+		}
+		return sum1 | (sum2 << 16);
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * Wraps the compressed data into IDAT chunks.
+	 */
+	private class ChunkOutputStream extends OutputStream {
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int length = Math.min(len, maximumChunkSize);
+				writeChunk("IDAT", b, off, length);
+				off += length;
+				len -= length;
+			}
+		}
+	}
+}
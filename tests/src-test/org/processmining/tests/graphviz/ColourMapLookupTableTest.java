@@ -0,0 +1,109 @@
+package org.processmining.tests.graphviz;
+
+import java.awt.Color;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.plugins.graphviz.colourMaps.ColourMap;
+import org.processmining.plugins.graphviz.colourMaps.ColourMapLookupTable;
+
+public class ColourMapLookupTableTest extends TestCase {
+
+  /**
+   * Maps [0, 1] to the grey values 0 .. 200, with an alpha of 100.
+   */
+  private static final ColourMap grey = new ColourMap() {
+    public Color colour(long weight, long maxWeight) {
+      return colour(weight / (double) maxWeight);
+    }
+
+    public Color colour(double value) {
+      int grey = (int) Math.round(value * 200);
+      return new Color(grey, grey, grey, 100);
+    }
+  };
+
+  @Test
+  public void testBoundaries() throws Throwable {
+    ColourMapLookupTable table = grey.compile(5);
+    assertEquals(5, table.getResolution());
+    assertEquals(grey.colour(0), table.colour(0));
+    assertEquals(grey.colour(1), table.colour(1));
+    assertEquals(grey.colour(0.5), table.colour(0.5));
+    assertEquals(grey.colour(1).getRGB(), table.argb(1));
+    assertEquals(ColourMap.toHexString(grey.colour(1)), table.hexString(1));
+    assertEquals(ColourMap.toHexAlphaString(grey.colour(0)), table.hexAlphaString(0));
+  }
+
+  @Test
+  public void testRounding() throws Throwable {
+    //samples at 0, 0.25, 0.5, 0.75 and 1
+    ColourMapLookupTable table = grey.compile(5);
+    assertEquals(grey.colour(0).getRGB(), table.argb(0.12));
+    assertEquals(grey.colour(0.25).getRGB(), table.argb(0.13));
+    assertEquals(grey.colour(0.75).getRGB(), table.argb(0.874));
+    assertEquals(grey.colour(1).getRGB(), table.argb(0.876));
+    assertEquals(grey.colour(0.5), table.colour(1, 2));
+  }
+
+  @Test
+  public void testClamping() throws Throwable {
+    ColourMapLookupTable table = grey.compile(5);
+    assertEquals(table.argb(0), table.argb(-0.5));
+    assertEquals(table.argb(0), table.argb(Double.NEGATIVE_INFINITY));
+    assertEquals(table.argb(1), table.argb(1.5));
+    assertEquals(table.argb(1), table.argb(Double.POSITIVE_INFINITY));
+    assertEquals(table.colour(1), table.colour(3, 2));
+    assertEquals(table.hexString(1), table.hexString(Double.MAX_VALUE));
+  }
+
+  @Test
+  public void testNaN() throws Throwable {
+    ColourMapLookupTable table = grey.compile(5);
+    assertEquals(table.argb(0), table.argb(Double.NaN));
+    assertEquals(table.colour(0), table.colour(Double.NaN));
+    //0 / 0
+    assertEquals(table.colour(0), table.colour(0, 0));
+  }
+
+  @Test
+  public void testColourAll() throws Throwable {
+    ColourMapLookupTable table = grey.compile();
+    double[] values = { -1, 0, 0.1, 0.5, 0.999, 1, 2, Double.NaN };
+    int[] argb = new int[values.length];
+    table.colourAll(values, argb);
+    int[] parallelArgb = new int[values.length];
+    table.parallelColourAll(values, parallelArgb);
+    for (int i = 0; i < values.length; i++) {
+      assertEquals(table.argb(values[i]), argb[i]);
+      assertEquals(table.argb(values[i]), parallelArgb[i]);
+    }
+
+    try {
+      table.parallelColourAll(values, new int[values.length - 1]);
+      fail("arrays of different lengths were accepted");
+    } catch (IllegalArgumentException e) {
+      //expected
+    }
+  }
+
+  @Test
+  public void testResolution() throws Throwable {
+    ColourMapLookupTable table = grey.compile(2);
+    assertSame(table, table.compile(2));
+    assertEquals(3, table.compile(3).getResolution());
+    assertEquals(ColourMap.defaultLookupTableResolution, grey.compile().getResolution());
+    try {
+      grey.compile(1);
+      fail("a lookup table of one sample was created");
+    } catch (IllegalArgumentException e) {
+      //expected
+    }
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(ColourMapLookupTableTest.class);
+  }
+
+}
@@ -0,0 +1,155 @@
+package org.processmining.tests.graphviz;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.plugins.graphviz.dot.Dot;
+import org.processmining.plugins.graphviz.dot.DotEdge;
+import org.processmining.plugins.graphviz.dot.DotNode;
+
+public class DotClusterTest extends TestCase {
+
+  @Test
+  public void testSetSourceAndTarget() throws Throwable {
+    Dot dot = new Dot();
+    DotNode a = dot.addNode("a");
+    DotNode b = dot.addNode("b");
+    DotNode c = dot.addNode("c");
+    DotEdge edge = dot.addEdge(a, b);
+    //build the index
+    assertEquals(Collections.singletonList(edge), dot.getOutgoingEdges(a));
+
+    edge.setSource(c);
+    assertEquals(Collections.emptyList(), dot.getOutgoingEdges(a));
+    assertEquals(Collections.singletonList(edge), dot.getOutgoingEdges(c));
+    assertSame(edge, dot.getFirstEdge(c, b));
+    assertNull(dot.getFirstEdge(a, b));
+
+    edge.setTarget(a);
+    assertEquals(Collections.emptyList(), dot.getIncomingEdges(b));
+    assertEquals(Collections.singletonList(edge), dot.getIncomingEdges(a));
+    assertEquals(Collections.singletonList(edge), dot.getIncidentEdges(a));
+
+    //removal uses the new end points
+    dot.removeEdge(edge);
+    assertEquals(Collections.emptyList(), dot.getOutgoingEdges(c));
+    assertEquals(Collections.emptyList(), dot.getIncomingEdges(a));
+    assertNull(dot.getElementById(edge.getId()));
+  }
+
+  @Test
+  public void testEdgeInTwoGraphs() throws Throwable {
+    Dot dot = new Dot();
+    Dot other = new Dot();
+    DotNode a = dot.addNode("a");
+    DotNode b = dot.addNode("b");
+    DotEdge edge = dot.addEdge(a, b);
+    other.addEdge(edge);
+    assertEquals(1, dot.getOutgoingEdges(a).size());
+    assertEquals(1, other.getOutgoingEdges(a).size());
+
+    edge.setSource(b);
+    assertEquals(1, dot.getOutgoingEdges(b).size());
+    assertEquals(1, other.getOutgoingEdges(b).size());
+
+    //a graph the edge was removed from is no longer affected
+    other.removeEdge(edge);
+    edge.setSource(a);
+    assertEquals(1, dot.getOutgoingEdges(a).size());
+    assertEquals(0, other.getOutgoingEdges(a).size());
+  }
+
+  @Test
+  public void testRemoveNode() throws Throwable {
+    Dot dot = new Dot();
+    DotNode a = dot.addNode("a");
+    DotNode b = dot.addNode("b");
+    DotNode c = dot.addNode("c");
+    assertSame(b, dot.getElementById(b.getId()));
+
+    dot.removeNode(b);
+    assertEquals(Arrays.asList(a, c), dot.getNodes());
+    assertNull(dot.getElementById(b.getId()));
+    assertSame(c, dot.getElementById(c.getId()));
+
+    //removing a node that is not in the graph does nothing
+    dot.removeNode(b);
+    assertEquals(2, dot.getNodes().size());
+
+    //nodes added after the index was built are indexed as well
+    DotNode d = dot.addNode("d");
+    assertSame(d, dot.getElementById(d.getId()));
+    dot.removeNode(a);
+    assertEquals(Arrays.asList(c, d), dot.getNodes());
+  }
+
+  @Test
+  public void testRemoveEqualNode() throws Throwable {
+    Dot dot = new Dot();
+    final DotNode a = dot.addNode("a");
+    DotNode b = dot.addNode("b");
+    //nodes are equal if their ids are equal
+    DotNode copy = new DotNode("copy of a", null) {
+      public String getId() {
+        return a.getId();
+      }
+    };
+    assertEquals(a, copy);
+
+    dot.removeNode(copy);
+    assertEquals(Collections.singletonList(b), dot.getNodes());
+    assertNull(dot.getElementById(a.getId()));
+  }
+
+  @Test
+  public void testRemoveDuplicateNode() throws Throwable {
+    Dot dot = new Dot();
+    DotNode a = dot.addNode("a");
+    DotNode b = dot.addNode("b");
+    dot.addNode(a);
+    assertEquals(3, dot.getNodes().size());
+
+    //all occurrences are removed
+    dot.removeNode(a);
+    assertEquals(Collections.singletonList(b), dot.getNodes());
+    assertSame(b, dot.getElementById(b.getId()));
+  }
+
+  @Test
+  public void testRemoveNodeWithEdges() throws Throwable {
+    Dot dot = new Dot();
+    DotNode a = dot.addNode("a");
+    DotNode b = dot.addNode("b");
+    DotNode c = dot.addNode("c");
+    dot.addEdge(a, b);
+    DotEdge bc = dot.addEdge(b, c);
+    dot.addEdge(c, a);
+
+    dot.removeNodeWithEdges(a);
+    assertEquals(Arrays.asList(b, c), dot.getNodes());
+    assertEquals(Collections.singletonList(bc), dot.getEdges());
+    assertEquals(Collections.emptyList(), dot.getIncidentEdges(a));
+    assertEquals(Collections.singletonList(bc), dot.getOutgoingEdges(b));
+  }
+
+  @Test
+  public void testInsertNode() throws Throwable {
+    Dot dot = new Dot();
+    DotNode a = dot.addNode("a");
+    DotNode c = dot.addNode("c");
+    dot.removeNode(a);
+    DotNode b = dot.insertNode(0, "b");
+    assertEquals(Arrays.asList(b, c), dot.getNodes());
+    dot.removeNode(c);
+    assertEquals(Collections.singletonList(b), dot.getNodes());
+    assertSame(b, dot.getElementById(b.getId()));
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(DotClusterTest.class);
+  }
+
+}
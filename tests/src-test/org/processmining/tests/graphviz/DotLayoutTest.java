@@ -0,0 +1,135 @@
+package org.processmining.tests.graphviz;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.plugins.graphviz.dot.Dot;
+import org.processmining.plugins.graphviz.dot.DotCluster;
+import org.processmining.plugins.graphviz.dot.DotEdge;
+import org.processmining.plugins.graphviz.dot.DotLayout;
+import org.processmining.plugins.graphviz.dot.DotNode;
+
+public class DotLayoutTest extends TestCase {
+
+  private static final String xdot = "digraph G {\n"
+      + "  graph [bb=\"0,0,200,300\", _draw_=\"c 9 -#fffffe00 C 7 -#ffffff P 4 0 0 0 300 200 300 200 0 \"];\n"
+      + "  node [label=\"\\N\"];\n"
+      + "  subgraph \"e5\" {\n"
+      + "    graph [bb=\"10,20,110,220\", id=\"e5\"];\n"
+      + "    \"e1\" [height=0.5, id=\"e1\", label=a, pos=\"60,190\", width=1];\n"
+      + "  }\n"
+      + "  \"e2\" [height=\"1.0\", id=\"e2\", label=b, pos=\"150!,50!\", width=\"0.5\"];\n"
+      + "  \"e1\" -> \"e2\" [id=\"e3\", pos=\"e,145,75 65,172 70,150;80,120 140,90\"];\n"
+      + "  \"e2\":s -> \"e1\":n [id=e4, pos=\"s,150,30 150,20 100,10 60,100 60,208\"];\n"
+      + "  c -> d [pos=\"1,2 3,4\"];\n"
+      + "}\n";
+
+  @Test
+  public void testSize() throws Throwable {
+    DotLayout layout = parse(xdot);
+    assertEquals(200f, layout.getWidth());
+    assertEquals(300f, layout.getHeight());
+  }
+
+  @Test
+  public void testNodesById() throws Throwable {
+    DotLayout layout = parse(xdot);
+    int a = layout.getNodeIndex("e1");
+    assertTrue(a >= 0);
+    assertEquals(60f, layout.getNodeX(a));
+    assertEquals(190f, layout.getNodeY(a));
+    //sizes are given in inches
+    assertEquals(72f, layout.getNodeWidth(a));
+    assertEquals(36f, layout.getNodeHeight(a));
+
+    //pinned positions
+    int b = layout.getNodeIndex("e2");
+    assertEquals(150f, layout.getNodeX(b));
+    assertEquals(50f, layout.getNodeY(b));
+    assertEquals(36f, layout.getNodeWidth(b));
+    assertEquals(72f, layout.getNodeHeight(b));
+
+    assertEquals(-1, layout.getNodeIndex("a"));
+    assertEquals(-1, layout.getNodeIndex("e6"));
+  }
+
+  @Test
+  public void testEdgesById() throws Throwable {
+    DotLayout layout = parse(xdot);
+    //the end points of the arrow heads are skipped, and splines are joined
+    int edge = layout.getEdgeIndex("e3");
+    assertTrue(edge >= 0);
+    assertEquals(4, layout.getNumberOfControlPoints(edge));
+    assertEquals(65f, layout.getControlPointX(edge, 0));
+    assertEquals(172f, layout.getControlPointY(edge, 0));
+    assertEquals(80f, layout.getControlPointX(edge, 2));
+    assertEquals(90f, layout.getControlPointY(edge, 3));
+
+    edge = layout.getEdgeIndex("e4");
+    assertTrue(edge >= 0);
+    assertEquals(4, layout.getNumberOfControlPoints(edge));
+    assertEquals(150f, layout.getControlPointX(edge, 0));
+    assertEquals(20f, layout.getControlPointY(edge, 0));
+
+    //edges without an id are known by their end points
+    edge = layout.getEdgeIndex("c->d");
+    assertTrue(edge >= 0);
+    assertEquals(2, layout.getNumberOfControlPoints(edge));
+    assertEquals(3, layout.getNumberOfEdges());
+  }
+
+  @Test
+  public void testClustersById() throws Throwable {
+    DotLayout layout = parse(xdot);
+    assertEquals(1, layout.getNumberOfClusters());
+    Rectangle2D bounds = layout.getClusterBounds(layout.getClusterIndex("e5"));
+    assertEquals(new Rectangle2D.Float(10, 20, 100, 200), bounds);
+    assertNull(layout.getClusterBounds(layout.getClusterIndex("e1")));
+  }
+
+  @Test
+  public void testElementsOfDot() throws Throwable {
+    Dot dot = new Dot();
+    DotCluster cluster = dot.addCluster();
+    DotNode a = cluster.addNode("a");
+    DotNode b = dot.addNode("b");
+    DotEdge edge = dot.addEdge(a, b);
+    String text = "digraph G { graph [bb=\"0,0,100,100\"];"
+        + " subgraph \"" + cluster.getId() + "\" { graph [bb=\"0,50,40,100\", id=\"" + cluster.getId() + "\"];"
+        + " \"" + a.getId() + "\" [id=\"" + a.getId() + "\", pos=\"20,75\", width=0.25, height=0.25]; }"
+        + " \"" + b.getId() + "\" [id=\"" + b.getId() + "\", pos=\"70,20\", width=0.5, height=0.5];"
+        + " \"" + a.getId() + "\" -> \"" + b.getId() + "\" [id=\"" + edge.getId() + "\", pos=\"20,66 70,38\"]; }";
+    DotLayout layout = parse(text);
+    assertEquals(new Rectangle2D.Float(11, 66, 18, 18), layout.getBounds(a));
+    assertEquals(new Rectangle2D.Float(52, 2, 36, 36), layout.getBounds(b));
+    //clusters are looked up as nodes as well
+    assertEquals(new Rectangle2D.Float(0, 50, 40, 50), layout.getBounds(cluster));
+    float[] points = layout.getControlPoints(edge);
+    assertEquals(4, points.length);
+    assertEquals(70f, points[2]);
+    assertNull(layout.getControlPoints(dot.addEdge(b, a)));
+  }
+
+  @Test
+  public void testInvalidLayout() throws Throwable {
+    try {
+      parse("digraph G { a [pos=\"1,2\"; }");
+      fail("an unterminated attribute list was accepted");
+    } catch (IOException e) {
+      //expected
+    }
+  }
+
+  private static DotLayout parse(String text) throws IOException {
+    return DotLayout.parse(new StringReader(text));
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(DotLayoutTest.class);
+  }
+
+}
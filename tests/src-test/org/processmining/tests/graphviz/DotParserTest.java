@@ -0,0 +1,143 @@
+package org.processmining.tests.graphviz;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.plugins.graphviz.dot.Dot;
+import org.processmining.plugins.graphviz.dot.DotCluster;
+import org.processmining.plugins.graphviz.dot.DotEdge;
+import org.processmining.plugins.graphviz.dot.DotNode;
+import org.processmining.plugins.graphviz.dot.DotSubgraph;
+
+public class DotParserTest extends TestCase {
+
+  @Test
+  public void testDefaultsApplyToLaterElements() throws Throwable {
+    Dot dot = parse("digraph { a; node [color=red]; b; subgraph cluster_x { c; node [color=blue]; d } e }");
+    assertEquals(null, getNode(dot, "a").getOption("color"));
+    assertEquals("red", getNode(dot, "b").getOption("color"));
+    assertEquals("red", getNode(dot, "c").getOption("color"));
+    assertEquals("blue", getNode(dot, "d").getOption("color"));
+    assertEquals("red", getNode(dot, "e").getOption("color"));
+    assertEquals(null, dot.getNodeOption("color"));
+  }
+
+  @Test
+  public void testEdgeDefaultsApplyToLaterEdges() throws Throwable {
+    Dot dot = parse("digraph { a -> b; edge [style=dashed]; b -> c [style=bold]; c -> a }");
+    assertEquals(null, getEdge(dot, "a", "b").getOption("style"));
+    assertEquals("bold", getEdge(dot, "b", "c").getOption("style"));
+    assertEquals("dashed", getEdge(dot, "c", "a").getOption("style"));
+  }
+
+  @Test
+  public void testLeadingDefaultsAreKeptOnTheGraph() throws Throwable {
+    Dot dot = parse("digraph { node [shape=box]; subgraph cluster_x { edge [color=red]; a -> b } }");
+    assertEquals("box", dot.getNodeOption("shape"));
+    assertEquals(null, getNode(dot, "a").getOption("shape"));
+    DotCluster cluster = dot.getClusters().get(0);
+    assertEquals("red", cluster.getEdgeOption("color"));
+    assertEquals(null, cluster.getFirstEdge(getNode(dot, "a"), getNode(dot, "b")).getOption("color"));
+  }
+
+  @Test
+  public void testSubgraphs() throws Throwable {
+    Dot dot = parse("digraph { a; subgraph s { node [color=red]; b; subgraph { c } } d; { e f } -> g }");
+    assertEquals(7, dot.getNodes().size());
+    assertEquals(0, dot.getClusters().size());
+    assertEquals(null, getNode(dot, "a").getOption("color"));
+    assertEquals("red", getNode(dot, "b").getOption("color"));
+    assertEquals("red", getNode(dot, "c").getOption("color"));
+    assertEquals(null, getNode(dot, "d").getOption("color"));
+    assertEquals(2, dot.getEdges().size());
+    assertNotNull(getEdge(dot, "e", "g"));
+    assertNotNull(getEdge(dot, "f", "g"));
+  }
+
+  @Test
+  public void testNodeMovesToDeepestCluster() throws Throwable {
+    Dot dot = parse("digraph { a; subgraph cluster_x { subgraph cluster_y { a } } }");
+    assertEquals(0, dot.getNodes().size());
+    DotCluster y = dot.getClusters().get(0).getClusters().get(0);
+    assertEquals(1, y.getNodes().size());
+    assertEquals("a", y.getNodes().get(0).getLabel());
+  }
+
+  @Test
+  public void testGraphAttributesOfSubgraphsAreKept() throws Throwable {
+    Dot dot = parse("digraph { c; {rank=same; a b} subgraph { graph [rank=min]; c } d }");
+    assertEquals(4, dot.getNodes().size());
+    assertEquals(2, dot.getSubgraphs().size());
+    DotSubgraph same = dot.getSubgraphs().get(0);
+    assertEquals("same", same.getGraphOption("rank"));
+    assertEquals(2, same.getNodes().size());
+    assertSame(getNode(dot, "a"), same.getNodes().get(0));
+    assertSame(getNode(dot, "b"), same.getNodes().get(1));
+    assertEquals("min", dot.getSubgraphs().get(1).getGraphOption("rank"));
+    assertSame(getNode(dot, "c"), dot.getSubgraphs().get(1).getNodes().get(0));
+    assertTrue(dot.toString().contains("subgraph {\nrank=\"same\";\n\"" + getNode(dot, "a").getId() + "\";\n\""
+        + getNode(dot, "b").getId() + "\";\n}"));
+
+    dot = parse("digraph { subgraph cluster_x { label=x; graph [color=red]; a } }");
+    assertEquals("x", dot.getClusters().get(0).getLabel());
+    assertEquals("red", dot.getClusters().get(0).getGraphOption("color"));
+    assertEquals(0, dot.getSubgraphs().size());
+  }
+
+  @Test
+  public void testClustersInheritGraphAttributesOfSubgraphs() throws Throwable {
+    Dot dot = parse("digraph { { color=red; subgraph cluster_x { a } } }");
+    assertEquals("red", dot.getClusters().get(0).getOption("color"));
+    assertEquals(1, dot.getSubgraphs().size());
+  }
+
+  @Test
+  public void testQuotedStringsStayQuoted() throws Throwable {
+    Dot dot = parse("digraph { a [label=\"<b>\", tooltip=\"<none>\"]; b [label=<<b>x</b>>]; \"<c>\" }");
+    String text = dot.toString();
+    assertFalse(text.contains("label=<b>"));
+    assertFalse(text.contains("label=<c>"));
+    assertFalse(text.contains("tooltip=<none>"));
+    assertTrue(text.contains("label=<<b>x</b>>"));
+
+    //Graphviz and the parser remove the line continuation
+    Dot again = parse(text);
+    assertEquals(getNode(dot, "\\\n<b>").getLabel(), getNode(again, "\\\n<b>").getLabel());
+    assertEquals("<<b>x</b>>", getNode(again, "<<b>x</b>>").getLabel());
+  }
+
+  @Test
+  public void testUndirected() throws Throwable {
+    Dot dot = parse("strict graph G { a -- b -- c; edge [label=x]; c -- a }");
+    assertEquals("none", dot.getEdgeOption("dir"));
+    assertEquals(3, dot.getEdges().size());
+    assertNotNull(getEdge(dot, "a", "b"));
+    assertNotNull(getEdge(dot, "b", "c"));
+    assertEquals("x", getEdge(dot, "c", "a").getLabel());
+  }
+
+  private static Dot parse(String text) throws IOException {
+    return new Dot(new ByteArrayInputStream(text.getBytes("UTF-8")));
+  }
+
+  private static DotNode getNode(Dot dot, String label) {
+    for (DotNode node : dot.getNodesRecursive()) {
+      if (!(node instanceof DotCluster) && label.equals(node.getLabel())) {
+        return node;
+      }
+    }
+    fail("node " + label + " not found");
+    return null;
+  }
+
+  private static DotEdge getEdge(Dot dot, String source, String target) {
+    return dot.getFirstEdge(getNode(dot, source), getNode(dot, target));
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(DotParserTest.class);
+  }
+
+}
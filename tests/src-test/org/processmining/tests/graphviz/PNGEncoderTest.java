@@ -0,0 +1,137 @@
+package org.processmining.tests.graphviz;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.processmining.plugins.graphviz.visualisation.export.PNGEncoder;
+import org.processmining.plugins.graphviz.visualisation.export.PNGEncoder.CompressedRows;
+
+public class PNGEncoderTest extends TestCase {
+
+  private static final int width = 37;
+  private static final int height = 53;
+
+  @Test
+  public void testRows() throws Throwable {
+    int[] argb = createImage();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PNGEncoder encoder = new PNGEncoder(output, width, height, Deflater.DEFAULT_COMPRESSION, 0);
+    //in uneven batches
+    encoder.writeRows(argb, 0, width, 1);
+    encoder.writeRows(argb, width, width, 20);
+    encoder.writeRows(argb, 21 * width, width, height - 21);
+    encoder.finish();
+    assertImage(argb, output.toByteArray());
+  }
+
+  @Test
+  public void testCompressedRows() throws Throwable {
+    //the strips are deflated separately and stitched into one zlib stream
+    for (int level : new int[] { 0, 1, Deflater.DEFAULT_COMPRESSION, 9 }) {
+      int[] argb = createImage();
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      PNGEncoder encoder = new PNGEncoder(output, width, height, level, 96);
+      CompressedRows first = encoder.compressRows(argb, 0, width, 10);
+      CompressedRows second = encoder.compressRows(argb, 10 * width, width, 1);
+      CompressedRows third = encoder.compressRows(argb, 11 * width, width, height - 11);
+      encoder.writeCompressedRows(first);
+      encoder.writeCompressedRows(second);
+      encoder.writeCompressedRows(third);
+      encoder.finish();
+      assertImage(argb, output.toByteArray());
+    }
+  }
+
+  @Test
+  public void testStride() throws Throwable {
+    //rows of a wider image, e.g. a tile of a strip
+    int[] argb = new int[(width + 5) * height];
+    int[] expected = createImage();
+    for (int row = 0; row < height; row++) {
+      System.arraycopy(expected, row * width, argb, row * (width + 5) + 3, width);
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PNGEncoder encoder = new PNGEncoder(output, width, height, Deflater.BEST_SPEED, 0);
+    encoder.writeCompressedRows(encoder.compressRows(argb, 3, width + 5, height));
+    encoder.finish();
+    assertImage(expected, output.toByteArray());
+  }
+
+  @Test
+  public void testIncompleteImage() throws Throwable {
+    PNGEncoder encoder = new PNGEncoder(new ByteArrayOutputStream(), width, height, 1, 0);
+    encoder.writeRows(createImage(), 0, width, height - 1);
+    try {
+      encoder.finish();
+      fail("an image with missing rows was finished");
+    } catch (IllegalStateException e) {
+      //expected
+    }
+  }
+
+  @Test
+  public void testMixedRows() throws Throwable {
+    int[] argb = createImage();
+    PNGEncoder encoder = new PNGEncoder(new ByteArrayOutputStream(), width, height, 1, 0);
+    encoder.writeRows(argb, 0, width, 1);
+    try {
+      encoder.writeCompressedRows(encoder.compressRows(argb, width, width, 1));
+      fail("compressed rows were written after uncompressed rows");
+    } catch (IllegalStateException e) {
+      //expected
+    }
+  }
+
+  /**
+   * Random pixels, including fully transparent and opaque ones.
+   */
+  private static int[] createImage() {
+    Random random = new Random(width * height);
+    int[] result = new int[width * height];
+    for (int i = 0; i < result.length; i++) {
+      switch (i % 3) {
+        case 0 :
+          result[i] = random.nextInt();
+          break;
+        case 1 :
+          result[i] = 0xFF000000 | random.nextInt();
+          break;
+        default :
+          //runs of equal pixels compress well
+          result[i] = (i / width) % 2 == 0 ? 0 : 0xFF336699;
+      }
+    }
+    return result;
+  }
+
+  private static void assertImage(int[] expected, byte[] png) throws Throwable {
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+    assertNotNull(image);
+    assertEquals(width, image.getWidth());
+    assertEquals(height, image.getHeight());
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int pixel = expected[y * width + x];
+        if ((pixel >>> 24) == 0) {
+          //the colour of a transparent pixel does not matter
+          assertEquals(0, image.getRGB(x, y) >>> 24);
+        } else {
+          assertEquals("pixel " + x + "," + y, pixel, image.getRGB(x, y));
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(PNGEncoderTest.class);
+  }
+
+}